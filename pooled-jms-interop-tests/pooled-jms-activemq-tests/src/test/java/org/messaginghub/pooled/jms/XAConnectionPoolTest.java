@@ -19,12 +19,17 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Hashtable;
 import java.util.Vector;
 
+import javax.jms.Connection;
 import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
 import javax.jms.QueueConnection;
 import javax.jms.QueueConnectionFactory;
 import javax.jms.QueueSender;
@@ -50,9 +55,11 @@ import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
+import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.ActiveMQXAConnectionFactory;
 import org.apache.activemq.ActiveMQXASession;
 import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
 import org.junit.Test;
 import org.messaginghub.pooled.jms.JmsPoolSession;
 import org.messaginghub.pooled.jms.JmsPoolXAConnectionFactory;
@@ -375,6 +382,76 @@ public class XAConnectionPoolTest extends ActiveMQJmsPoolTestSupport {
         pcf.stop();
     }
 
+    @Test(timeout = 60000)
+    public void testSessionReusedWithinTransaction() throws Exception {
+        JmsPoolXAConnectionFactory pcf = new JmsPoolXAConnectionFactory();
+        pcf.setConnectionFactory(new ActiveMQXAConnectionFactory(
+            "vm://test?broker.persistent=false&broker.useJmx=false"));
+
+        TransactionManager tm = new GeronimoTransactionManager();
+        pcf.setTransactionManager(tm);
+
+        Connection connection = pcf.createConnection();
+        Connection other = pcf.createConnection();
+
+        tm.begin();
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue(getTestName());
+        session.createProducer(queue).send(session.createTextMessage("first"));
+        session.close();
+
+        Session reused = other.createSession(true, Session.SESSION_TRANSACTED);
+        assertSame(session, reused);
+        reused.createProducer(queue).send(reused.createTextMessage("second"));
+
+        tm.commit();
+
+        tm.begin();
+        Session next = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertNotSame(session, next);
+        tm.rollback();
+
+        connection.close();
+        other.close();
+
+        ActiveMQConnectionFactory plainCF = new ActiveMQConnectionFactory("vm://test?broker.persistent=false&broker.useJmx=false");
+        Connection plain = plainCF.createConnection();
+        try {
+            plain.start();
+            MessageConsumer consumer = plain.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue);
+            assertNotNull(consumer.receive(5000));
+            assertNotNull(consumer.receive(5000));
+        } finally {
+            plain.close();
+        }
+
+        pcf.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionNotReusedWithinTransactionWhenDisabled() throws Exception {
+        JmsPoolXAConnectionFactory pcf = new JmsPoolXAConnectionFactory();
+        pcf.setConnectionFactory(new ActiveMQXAConnectionFactory(
+            "vm://test?broker.persistent=false&broker.useJmx=false"));
+        pcf.setUseTransactionAffineSessions(false);
+
+        TransactionManager tm = new GeronimoTransactionManager();
+        pcf.setTransactionManager(tm);
+
+        Connection connection = pcf.createConnection();
+
+        tm.begin();
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertNotSame(session, connection.createSession(false, Session.AUTO_ACKNOWLEDGE));
+
+        tm.rollback();
+
+        connection.close();
+        pcf.stop();
+    }
+
     static class XAConnectionFactoryOnly implements XAConnectionFactory {
         private final XAConnectionFactory connectionFactory;
 
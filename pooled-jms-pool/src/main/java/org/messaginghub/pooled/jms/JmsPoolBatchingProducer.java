@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+
+import org.messaginghub.pooled.jms.util.JmsPoolThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A producer that sends into a transacted pooled Session of its own and commits the sent
+ * messages in batches, once the configured number of messages is pending or the configured
+ * time has passed since the first message of the batch was sent, whichever comes first.
+ * <p>
+ * Each send returns a {@link CompletionStage} that completes once the transaction holding
+ * the message has been committed, or completes exceptionally if that commit fails.  Closing
+ * the producer commits any messages that are still pending and returns the Session it used
+ * to the pool.
+ * <p>
+ * The producer is safe for use from multiple threads, all work on its Session is done while
+ * holding the producer's lock, including the commits triggered by the batch timeout.
+ */
+public class JmsPoolBatchingProducer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolBatchingProducer.class);
+
+    private static ScheduledThreadPoolExecutor flushScheduler;
+
+    private final JmsPoolSession session;
+    private final MessageProducer producer;
+    private final Destination destination;
+    private final int batchSize;
+    private final long batchTimeout;
+
+    private List<Message> pendingMessages;
+    private List<CompletableFuture<Message>> pendingResults;
+    private ScheduledFuture<?> pendingFlush;
+    private boolean closed;
+
+    /**
+     * Creates a new batching producer that takes ownership of the given transacted Session.
+     *
+     * @param session
+     * 		the transacted pooled Session the producer sends into and commits.
+     * @param destination
+     * 		the default destination of the producer or null if each send names a destination.
+     * @param batchSize
+     * 		the number of pending messages that triggers a commit.
+     * @param batchTimeout
+     * 		the time in milliseconds after the first pending message that triggers a commit, zero to disable.
+     *
+     * @throws JMSException if an error occurs while creating the producer on the Session.
+     */
+    public JmsPoolBatchingProducer(JmsPoolSession session, Destination destination, int batchSize, long batchTimeout) throws JMSException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least one: " + batchSize);
+        }
+        if (batchTimeout < 0) {
+            throw new IllegalArgumentException("Batch timeout cannot be negative: " + batchTimeout);
+        }
+        if (!session.getTransacted()) {
+            throw new IllegalStateException("Batching producer requires a transacted session");
+        }
+
+        this.session = session;
+        this.destination = destination;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.producer = session.createProducer(null);
+        this.pendingMessages = new ArrayList<>(batchSize);
+        this.pendingResults = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Sends the message to the default destination of this producer.
+     *
+     * @param message
+     * 		the message to send.
+     *
+     * @return a {@link CompletionStage} that completes when the message has been committed.
+     *
+     * @throws JMSException if the producer is closed or the send fails.
+     */
+    public CompletionStage<Message> send(Message message) throws JMSException {
+        if (destination == null) {
+            throw new UnsupportedOperationException("Producer was created without a default destination");
+        }
+
+        return doSend(destination, message);
+    }
+
+    /**
+     * Sends the message to the given destination, the producer must have been created
+     * without a default destination.
+     *
+     * @param destination
+     * 		the destination to send the message to.
+     * @param message
+     * 		the message to send.
+     *
+     * @return a {@link CompletionStage} that completes when the message has been committed.
+     *
+     * @throws JMSException if the producer is closed or the send fails.
+     */
+    public CompletionStage<Message> send(Destination destination, Message message) throws JMSException {
+        if (this.destination != null) {
+            throw new UnsupportedOperationException("Producer was created with a default destination");
+        }
+
+        return doSend(destination, message);
+    }
+
+    /**
+     * Commits any pending messages now rather than waiting for the batch to fill or time out.
+     *
+     * @throws JMSException if the commit fails, the pending sends are completed exceptionally as well.
+     */
+    public void flush() throws JMSException {
+        final Batch batch;
+        synchronized (this) {
+            checkClosed();
+            batch = commitBatch();
+        }
+
+        batch.complete();
+    }
+
+    @Override
+    public void close() throws JMSException {
+        Batch batch = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            try {
+                batch = commitBatch();
+            } finally {
+                session.close();
+            }
+        }
+
+        batch.complete();
+    }
+
+    /**
+     * @return the default destination of this producer or null if each send names one.
+     */
+    public Destination getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return the number of pending messages that triggers a commit.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the time in milliseconds after the first pending message that triggers a commit.
+     */
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * @return the number of messages sent but not yet committed.
+     */
+    public synchronized int getNumPendingMessages() {
+        return pendingMessages.size();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " { " + session + " }";
+    }
+
+    //----- Internal support methods -----------------------------------------//
+
+    JmsPoolSessionEventListener getSessionCloseListener() {
+        return new JmsPoolSessionEventListener() {
+
+            @Override
+            public void onTemporaryQueueCreate(TemporaryQueue tempQueue) {
+            }
+
+            @Override
+            public void onTemporaryTopicCreate(TemporaryTopic tempTopic) {
+            }
+
+            @Override
+            public void onSessionClosed(JmsPoolSession session) {
+                try {
+                    close();
+                } catch (JMSException e) {
+                    LOG.debug("Caught exception closing batching producer along with its session", e);
+                }
+            }
+        };
+    }
+
+    private CompletionStage<Message> doSend(Destination destination, Message message) throws JMSException {
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        Batch batch = null;
+        synchronized (this) {
+            checkClosed();
+
+            producer.send(destination, message);
+            pendingMessages.add(message);
+            pendingResults.add(result);
+
+            if (pendingMessages.size() >= batchSize) {
+                try {
+                    batch = commitBatch();
+                } catch (JMSException e) {
+                    // The failure is reported through the results of the batch.
+                    LOG.debug("Caught exception committing full batch", e);
+                }
+            } else if (pendingMessages.size() == 1 && batchTimeout > 0) {
+                scheduleFlush();
+            }
+        }
+
+        if (batch != null) {
+            batch.complete();
+        }
+
+        return result;
+    }
+
+    /*
+     * Must be called while holding the producer lock.  The results are completed by the
+     * caller once the lock is released so that dependent actions never run under it.
+     */
+    private Batch commitBatch() throws JMSException {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        final Batch batch = new Batch(pendingMessages, pendingResults);
+        if (pendingMessages.isEmpty()) {
+            return batch;
+        }
+
+        pendingMessages = new ArrayList<>(batchSize);
+        pendingResults = new ArrayList<>(batchSize);
+
+        try {
+            session.commit();
+        } catch (JMSException e) {
+            batch.failure = e;
+            try {
+                session.rollback();
+            } catch (JMSException ignore) {
+                LOG.trace("Caught exception rolling back failed batch", ignore);
+            }
+
+            // Fail the results now as the caller never sees the batch when this throws.
+            batch.complete();
+            throw e;
+        }
+
+        return batch;
+    }
+
+    private void scheduleFlush() {
+        pendingFlush = getFlushScheduler().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                Batch batch = null;
+                synchronized (JmsPoolBatchingProducer.this) {
+                    if (closed) {
+                        return;
+                    }
+
+                    try {
+                        batch = commitBatch();
+                    } catch (JMSException e) {
+                        LOG.debug("Caught exception committing batch on timeout", e);
+                    }
+                }
+
+                if (batch != null) {
+                    batch.complete();
+                }
+            }
+        }, batchTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkClosed() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The batching producer is closed");
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getFlushScheduler() {
+        if (flushScheduler == null) {
+            flushScheduler = new ScheduledThreadPoolExecutor(1, new JmsPoolThreadFactory("JmsPoolBatchingProducer Flush Tasks", true));
+            flushScheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        return flushScheduler;
+    }
+
+    private static final class Batch {
+
+        private final List<Message> messages;
+        private final List<CompletableFuture<Message>> results;
+
+        private JMSException failure;
+
+        public Batch(List<Message> messages, List<CompletableFuture<Message>> results) {
+            this.messages = messages;
+            this.results = results;
+        }
+
+        public void complete() {
+            for (int i = 0; i < results.size(); ++i) {
+                if (failure == null) {
+                    results.get(i).complete(messages.get(i));
+                } else {
+                    results.get(i).completeExceptionally(failure);
+                }
+            }
+        }
+    }
+}
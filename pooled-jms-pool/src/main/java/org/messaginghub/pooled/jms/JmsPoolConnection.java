@@ -195,7 +195,9 @@ public class JmsPoolConnection implements TopicConnection, QueueConnection, JmsP
 
         // Store the session so we can close the sessions that this Pooled JMS Connection
         // created in order to ensure that consumers etc are closed per the JMS contract.
-        loanedSessions.add(result);
+        if (!loanedSessions.contains(result)) {
+            loanedSessions.add(result);
+        }
 
         // Add a event listener to the session that notifies us when the session
         // creates / destroys temporary destinations and closes etc.
@@ -286,6 +288,26 @@ public class JmsPoolConnection implements TopicConnection, QueueConnection, JmsP
         return this.connection.getNumSessions();
     }
 
+    /**
+     * @return the number of asynchronous sends made through this Connection's sessions that have not yet completed.
+     *
+     * @throws JMSException if the connection has been closed.
+     */
+    public int getNumAsyncSendsInFlight() throws JMSException {
+        checkClosed();
+        return this.connection.getNumAsyncSendsInFlight();
+    }
+
+    /**
+     * @return the number of Queues and Topics cached by name for this Connection's sessions.
+     *
+     * @throws JMSException if the connection has been closed.
+     */
+    public int getNumCachedDestinations() throws JMSException {
+        checkClosed();
+        return this.connection.getNumCachedDestinations();
+    }
+
     /**
      * @return the number of Sessions that are currently checked out of this Connection's session pool.
      *
@@ -313,4 +335,8 @@ public class JmsPoolConnection implements TopicConnection, QueueConnection, JmsP
             throw new IllegalStateException("Connection closed");
         }
     }
+
+    boolean isClosed() {
+        return closed.get();
+    }
 }
@@ -16,12 +16,30 @@
  */
 package org.messaginghub.pooled.jms;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
 import javax.jms.IllegalStateException;
 import javax.jms.JMSContext;
 import javax.jms.JMSException;
@@ -36,10 +54,14 @@ import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.messaginghub.pooled.jms.pool.AsyncSendStatistics;
+import org.messaginghub.pooled.jms.pool.ConnectionCircuitBreaker;
+import org.messaginghub.pooled.jms.pool.ConnectionSelectionStrategy;
 import org.messaginghub.pooled.jms.pool.PooledConnection;
 import org.messaginghub.pooled.jms.pool.PooledConnectionKey;
 import org.messaginghub.pooled.jms.pool.PooledSessionKey;
 import org.messaginghub.pooled.jms.util.JMSExceptionSupport;
+import org.messaginghub.pooled.jms.util.JmsPoolThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,13 +72,15 @@ import org.slf4j.LoggerFactory;
  * Connections, sessions and producers are returned to a pool after use so that they can be reused later
  * without having to undergo the cost of creating them again.
  *
- * <b>NOTE:</b> while this implementation does allow the creation of a collection of active consumers,
- * it does not 'pool' consumers. Pooling makes sense for connections, sessions and producers, which
- * are expensive to create and can remain idle a minimal cost. Consumers, on the other hand, are usually
- * just created at startup and left active, handling incoming messages as they come. When a consumer is
- * complete, it is best to close it rather than return it to a pool for later reuse: this is because,
- * even if a consumer is idle, the broker may keep delivering messages to the consumer's prefetch buffer,
- * where they'll get held until the consumer is active again.
+ * <b>NOTE:</b> by default consumers are not pooled, a MessageConsumer is closed along with the pooled
+ * Session that created it. Consumers are usually just created at startup and left active, handling
+ * incoming messages as they come, and even an idle consumer may keep receiving messages into its
+ * prefetch buffer where they are held until the consumer is active again.  Applications that repeatedly
+ * create short lived consumers on the same destinations can enable the consumer cache using
+ * {@link #setConsumerCacheSize(int)}, in which case closed consumers stay open with their pooled Session
+ * and a background task closes those left unused for longer than the
+ * {@link #setConsumerIdleTimeout(long) consumer idle timeout} so that their prefetched messages are
+ * released for redelivery.
  *
  * If you are creating a collection of consumers (for example, for multi-threaded message consumption), you
  * might want to consider using a lower prefetch value for each consumer (e.g. 10 or 20), to ensure that
@@ -77,9 +101,18 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
 
     public static final int DEFAULT_MAX_CONNECTIONS = 1;
 
+    // Upper bound on the number of threads used to open Connections in parallel on start.
+    private static final int MAX_WARM_UP_THREADS = 8;
+
     protected final AtomicBoolean stopped = new AtomicBoolean(false);
 
-    private GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> connectionsPool;
+    private volatile GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> connectionsPool;
+
+    // In flight creation of a new Connection per key, only one Connection is created at a time.
+    private final ConcurrentMap<PooledConnectionKey, CompletableFuture<PooledConnection>> pendingCreations = new ConcurrentHashMap<>();
+
+    // Snapshot of the live Connections per key used by the configured selection strategy.
+    private final ConcurrentMap<PooledConnectionKey, List<PooledConnection>> pooledConnections = new ConcurrentHashMap<>();
 
     protected Object connectionFactory;
     protected boolean jmsContextSupported;
@@ -91,13 +124,49 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
     private long expiryTimeout = 0l;
     private boolean createConnectionOnStartup = true;
     private boolean useAnonymousProducers = true;
+    private boolean useThreadAffineSessions = false;
+    private int namedProducerCacheSize = 0;
+    private long namedProducerIdleTimeout = 0L;
+    private final AtomicLong sessionRollbacksSkipped = new AtomicLong();
+    private int maxAsyncSendsInFlight = 0;
+    private int destinationCacheSize = 0;
+    private int consumerCacheSize = 0;
+    private long consumerIdleTimeout = 0L;
+    private boolean blockIfAsyncSendWindowIsFull = true;
+    private long blockIfAsyncSendWindowIsFullTimeout = -1L;
+    private final AsyncSendStatistics asyncSendStatistics = new AsyncSendStatistics();
     private boolean reconnectOnException = true;
     private boolean useProviderJMSContext = false;
-
-    // Temporary value used to always fetch the result of makeObject.
-    private final AtomicReference<PooledConnection> mostRecentlyCreated = new AtomicReference<PooledConnection>(null);
-
-    public void initConnectionsPool() {
+    private boolean reuseJMSProducers = false;
+    private final JmsPoolJMSContextPool contextPool = new JmsPoolJMSContextPool();
+    private long contextIdleTimeout = 30 * 1000L;
+    private ConnectionSelectionStrategy connectionSelectionStrategy;
+    private int minConnections = 0;
+    private int minIdleSessionsPerConnection = 0;
+    private long warmUpTimeout = -1L;
+
+    private long connectionRotationLeadTime = 0L;
+    private long connectionRotationJitter = 0L;
+    private int connectionCircuitBreakerThreshold = 0;
+    private long connectionCircuitBreakerInitialBackoff = 1000L;
+    private long connectionCircuitBreakerMaxBackoff = 30000L;
+    private boolean reconnectInBackground = false;
+    private long reconnectInitialBackoff = 100L;
+    private long reconnectMaxBackoff = 30000L;
+
+    // Per key circuit breakers that guard the creation of new provider Connections.
+    private final ConcurrentMap<PooledConnectionKey, ConnectionCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    // Connection opened outside of the pool that the calling thread hands to makeObject.
+    private final ThreadLocal<PooledConnection> stagedConnection = new ThreadLocal<PooledConnection>();
+
+    // Background rotation and replacement state, the scheduler is only created once needed.
+    private ScheduledThreadPoolExecutor backgroundScheduler;
+    private volatile ScheduledFuture<?> idleResourceEviction;
+    private final ConcurrentMap<PooledConnection, ScheduledFuture<?>> pendingRotations = new ConcurrentHashMap<>();
+    private final Set<PooledConnection> drainingConnections = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+
+    public synchronized void initConnectionsPool() {
         if (this.connectionsPool == null) {
             final GenericKeyedObjectPoolConfig poolConfig = new GenericKeyedObjectPoolConfig();
             poolConfig.setJmxEnabled(false);
@@ -105,22 +174,17 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
                 new KeyedPooledObjectFactory<PooledConnectionKey, PooledConnection>() {
                     @Override
                     public PooledObject<PooledConnection> makeObject(PooledConnectionKey connectionKey) throws Exception {
-                        Connection delegate = createProviderConnection(connectionKey);
-
-                        PooledConnection connection = createPooledConnection(delegate);
-                        connection.setIdleTimeout(getIdleTimeout());
-                        connection.setExpiryTimeout(getExpiryTimeout());
-                        connection.setMaximumActiveSessionPerConnection(getMaximumActiveSessionPerConnection());
-                        connection.setBlockIfSessionPoolIsFull(isBlockIfSessionPoolIsFull());
-                        if (isBlockIfSessionPoolIsFull() && getBlockIfSessionPoolIsFullTimeout() > 0) {
-                            connection.setBlockIfSessionPoolIsFullTimeout(getBlockIfSessionPoolIsFullTimeout());
+                        // The caller may have already opened the Connection for this slot.
+                        PooledConnection connection = stagedConnection.get();
+                        if (connection != null) {
+                            stagedConnection.remove();
+                        } else {
+                            connection = makePooledConnection(connectionKey);
                         }
-                        connection.setUseAnonymousProducers(isUseAnonymousProducers());
-                        connection.setReconnectOnException(isReconnectOnException());
-
-                        LOG.trace("Created new connection: {}", connection);
 
-                        JmsPoolConnectionFactory.this.mostRecentlyCreated.set(connection);
+                        registerPooledConnection(connectionKey, connection);
+                        scheduleConnectionRotation(connectionKey, connection);
+                        scheduleIdleResourceEviction();
 
                         return new DefaultPooledObject<PooledConnection>(connection);
                     }
@@ -128,6 +192,14 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
                     @Override
                     public void destroyObject(PooledConnectionKey connectionKey, PooledObject<PooledConnection> pooledObject) throws Exception {
                         PooledConnection connection = pooledObject.getObject();
+                        unregisterPooledConnection(connectionKey, connection);
+                        cancelConnectionRotation(connection);
+
+                        if (connection.isDraining()) {
+                            LOG.trace("Connection was rotated out: {} and will close once released", connection);
+                            return;
+                        }
+
                         try {
                             LOG.trace("Destroying connection: {}", connection);
                             connection.close();
@@ -264,6 +336,17 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
             return createProviderContext(username, password, sessionMode);
         } else {
             try {
+                if (getContextPoolSize() > 0 && isContextPoolingSupported()) {
+                    JmsPoolJMSContext context = contextPool.takeContext(username, password, sessionMode);
+                    if (context == null) {
+                        context = contextPool.createContext(createJmsPoolConnection(username, password), username, password, sessionMode);
+                    }
+
+                    scheduleIdleResourceEviction();
+
+                    return context;
+                }
+
                 return newPooledConnectionContext(createJmsPoolConnection(username, password), sessionMode);
             } catch (JMSException e) {
                 throw JMSExceptionSupport.createRuntimeException(e);
@@ -278,17 +361,23 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
      * <p>
      * If configured to do so this method will attempt to create an initial Connection to place
      * into the pool using the default {@link ConnectionFactory#createConnection()} from the configured
-     * provider {@link ConnectionFactory}.
+     * provider {@link ConnectionFactory}.  When a minimum number of Connections is configured those
+     * Connections are opened in parallel and this method waits for them based on the configured
+     * warm up timeout.
      */
     public void start() {
         LOG.debug("Staring the PooledConnectionFactory: create on start = {}", isCreateConnectionOnStartup());
         stopped.set(false);
         if (isCreateConnectionOnStartup()) {
-            try {
-                // warm the pool by creating a connection during startup
-                createConnection().close();
-            } catch (JMSException e) {
-                LOG.warn("Create pooled connection during start failed. This exception will be ignored.", e);
+            if (getMinConnections() > 0) {
+                warmUpConnectionsPool();
+            } else {
+                try {
+                    // warm the pool by creating a connection during startup
+                    createConnection().close();
+                } catch (JMSException e) {
+                    LOG.warn("Create pooled connection during start failed. This exception will be ignored.", e);
+                }
             }
         }
     }
@@ -305,12 +394,23 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
             LOG.debug("Stopping the PooledConnectionFactory, number of connections in cache: {}",
                       connectionsPool != null ? connectionsPool.getNumActive() : 0);
             try {
-                if (connectionsPool != null) {
-                    connectionsPool.close();
+                final GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool;
+                synchronized (this) {
+                    pool = connectionsPool;
                     connectionsPool = null;
                 }
+
+                if (pool != null) {
+                    pool.close();
+                }
             } catch (Exception ignored) {
                 LOG.trace("Caught exception on close of connectionPool: ", ignored);
+            } finally {
+                // Resources released while stopping hold closed Connections and are discarded when next taken.
+                contextPool.clear();
+                pooledConnections.clear();
+                circuitBreakers.clear();
+                stopBackgroundTasks();
             }
         }
     }
@@ -326,6 +426,7 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
             return;
         }
 
+        contextPool.clear();
         getConnectionsPool().clear();
     }
 
@@ -472,7 +573,7 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
      * This can be used to warm-up the pool on startup. Notice that any kind of exception
      * happens during startup is logged at WARN level and ignored.
      *
-     * @param createConnectionOnStartup <tt>true</tt> to create a connection on startup
+     * @param createConnectionOnStartup {@code true} to create a connection on startup
      */
     public void setCreateConnectionOnStartup(boolean createConnectionOnStartup) {
         this.createConnectionOnStartup = createConnectionOnStartup;
@@ -504,6 +605,280 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
         this.useAnonymousProducers = value;
     }
 
+    /**
+     * @return the number of named MessageProducers each pooled Session keeps open for reuse.
+     */
+    public int getNamedProducerCacheSize() {
+        return namedProducerCacheSize;
+    }
+
+    /**
+     * Sets the number of named MessageProducers each pooled Session keeps open for reuse when
+     * anonymous producers are disabled, default is zero which disables the cache.
+     * <p>
+     * When enabled closing a MessageProducer created from a pooled Session leaves the provider
+     * producer open and keeps it with the Session, a later call to createProducer for the same
+     * destination on any loan of that Session reuses it.  Once the cache is full the least
+     * recently used producer is closed.  This option has no effect while useAnonymousProducers
+     * is enabled.
+     *
+     * @param namedProducerCacheSize
+     *      The maximum number of named producers cached per Session.
+     */
+    public void setNamedProducerCacheSize(int namedProducerCacheSize) {
+        this.namedProducerCacheSize = namedProducerCacheSize;
+    }
+
+    /**
+     * @return the time in milliseconds a cached named MessageProducer may remain unused.
+     */
+    public long getNamedProducerIdleTimeout() {
+        return namedProducerIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a cached named MessageProducer can remain unused before it
+     * is closed, default is zero meaning cached producers are only closed when the cache is full.
+     * Idle producers are closed by a background task that runs at this interval, including those
+     * cached by Sessions that are sitting idle in the pool, and whenever a producer is returned to
+     * the same Session's cache.  The value should be set before the first Connection is created.
+     *
+     * @param namedProducerIdleTimeout
+     *      The idle timeout for cached named producers.
+     */
+    public void setNamedProducerIdleTimeout(long namedProducerIdleTimeout) {
+        this.namedProducerIdleTimeout = namedProducerIdleTimeout;
+    }
+
+    /**
+     * Returns whether a Session closed by a thread is handed back to it on the next call to
+     * createSession it makes with the same session mode if still idle, default is false.
+     *
+     * @return true if pooled Sessions are preferably handed back to the thread that last closed them.
+     */
+    public boolean isUseThreadAffineSessions() {
+        return this.useThreadAffineSessions;
+    }
+
+    /**
+     * Sets whether a Session closed by a thread is handed back to it on the next call to
+     * createSession it makes with the same session mode if the Session is still idle.
+     * <p>
+     * This suits applications that repeatedly create, use and close a Session on the same thread
+     * as each thread keeps working with the same Session.  The Session remains in the Connection's
+     * shared idle pool while it is not in use so it counts against the idle limit and can be taken
+     * by any other thread.
+     *
+     * @param value
+     *      Boolean value that configures whether Sessions are kept per thread.
+     */
+    public void setUseThreadAffineSessions(boolean value) {
+        this.useThreadAffineSessions = value;
+    }
+
+    /**
+     * @return the maximum number of MessageConsumers cached per pooled Session.
+     */
+    public int getConsumerCacheSize() {
+        return consumerCacheSize;
+    }
+
+    /**
+     * Sets the number of MessageConsumers each pooled Session keeps open for reuse, default is
+     * zero which disables the cache.
+     * <p>
+     * When enabled closing a MessageConsumer created from a pooled Session leaves the provider
+     * consumer open and keeps it with the Session, a later call to createConsumer with the same
+     * destination, selector and noLocal setting on any loan of that Session reuses it along with
+     * its subscription and any messages it has prefetched.  Once the cache is full the least
+     * recently used consumer is closed.  Consumers that had a MessageListener set and those of
+     * CLIENT_ACKNOWLEDGE or XA Sessions are never cached.
+     *
+     * @param consumerCacheSize
+     *      The maximum number of consumers cached per Session.
+     */
+    public void setConsumerCacheSize(int consumerCacheSize) {
+        this.consumerCacheSize = consumerCacheSize;
+    }
+
+    /**
+     * @return the time in milliseconds a cached MessageConsumer may remain unused.
+     */
+    public long getConsumerIdleTimeout() {
+        return consumerIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a cached MessageConsumer can remain unused before it is
+     * closed, default is zero meaning cached consumers are only closed when the cache is full.
+     * Idle consumers are closed by a background task that runs at this interval, including those
+     * cached by Sessions that are sitting idle in the pool, and whenever a consumer is returned to
+     * the same Session's cache.  The value should be set before the first Connection is created.
+     *
+     * @param consumerIdleTimeout
+     *      The idle timeout for cached consumers.
+     */
+    public void setConsumerIdleTimeout(long consumerIdleTimeout) {
+        this.consumerIdleTimeout = consumerIdleTimeout;
+    }
+
+    /**
+     * @return true if each JMSContext hands out a single reusable JMSProducer.
+     */
+    public boolean isReuseJMSProducers() {
+        return reuseJMSProducers;
+    }
+
+    /**
+     * Sets whether the JMSContext instances created by this factory return the same JMSProducer,
+     * reset to its default configuration, from every call to {@link JMSContext#createProducer()}
+     * rather than a new one, default is false.  The reused producer also refills one message
+     * per body type for synchronous sends of a String, byte[] or Map body instead of creating a
+     * new message for each send, so applications must not hold on to a JMSProducer across calls
+     * to createProducer or retain messages sent this way.  This option has no effect when
+     * {@link #setUseProviderJMSContext(boolean)} is enabled.
+     *
+     * @param reuseJMSProducers
+     *      Should JMSContext instances reuse their JMSProducer and its messages.
+     */
+    public void setReuseJMSProducers(boolean reuseJMSProducers) {
+        this.reuseJMSProducers = reuseJMSProducers;
+    }
+
+    /**
+     * @return the maximum number of closed JMSContext resources kept for reuse per credentials and session mode.
+     */
+    public int getContextPoolSize() {
+        return contextPool.getMaxIdlePerKey();
+    }
+
+    /**
+     * Sets the maximum number of closed JMSContext instances whose Connection, Session and shared
+     * producer are kept for reuse by the next {@link #createContext} call with the same credentials
+     * and session mode, default is zero meaning each context borrows a new Session from the pool.
+     * A context is only recycled when no context created from it through
+     * {@link JMSContext#createContext(int)} remains open and its Session holds no state that must
+     * not outlive it, so CLIENT_ACKNOWLEDGE contexts and those that created temporary destinations
+     * are closed as normal.  A JMSProducer must not be used once the context that created it is
+     * closed as its Session may be in use by another context.  This option has no effect on
+     * XA contexts or when {@link #setUseProviderJMSContext(boolean)} is enabled and should be
+     * configured before the first context is created.
+     *
+     * @param contextPoolSize
+     *      The maximum number of idle contexts kept per credentials and session mode.
+     */
+    public void setContextPoolSize(int contextPoolSize) {
+        contextPool.setMaxIdlePerKey(contextPoolSize);
+    }
+
+    /**
+     * @return the time in milliseconds a pooled JMSContext may stay idle before its resources are closed.
+     */
+    public long getContextIdleTimeout() {
+        return contextIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a closed JMSContext kept for reuse may go unused before a
+     * background task closes its Session and releases the Connection it holds, default is thirty
+     * seconds.  A value of zero or less keeps idle contexts until they are reused or their
+     * Connection expires, idle contexts whose Connection has expired or is being rotated out are
+     * always closed by the background task.
+     *
+     * @param contextIdleTimeout
+     *      The time in milliseconds a pooled context may stay idle.
+     */
+    public void setContextIdleTimeout(long contextIdleTimeout) {
+        this.contextIdleTimeout = contextIdleTimeout;
+    }
+
+    /**
+     * @return the number of Queues and of Topics each Connection keeps resolved by name.
+     */
+    public int getDestinationCacheSize() {
+        return destinationCacheSize;
+    }
+
+    /**
+     * Sets the number of Queues and the number of Topics that each pooled Connection keeps after
+     * resolving them by name, default is zero which disables the cache.
+     * <p>
+     * When enabled the createQueue and createTopic methods of every Session and JMSContext
+     * using the Connection return the destination resolved by an earlier call for the same name
+     * instead of asking the provider again.  Temporary destinations are never cached and the
+     * cache is cleared whenever the Connection reports a failure.
+     *
+     * @param destinationCacheSize
+     *      The maximum number of cached destinations of each type per Connection.
+     */
+    public void setDestinationCacheSize(int destinationCacheSize) {
+        this.destinationCacheSize = destinationCacheSize;
+    }
+
+    /**
+     * @return the maximum number of asynchronous sends each Connection may have awaiting completion.
+     */
+    public int getMaxAsyncSendsInFlight() {
+        return maxAsyncSendsInFlight;
+    }
+
+    /**
+     * Sets the maximum number of sends made with a CompletionListener that each pooled Connection
+     * may have awaiting completion from the remote peer, default is zero meaning no limit.
+     * <p>
+     * Bounding the window keeps a slow remote peer from letting unacknowledged messages pile up
+     * in memory.  Once the window is full further asynchronous sends block or fail depending on
+     * the {@link #setBlockIfAsyncSendWindowIsFull(boolean)} setting.
+     *
+     * @param maxAsyncSendsInFlight
+     *      The maximum number of asynchronous sends in flight per Connection.
+     */
+    public void setMaxAsyncSendsInFlight(int maxAsyncSendsInFlight) {
+        this.maxAsyncSendsInFlight = maxAsyncSendsInFlight;
+    }
+
+    /**
+     * @return true if an asynchronous send blocks when the async send window is full.
+     *
+     * @see #setBlockIfAsyncSendWindowIsFull(boolean)
+     */
+    public boolean isBlockIfAsyncSendWindowIsFull() {
+        return blockIfAsyncSendWindowIsFull;
+    }
+
+    /**
+     * Controls whether an asynchronous send blocks until an earlier send completes when the
+     * Connection's async send window is full, default is true.  When false the send fails with
+     * a ResourceAllocationException instead.
+     *
+     * @param block
+     *      if true an asynchronous send blocks while the window is full.
+     */
+    public void setBlockIfAsyncSendWindowIsFull(boolean block) {
+        this.blockIfAsyncSendWindowIsFull = block;
+    }
+
+    /**
+     * @return the time in milliseconds an asynchronous send waits for room in a full window.
+     *
+     * @see #setBlockIfAsyncSendWindowIsFull(boolean)
+     */
+    public long getBlockIfAsyncSendWindowIsFullTimeout() {
+        return blockIfAsyncSendWindowIsFullTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds an asynchronous send blocked on a full async send window
+     * waits before failing with a ResourceAllocationException, default is -1 meaning it waits
+     * for as long as it takes.
+     *
+     * @param blockIfAsyncSendWindowIsFullTimeout
+     *      The time to wait for room in the async send window.
+     */
+    public void setBlockIfAsyncSendWindowIsFullTimeout(long blockIfAsyncSendWindowIsFullTimeout) {
+        this.blockIfAsyncSendWindowIsFullTimeout = blockIfAsyncSendWindowIsFullTimeout;
+    }
+
     /**
      * Sets the number of milliseconds to sleep between runs of the idle Connection eviction thread.
      * When non-positive, no idle object eviction thread will be run, and Connections will only be
@@ -533,6 +908,67 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
         return getConnectionsPool().getNumIdle();
     }
 
+    /**
+     * @return the number of rotated out Connections that are still open for those holding them.
+     */
+    public int getNumDrainingConnections() {
+        return drainingConnections.size();
+    }
+
+    /**
+     * @return the number of closed JMSContext instances currently held for reuse.
+     */
+    public int getNumPooledContexts() {
+        return contextPool.getNumIdle();
+    }
+
+    /**
+     * Returns the number of times a transacted Session was returned to the pool without the
+     * rollback that is otherwise issued on close, each of which saved a round trip to the remote
+     * peer.  A rollback is skipped when no message was sent or received since the Session was
+     * last committed or rolled back.
+     *
+     * @return the number of Session rollbacks skipped across all Connections in the pool.
+     */
+    public long getNumSessionRollbacksSkipped() {
+        return sessionRollbacksSkipped.get();
+    }
+
+    /**
+     * @return the number of asynchronous sends awaiting completion across all Connections in the pool.
+     */
+    public int getNumAsyncSendsInFlight() {
+        int result = 0;
+        for (List<PooledConnection> connections : pooledConnections.values()) {
+            for (PooledConnection connection : connections) {
+                result += connection.getNumAsyncSendsInFlight();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the number of asynchronous sends that have completed across all Connections in the pool.
+     */
+    public long getNumAsyncSendsCompleted() {
+        return asyncSendStatistics.getNumCompleted();
+    }
+
+    /**
+     * @return the average time in nanoseconds between an asynchronous send and its completion.
+     */
+    public long getAverageAsyncSendCompletionNanos() {
+        return asyncSendStatistics.getAverageCompletionNanos();
+    }
+
+    /**
+     * @return the longest time in nanoseconds between an asynchronous send and its completion.
+     */
+    public long getMaxAsyncSendCompletionNanos() {
+        return asyncSendStatistics.getMaxCompletionNanos();
+    }
+
     /**
      * Returns the timeout to use for blocking creating new sessions
      *
@@ -581,114 +1017,416 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
     }
 
     /**
-     * @return the true if the pool is using the provider's JMSContext instead of a pooled version.
+     * @return the time in milliseconds before expiration at which a Connection is rotated out.
      */
-    public boolean isUseProviderJMSContext() {
-        return useProviderJMSContext;
+    public long getConnectionRotationLeadTime() {
+        return connectionRotationLeadTime;
     }
 
     /**
-     * Controls the behavior of the {@link JmsPoolConnectionFactory#createContext} methods.
+     * Sets how long before a Connection reaches its expiry timeout the pool opens a replacement
+     * Connection and swaps it into the pool in place of the expiring one.  The Connection that
+     * was swapped out remains usable by those that hold it and is closed once it is released.
      * <p>
-     * By default this value is set to false and the JMS Pool will use an pooled version of
-     * a JMSContext to wrap Connections from the pool.  These pooled JMSContext's have certain
-     * limitations which may not be desirable in some cases.  To use the JMSContext implementation
-     * from the underlying JMS provider this option can be set to true.
+     * By default this value is zero and rotation is disabled, expired Connections are then
+     * replaced by the next caller that needs a Connection.  Rotation only applies when an
+     * expiry timeout is configured and the lead time is less than that timeout.
      *
-     * @param useProviderJMSContext
-     * 		Boolean value indicating whether the pool should include JMSContext in the pooling.
+     * @param connectionRotationLeadTime
+     *      The time in milliseconds before expiration at which the Connection is rotated.
      */
-    public void setUseProviderJMSContext(boolean useProviderJMSContext) {
-        this.useProviderJMSContext = useProviderJMSContext;
+    public void setConnectionRotationLeadTime(long connectionRotationLeadTime) {
+        this.connectionRotationLeadTime = connectionRotationLeadTime;
     }
 
-    //----- Internal implementation ------------------------------------------//
+    /**
+     * @return the maximum random time in milliseconds by which a Connection rotation is advanced.
+     */
+    public long getConnectionRotationJitter() {
+        return connectionRotationJitter;
+    }
 
     /**
-     * Gets the Pool of ConnectionPool instances which are keyed by different ConnectionKeys.
+     * Sets the maximum amount of time in milliseconds by which each Connection rotation is
+     * randomly moved earlier so that Connections created together do not all rotate at once.
+     * <p>
+     * By default this value is zero and every Connection rotates exactly the configured lead
+     * time ahead of its expiration.
      *
-     * @return this factories pool of ConnectionPool instances.
+     * @param connectionRotationJitter
+     *      The maximum random time in milliseconds to advance each Connection rotation.
      */
-    protected GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> getConnectionsPool() {
-        initConnectionsPool();
-        return this.connectionsPool;
+    public void setConnectionRotationJitter(long connectionRotationJitter) {
+        this.connectionRotationJitter = connectionRotationJitter;
     }
 
     /**
-     * Delegate that creates each instance of an ConnectionPool object.  Subclasses can override
-     * this method to customize the type of connection pool returned.
-     *
-     * @param connection
-     * 		The connection that is being added into the pool.
-     *
-     * @return instance of a new ConnectionPool.
+     * @return the number of consecutive Connection creation failures that open the circuit breaker.
      */
-    protected PooledConnection createPooledConnection(Connection connection) {
-        return new PooledConnection(connection);
+    public int getConnectionCircuitBreakerThreshold() {
+        return connectionCircuitBreakerThreshold;
     }
 
     /**
-     * Allows subclasses to create an appropriate JmsPoolConnection wrapper for the newly
-     * create connection such as one that provides support for XA Transactions.
-     *
-     * @param connection
-     * 		The {@link PooledConnection} to wrap.
+     * Sets the number of consecutive failures to create a new Connection for a given user name
+     * and password after which further attempts fail fast instead of going to the provider.
+     * <p>
+     * While the circuit is open calls that need a new Connection throw a JMSException right away.
+     * Once the backoff period has elapsed a single call is allowed to probe the remote peer, if that
+     * succeeds the circuit closes and if it fails the circuit re-opens with the backoff doubled.
+     * By default this value is zero and the circuit breaker is disabled.
      *
-     * @return a new {@link JmsPoolConnection} that wraps the given {@link PooledConnection}
+     * @param connectionCircuitBreakerThreshold
+     *      The number of consecutive failures that open the circuit, zero to disable.
      */
-    protected JmsPoolConnection newPooledConnectionWrapper(PooledConnection connection) {
-        return new JmsPoolConnection(connection);
+    public void setConnectionCircuitBreakerThreshold(int connectionCircuitBreakerThreshold) {
+        this.connectionCircuitBreakerThreshold = connectionCircuitBreakerThreshold;
     }
 
     /**
-     * Allows subclasses to create an appropriate JmsPoolJMSContext wrapper for the newly
-     * create JMSContext such as one that provides support for XA Transactions.
-     *
-     * @param connection
-     * 		The {@link JmsPoolConnection} to use in the JMSContext wrapper.
-     *
-     * @return a new {@link JmsPoolJMSContext} that wraps the given {@link JmsPoolConnection}
+     * @return the time in milliseconds that the circuit stays open after it first opens.
      */
-    protected JmsPoolJMSContext newPooledConnectionContext(JmsPoolConnection connection, int sessionMode) {
-        return new JmsPoolJMSContext(connection, sessionMode);
+    public long getConnectionCircuitBreakerInitialBackoff() {
+        return connectionCircuitBreakerInitialBackoff;
     }
 
     /**
-     * Given a {@link PooledConnectionKey} create a JMS {@link Connection} using the
-     * configuration from the key and the assigned JMS {@link ConnectionFactory} instance.
-     *
-     * @param key
-     * 		The {@link PooledSessionKey} to use as configuration for the new JMS Connection.
-     *
-     * @return a new JMS Connection created using the configured JMS ConnectionFactory.
+     * Sets the time in milliseconds that the circuit stays open after it first opens before a
+     * probe attempt is allowed, defaults to one second.
      *
-     * @throws JMSException if an error occurs while creating the new JMS Connection.
+     * @param connectionCircuitBreakerInitialBackoff
+     *      The initial time in milliseconds to fail fast before probing the remote peer.
      */
-    protected Connection createProviderConnection(PooledConnectionKey key) throws JMSException {
-        if (connectionFactory instanceof ConnectionFactory) {
-            if (key.getUserName() == null && key.getPassword() == null) {
-                return ((ConnectionFactory) connectionFactory).createConnection();
-            } else {
-                return ((ConnectionFactory) connectionFactory).createConnection(key.getUserName(), key.getPassword());
-            }
-        } else {
-            throw new IllegalStateException("connectionFactory should implement javax.jms.ConnectionFactory");
-        }
+    public void setConnectionCircuitBreakerInitialBackoff(long connectionCircuitBreakerInitialBackoff) {
+        this.connectionCircuitBreakerInitialBackoff = connectionCircuitBreakerInitialBackoff;
     }
 
     /**
-     * Create a new {@link JMSContext} using the provided credentials and Session mode
+     * @return the maximum time in milliseconds that the circuit stays open between probe attempts.
+     */
+    public long getConnectionCircuitBreakerMaxBackoff() {
+        return connectionCircuitBreakerMaxBackoff;
+    }
+
+    /**
+     * Sets the upper bound in milliseconds for the backoff between probe attempts, which doubles
+     * after each failed probe, defaults to thirty seconds.
      *
-     * @param username
-     * 		The user name to use when creating the context.
-     * @param username
-     * 		The password to use when creating the context.
-     * @param sessionMode
-     * 		The session mode to use when creating the context.
+     * @param connectionCircuitBreakerMaxBackoff
+     *      The maximum time in milliseconds to fail fast between probe attempts.
+     */
+    public void setConnectionCircuitBreakerMaxBackoff(long connectionCircuitBreakerMaxBackoff) {
+        this.connectionCircuitBreakerMaxBackoff = connectionCircuitBreakerMaxBackoff;
+    }
+
+    /**
+     * @return the state of the Connection creation circuit breaker for anonymous Connections.
+     */
+    public ConnectionCircuitBreaker.State getConnectionCircuitBreakerState() {
+        return getConnectionCircuitBreakerState(null, null);
+    }
+
+    /**
+     * Returns the state of the Connection creation circuit breaker for Connections created with
+     * the given credentials.  When no failure has been recorded for the credentials or the circuit
+     * breaker is disabled the circuit is reported as closed.
      *
-     * @return a new JMSContext created using the given configuration data..
+     * @param userName
+     *      The user name used to create the Connections.
+     * @param password
+     *      The password used to create the Connections.
      *
-     * @throws JMSRuntimeException if an error occurs while creating the new JMS Context.
+     * @return the state of the circuit breaker for the given credentials.
+     */
+    public ConnectionCircuitBreaker.State getConnectionCircuitBreakerState(String userName, String password) {
+        final ConnectionCircuitBreaker circuitBreaker = circuitBreakers.get(new PooledConnectionKey(userName, password));
+        return circuitBreaker != null ? circuitBreaker.getState() : ConnectionCircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * @return the number of consecutive failures to create anonymous Connections.
+     */
+    public int getConnectionCreationFailures() {
+        final ConnectionCircuitBreaker circuitBreaker = circuitBreakers.get(new PooledConnectionKey(null, null));
+        return circuitBreaker != null ? circuitBreaker.getConsecutiveFailures() : 0;
+    }
+
+    /**
+     * @return true if failed Connections are replaced by a background task.
+     */
+    public boolean isReconnectInBackground() {
+        return reconnectInBackground;
+    }
+
+    /**
+     * Controls whether a Connection that fails and is closed because reconnect on exception is
+     * enabled is replaced by a background task, so that the pool stays at capacity and callers
+     * do not pay the cost of reconnecting.
+     * <p>
+     * By default this value is false and the failed Connection is replaced by the next caller
+     * that needs a Connection.  Failed replacement attempts are retried with a doubling backoff
+     * for as long as the pool has room for the new Connection.
+     *
+     * @param reconnectInBackground
+     *      Boolean value that configures whether failed Connections are replaced in the background.
+     */
+    public void setReconnectInBackground(boolean reconnectInBackground) {
+        this.reconnectInBackground = reconnectInBackground;
+    }
+
+    /**
+     * @return the time in milliseconds to wait before retrying a failed background reconnect.
+     */
+    public long getReconnectInitialBackoff() {
+        return reconnectInitialBackoff;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before the first retry of a failed background
+     * reconnect attempt, defaults to 100 milliseconds.
+     *
+     * @param reconnectInitialBackoff
+     *      The initial delay in milliseconds between background reconnect attempts.
+     */
+    public void setReconnectInitialBackoff(long reconnectInitialBackoff) {
+        this.reconnectInitialBackoff = reconnectInitialBackoff;
+    }
+
+    /**
+     * @return the maximum time in milliseconds between background reconnect attempts.
+     */
+    public long getReconnectMaxBackoff() {
+        return reconnectMaxBackoff;
+    }
+
+    /**
+     * Sets the upper bound in milliseconds for the doubling delay between background reconnect
+     * attempts, defaults to thirty seconds.
+     *
+     * @param reconnectMaxBackoff
+     *      The maximum delay in milliseconds between background reconnect attempts.
+     */
+    public void setReconnectMaxBackoff(long reconnectMaxBackoff) {
+        this.reconnectMaxBackoff = reconnectMaxBackoff;
+    }
+
+    /**
+     * @return the true if the pool is using the provider's JMSContext instead of a pooled version.
+     */
+    public boolean isUseProviderJMSContext() {
+        return useProviderJMSContext;
+    }
+
+    /**
+     * Controls the behavior of the {@link JmsPoolConnectionFactory#createContext} methods.
+     * <p>
+     * By default this value is set to false and the JMS Pool will use an pooled version of
+     * a JMSContext to wrap Connections from the pool.  These pooled JMSContext's have certain
+     * limitations which may not be desirable in some cases.  To use the JMSContext implementation
+     * from the underlying JMS provider this option can be set to true.
+     *
+     * @param useProviderJMSContext
+     * 		Boolean value indicating whether the pool should include JMSContext in the pooling.
+     */
+    public void setUseProviderJMSContext(boolean useProviderJMSContext) {
+        this.useProviderJMSContext = useProviderJMSContext;
+    }
+
+    /**
+     * @return the number of Connections that are opened when the pool is started.
+     */
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    /**
+     * Sets the number of Connections the pool opens in parallel when it is started so that
+     * the cost of connecting to the remote peer is not paid by the first callers after start.
+     * <p>
+     * By default this value is zero and the pool opens a single Connection on start if the
+     * create connection on startup option is enabled.  The value is capped at the maximum number
+     * of Connections and has no effect when create connection on startup is disabled.  Only
+     * Connections for the default credentials, as used by {@link #createConnection()}, are
+     * opened on start, those for other credentials are created on demand as normal.  Callers
+     * that need a new default Connection while the pool is still warming up wait for the
+     * warm up to finish rather than opening their own.
+     *
+     * @param minConnections
+     *      The number of Connections to open when the pool is started.
+     */
+    public void setMinConnections(int minConnections) {
+        this.minConnections = minConnections;
+    }
+
+    /**
+     * @return the number of idle Sessions each new pooled Connection creates up front.
+     */
+    public int getMinIdleSessionsPerConnection() {
+        return minIdleSessionsPerConnection;
+    }
+
+    /**
+     * Sets the number of non-transacted AUTO_ACKNOWLEDGE Sessions that each new pooled
+     * Connection creates and keeps idle in its Session pool as soon as it is opened.
+     * <p>
+     * By default this value is zero and Sessions are only created on demand.  The value is
+     * capped at the maximum number of active Sessions per Connection.
+     *
+     * @param minIdleSessionsPerConnection
+     *      The number of idle Sessions created for each new Connection.
+     */
+    public void setMinIdleSessionsPerConnection(int minIdleSessionsPerConnection) {
+        this.minIdleSessionsPerConnection = minIdleSessionsPerConnection;
+    }
+
+    /**
+     * @return the time in milliseconds that {@link #start()} waits for the pool to warm up.
+     */
+    public long getWarmUpTimeout() {
+        return warmUpTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds that {@link #start()} waits for the minimum number of
+     * Connections to be opened.
+     * <p>
+     * By default this value is -1 and start waits until all Connections have been opened or
+     * have failed.  A value of zero means start returns immediately while the Connections
+     * are opened in the background.  If the timeout elapses the remaining Connections
+     * continue to be opened in the background.
+     *
+     * @param warmUpTimeout
+     *      The time to wait for the pool to warm up, zero to not wait or negative to wait until done.
+     */
+    public void setWarmUpTimeout(long warmUpTimeout) {
+        this.warmUpTimeout = warmUpTimeout;
+    }
+
+    /**
+     * @return the strategy used to pick a pooled Connection, or null if the pool ordering is used.
+     */
+    public ConnectionSelectionStrategy getConnectionSelectionStrategy() {
+        return connectionSelectionStrategy;
+    }
+
+    /**
+     * Sets the strategy used to select which pooled Connection is handed out once the pool
+     * holds the maximum number of Connections.
+     * <p>
+     * By default this value is null and Connections are handed out in the order that they
+     * are cycled through the underlying pool, which rotates over all pooled Connections
+     * without regard to how many Sessions each one has loaned out.  The strategies in the
+     * {@link org.messaginghub.pooled.jms.pool} package allow for round-robin, least active
+     * Sessions or random choice of two selection instead.
+     *
+     * @param connectionSelectionStrategy
+     *      The strategy to use when selecting a pooled Connection or null to use the pool ordering.
+     */
+    public void setConnectionSelectionStrategy(ConnectionSelectionStrategy connectionSelectionStrategy) {
+        this.connectionSelectionStrategy = connectionSelectionStrategy;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    /**
+     * Gets the Pool of ConnectionPool instances which are keyed by different ConnectionKeys.
+     *
+     * @return this factories pool of ConnectionPool instances.
+     */
+    protected GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> getConnectionsPool() {
+        GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool = this.connectionsPool;
+        if (pool == null) {
+            synchronized (this) {
+                initConnectionsPool();
+                pool = this.connectionsPool;
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * Delegate that creates each instance of an ConnectionPool object.  Subclasses can override
+     * this method to customize the type of connection pool returned.
+     *
+     * @param connection
+     * 		The connection that is being added into the pool.
+     *
+     * @return instance of a new ConnectionPool.
+     */
+    protected PooledConnection createPooledConnection(Connection connection) {
+        return new PooledConnection(connection);
+    }
+
+    /**
+     * Allows subclasses to create an appropriate JmsPoolConnection wrapper for the newly
+     * create connection such as one that provides support for XA Transactions.
+     *
+     * @param connection
+     * 		The {@link PooledConnection} to wrap.
+     *
+     * @return a new {@link JmsPoolConnection} that wraps the given {@link PooledConnection}
+     */
+    protected JmsPoolConnection newPooledConnectionWrapper(PooledConnection connection) {
+        return new JmsPoolConnection(connection);
+    }
+
+    /**
+     * Allows subclasses to create an appropriate JmsPoolJMSContext wrapper for the newly
+     * create JMSContext such as one that provides support for XA Transactions.
+     *
+     * @param connection
+     * 		The {@link JmsPoolConnection} to use in the JMSContext wrapper.
+     *
+     * @return a new {@link JmsPoolJMSContext} that wraps the given {@link JmsPoolConnection}
+     */
+    protected JmsPoolJMSContext newPooledConnectionContext(JmsPoolConnection connection, int sessionMode) {
+        return new JmsPoolJMSContext(connection, sessionMode);
+    }
+
+    /**
+     * @return true if closed JMSContext instances created by this factory can be recycled.
+     */
+    protected boolean isContextPoolingSupported() {
+        return true;
+    }
+
+    /**
+     * Given a {@link PooledConnectionKey} create a JMS {@link Connection} using the
+     * configuration from the key and the assigned JMS {@link ConnectionFactory} instance.
+     *
+     * @param key
+     * 		The {@link PooledSessionKey} to use as configuration for the new JMS Connection.
+     *
+     * @return a new JMS Connection created using the configured JMS ConnectionFactory.
+     *
+     * @throws JMSException if an error occurs while creating the new JMS Connection.
+     */
+    protected Connection createProviderConnection(PooledConnectionKey key) throws JMSException {
+        if (connectionFactory instanceof ConnectionFactory) {
+            if (key.getUserName() == null && key.getPassword() == null) {
+                return ((ConnectionFactory) connectionFactory).createConnection();
+            } else {
+                return ((ConnectionFactory) connectionFactory).createConnection(key.getUserName(), key.getPassword());
+            }
+        } else {
+            throw new IllegalStateException("connectionFactory should implement javax.jms.ConnectionFactory");
+        }
+    }
+
+    /**
+     * Create a new {@link JMSContext} using the provided credentials and Session mode
+     *
+     * @param username
+     * 		The user name to use when creating the context.
+     * @param username
+     * 		The password to use when creating the context.
+     * @param sessionMode
+     * 		The session mode to use when creating the context.
+     *
+     * @return a new JMSContext created using the given configuration data..
+     *
+     * @throws JMSRuntimeException if an error occurs while creating the new JMS Context.
      */
     protected JMSContext createProviderContext(String username, String password, int sessionMode) {
         if (connectionFactory instanceof ConnectionFactory) {
@@ -702,7 +1440,7 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
         }
     }
 
-    private synchronized JmsPoolConnection createJmsPoolConnection(String userName, String password) throws JMSException {
+    private JmsPoolConnection createJmsPoolConnection(String userName, String password) throws JMSException {
         if (stopped.get()) {
             LOG.debug("JmsPoolConnectionFactory is stopped, skip create new connection.");
             return null;
@@ -712,51 +1450,605 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
             throw new IllegalStateException("No ConnectionFactory instance has been configured");
         }
 
+        final GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool = getConnectionsPool();
+        final PooledConnectionKey key = new PooledConnectionKey(userName, password);
+
+        PooledConnection connection = null;
+
+        // This will either return an existing non-expired ConnectionPool or it will create
+        // a new one to meet the demand.  Connections that are briefly borrowed by other
+        // threads are counted as well so that they are not mistaken for free capacity.
+        if (pool.getNumIdle(key) + pool.getNumActive(key) < pool.getMaxIdlePerKey()) {
+            connection = createNewPooledConnection(pool, key);
+        }
+
+        if (connection == null && connectionSelectionStrategy != null) {
+            connection = selectPooledConnection(key);
+        }
+
+        if (connection == null) {
+            connection = borrowPooledConnection(pool, key);
+        }
+
+        return newPooledConnectionWrapper(connection);
+    }
+
+    /*
+     * Adds a new Connection to the pool and claims a reference to it.  Creation is single flight
+     * per key, callers that arrive while another thread is creating a Connection for the same key
+     * wait for that creation to finish and then re-check the capacity of the pool, or fail with
+     * the same error if the creation failed.  Returns null once the pool is full and the caller
+     * must borrow instead.
+     */
+    private PooledConnection createNewPooledConnection(GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool, PooledConnectionKey key) throws JMSException {
+        while (pool.getNumIdle(key) + pool.getNumActive(key) < pool.getMaxIdlePerKey()) {
+            final CompletableFuture<PooledConnection> creation = new CompletableFuture<PooledConnection>();
+            final CompletableFuture<PooledConnection> inFlight = pendingCreations.putIfAbsent(key, creation);
+
+            if (inFlight == null) {
+                return createNewPooledConnection(pool, key, creation);
+            }
+
+            try {
+                inFlight.get();
+            } catch (ExecutionException e) {
+                throw JMSExceptionSupport.create("Error while attempting to add new Connection to the pool", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw JMSExceptionSupport.create("Interrupted while waiting for a new Connection to be added to the pool", e);
+            }
+        }
+
+        return null;
+    }
+
+    private PooledConnection createNewPooledConnection(GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool, PooledConnectionKey key, CompletableFuture<PooledConnection> creation) throws JMSException {
         PooledConnection connection = null;
-        PooledConnectionKey key = new PooledConnectionKey(userName, password);
 
-        // This will either return an existing non-expired ConnectionPool or it
-        // will create a new one to meet the demand.
-        if (getConnectionsPool().getNumIdle(key) < getMaxConnections()) {
+        try {
+            // Another creation may have completed between the capacity check and taking the flight.
+            if (pool.getNumIdle(key) + pool.getNumActive(key) >= pool.getMaxIdlePerKey()) {
+                return null;
+            }
+
+            connection = makePooledConnection(key);
+            if (!addPooledConnection(pool, key, connection)) {
+                connection = null;
+            }
+
+            if (connection != null && !connection.tryIncrementReferenceCount()) {
+                connection = null;
+            }
+
+            return connection;
+        } catch (Exception e) {
+            final JMSException error = JMSExceptionSupport.create("Error while attempting to add new Connection to the pool", e);
+            creation.completeExceptionally(error);
+            throw error;
+        } finally {
+            creation.complete(connection);
+            pendingCreations.remove(key, creation);
+        }
+    }
+
+    /*
+     * Places a Connection that was opened outside of the pool into it by handing it to makeObject.
+     * Returns false and closes the Connection if the pool has no room left for it.
+     */
+    private boolean addPooledConnection(GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool, PooledConnectionKey key, PooledConnection connection) throws Exception {
+        stagedConnection.set(connection);
+        try {
+            pool.addObject(key);
+        } finally {
+            if (stagedConnection.get() != null) {
+                // The pool did not take the Connection as another caller filled the last slot.
+                stagedConnection.remove();
+                connection.close();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Asks the configured strategy to pick one of the pooled Connections and claims a reference
+     * to it.  Returns null if the choice is expired or closed so that the caller borrows from
+     * the pool instead which also weeds out the dead Connection through validation.
+     */
+    private PooledConnection selectPooledConnection(PooledConnectionKey key) {
+        final List<PooledConnection> candidates = pooledConnections.get(key);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+
+        final PooledConnection connection = connectionSelectionStrategy.select(key, candidates);
+        if (connection != null && !connection.expiredCheck() && connection.tryIncrementReferenceCount()) {
+            return connection;
+        }
+
+        return null;
+    }
+
+    /*
+     * Opens a new provider Connection and wraps it in a configured PooledConnection without
+     * placing it into the pool.
+     */
+    private PooledConnection makePooledConnection(final PooledConnectionKey connectionKey) throws JMSException {
+        final ConnectionCircuitBreaker circuitBreaker = getCircuitBreaker(connectionKey);
+        final Connection delegate;
+
+        if (circuitBreaker != null) {
+            circuitBreaker.acquire();
             try {
-                connectionsPool.addObject(key);
-                connection = mostRecentlyCreated.getAndSet(null);
-                connection.incrementReferenceCount();
-            } catch (Exception e) {
-                throw JMSExceptionSupport.create("Error while attempting to add new Connection to the pool", e);
+                delegate = createProviderConnection(connectionKey);
+            } catch (JMSException | RuntimeException e) {
+                circuitBreaker.onFailure(e);
+                LOG.debug("Connection creation failed, circuit is now: {}", circuitBreaker);
+                throw e;
             }
+            circuitBreaker.onSuccess();
         } else {
+            delegate = createProviderConnection(connectionKey);
+        }
+
+        final PooledConnection connection = createPooledConnection(delegate);
+        connection.setIdleTimeout(getIdleTimeout());
+        connection.setExpiryTimeout(getExpiryTimeout());
+        connection.setMaximumActiveSessionPerConnection(getMaximumActiveSessionPerConnection());
+        connection.setBlockIfSessionPoolIsFull(isBlockIfSessionPoolIsFull());
+        if (isBlockIfSessionPoolIsFull() && getBlockIfSessionPoolIsFullTimeout() > 0) {
+            connection.setBlockIfSessionPoolIsFullTimeout(getBlockIfSessionPoolIsFullTimeout());
+        }
+        connection.setUseAnonymousProducers(isUseAnonymousProducers());
+        connection.setReuseJMSProducers(isReuseJMSProducers());
+        connection.setUseThreadAffineSessions(isUseThreadAffineSessions());
+        connection.setNamedProducerCacheSize(getNamedProducerCacheSize());
+        connection.setNamedProducerIdleTimeout(getNamedProducerIdleTimeout());
+        connection.setSessionRollbacksSkippedCounter(sessionRollbacksSkipped);
+        connection.setMaxAsyncSendsInFlight(getMaxAsyncSendsInFlight());
+        connection.setDestinationCacheSize(getDestinationCacheSize());
+        connection.setConsumerCacheSize(getConsumerCacheSize());
+        connection.setConsumerIdleTimeout(getConsumerIdleTimeout());
+        connection.setBlockIfAsyncSendWindowIsFull(isBlockIfAsyncSendWindowIsFull());
+        connection.setBlockIfAsyncSendWindowIsFullTimeout(getBlockIfAsyncSendWindowIsFullTimeout());
+        connection.setAsyncSendStatistics(asyncSendStatistics);
+        connection.setReconnectOnException(isReconnectOnException());
+        if (isReconnectInBackground()) {
+            connection.setConnectionFailedListener(new ExceptionListener() {
+
+                @Override
+                public void onException(JMSException exception) {
+                    LOG.debug("Connection failed: {}, scheduling replacement", connection);
+                    scheduleConnectionReplacement(connectionKey, connection, 0);
+                }
+            });
+        }
+
+        LOG.trace("Created new connection: {}", connection);
+
+        if (getMinIdleSessionsPerConnection() > 0) {
             try {
-                // We can race against other threads returning the connection when there is an
-                // expiration or idle timeout.  We keep pulling out ConnectionPool instances until
-                // we win and get a non-closed instance and then increment the reference count
-                // under lock to prevent another thread from triggering an expiration check and
-                // pulling the rug out from under us.
-                while (connection == null) {
-                    connection = connectionsPool.borrowObject(key);
-                    synchronized (connection) {
-                        if (connection.getConnection() != null) {
-                            connection.incrementReferenceCount();
-                            break;
-                        }
+                connection.prepareIdleSessions(getMinIdleSessionsPerConnection());
+            } catch (JMSException e) {
+                LOG.warn("Failed to create idle sessions for new connection: " + connection + ". This exception will be ignored.", e);
+            }
+        }
 
-                        // Return the bad one to the pool and let if get destroyed as normal.
-                        connectionsPool.returnObject(key, connection);
-                        connection = null;
-                    }
+        return connection;
+    }
+
+    private ConnectionCircuitBreaker getCircuitBreaker(PooledConnectionKey key) {
+        if (getConnectionCircuitBreakerThreshold() <= 0) {
+            return null;
+        }
+
+        ConnectionCircuitBreaker circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+            circuitBreaker = new ConnectionCircuitBreaker(
+                getConnectionCircuitBreakerThreshold(), getConnectionCircuitBreakerInitialBackoff(), getConnectionCircuitBreakerMaxBackoff());
+            final ConnectionCircuitBreaker existing = circuitBreakers.putIfAbsent(key, circuitBreaker);
+            if (existing != null) {
+                circuitBreaker = existing;
+            }
+        }
+
+        return circuitBreaker;
+    }
+
+    private void scheduleConnectionRotation(final PooledConnectionKey key, final PooledConnection connection) {
+        final long expiryTimeout = getExpiryTimeout();
+        final long leadTime = getConnectionRotationLeadTime();
+
+        if (leadTime <= 0 || expiryTimeout <= 0 || leadTime >= expiryTimeout || stopped.get()) {
+            return;
+        }
+
+        long delay = expiryTimeout - leadTime;
+        if (getConnectionRotationJitter() > 0) {
+            delay -= ThreadLocalRandom.current().nextLong(Math.min(getConnectionRotationJitter(), delay) + 1);
+        }
+
+        final ScheduledFuture<?> rotation = getBackgroundScheduler().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                pendingRotations.remove(connection);
+                rotateConnection(key, connection);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        pendingRotations.put(connection, rotation);
+    }
+
+    private void cancelConnectionRotation(PooledConnection connection) {
+        final ScheduledFuture<?> rotation = pendingRotations.remove(connection);
+        if (rotation != null) {
+            rotation.cancel(false);
+        }
+    }
+
+    /*
+     * Opens the replacement Connection before the current one is taken out of the pool so that
+     * no caller pays the cost of connecting.  The retired Connection keeps serving those that
+     * hold it and is closed once the last of them releases it, at which point it is no longer
+     * tracked as draining.
+     */
+    private void rotateConnection(PooledConnectionKey key, final PooledConnection connection) {
+        final List<PooledConnection> current = pooledConnections.get(key);
+        if (stopped.get() || current == null || !current.contains(connection) || connection.getConnection() == null) {
+            return;
+        }
+
+        final GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool = this.connectionsPool;
+        if (pool == null) {
+            return;
+        }
+
+        final PooledConnection replacement;
+        try {
+            replacement = makePooledConnection(key);
+        } catch (Exception e) {
+            LOG.warn("Failed to open replacement for connection: " + connection + ", it will expire normally.", e);
+            return;
+        }
+
+        LOG.debug("Rotating connection: {} ahead of its expiration", connection);
+
+        drainingConnections.add(connection);
+        connection.drain(new Runnable() {
+
+            @Override
+            public void run() {
+                drainingConnections.remove(connection);
+            }
+        });
+
+        try {
+            pool.invalidateObject(key, connection);
+        } catch (Exception e) {
+            LOG.trace("Rotated connection was already removed from the pool: {}", connection);
+        }
+
+        try {
+            addPooledConnection(pool, key, replacement);
+        } catch (Exception e) {
+            LOG.debug("Failed to add replacement connection to the pool: {}", e.getMessage());
+        }
+    }
+
+    private void scheduleConnectionReplacement(final PooledConnectionKey key, final PooledConnection failed, final int attempt) {
+        if (stopped.get()) {
+            return;
+        }
+
+        long delay = 0;
+        if (attempt > 0) {
+            delay = Math.min(getReconnectMaxBackoff(), getReconnectInitialBackoff() * (1L << Math.min(attempt - 1, 30)));
+        }
+
+        try {
+            getBackgroundScheduler().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    replaceFailedConnection(key, failed, attempt);
                 }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.trace("Connection replacement not scheduled as the pool is stopping");
+        }
+    }
+
+    /*
+     * Removes the failed Connection from the pool and opens a new one in its place so that callers
+     * do not pay the reconnect cost.  Failures are retried with backoff for as long as the pool has
+     * a free slot, callers arriving in the meantime create the Connection themselves as usual.
+     */
+    private void replaceFailedConnection(PooledConnectionKey key, PooledConnection failed, int attempt) {
+        final GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool = this.connectionsPool;
+        if (stopped.get() || pool == null) {
+            return;
+        }
+
+        final List<PooledConnection> current = pooledConnections.get(key);
+        if (current != null && current.contains(failed)) {
+            try {
+                pool.invalidateObject(key, failed);
             } catch (Exception e) {
-                throw JMSExceptionSupport.create("Error while attempting to retrieve a connection from the pool", e);
+                LOG.trace("Failed connection was already removed from the pool: {}", failed);
+            }
+        }
+
+        if (pool.getNumIdle(key) + pool.getNumActive(key) >= pool.getMaxIdlePerKey()) {
+            return;
+        }
+
+        final CompletableFuture<PooledConnection> creation = new CompletableFuture<PooledConnection>();
+        if (pendingCreations.putIfAbsent(key, creation) != null) {
+            return;  // A caller is already creating a new Connection for this key.
+        }
+
+        try {
+            if (pool.getNumIdle(key) + pool.getNumActive(key) < pool.getMaxIdlePerKey()) {
+                final PooledConnection replacement = makePooledConnection(key);
+                if (addPooledConnection(pool, key, replacement)) {
+                    LOG.debug("Replaced failed connection: {} with: {}", failed, replacement);
+                }
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to replace failed connection, attempt {}: {}", attempt + 1, e.getMessage());
+            scheduleConnectionReplacement(key, failed, attempt + 1);
+        } finally {
+            // Waiters re-check the pool and create their own Connection if this attempt failed.
+            creation.complete(null);
+            pendingCreations.remove(key, creation);
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getBackgroundScheduler() {
+        if (backgroundScheduler == null) {
+            backgroundScheduler = new ScheduledThreadPoolExecutor(1, new JmsPoolThreadFactory("JmsPoolConnectionFactory Background Tasks", true));
+            backgroundScheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        return backgroundScheduler;
+    }
+
+    /*
+     * Starts the periodic task that closes resources cached by the pooled Connections once they
+     * have been left unused for longer than their configured idle timeout.  The task runs at the
+     * shortest configured idle timeout and is not started if none is configured.
+     */
+    private void scheduleIdleResourceEviction() {
+        if (idleResourceEviction != null) {
+            return;
+        }
+
+        final long interval = getIdleResourceEvictionInterval();
+        if (interval <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (idleResourceEviction != null || stopped.get()) {
+                return;
             }
 
+            idleResourceEviction = getBackgroundScheduler().scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    evictIdleResources();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long getIdleResourceEvictionInterval() {
+        long interval = 0;
+
+        if (getConsumerCacheSize() > 0 && getConsumerIdleTimeout() > 0) {
+            interval = getConsumerIdleTimeout();
+        }
+
+        if (getNamedProducerCacheSize() > 0 && getNamedProducerIdleTimeout() > 0) {
+            interval = interval > 0 ? Math.min(interval, getNamedProducerIdleTimeout()) : getNamedProducerIdleTimeout();
+        }
+
+        if (getContextPoolSize() > 0) {
+            // Contexts held by expired Connections are released even without an idle timeout.
+            final long contextInterval = getContextIdleTimeout() > 0 ? getContextIdleTimeout() : 30 * 1000L;
+            interval = interval > 0 ? Math.min(interval, contextInterval) : contextInterval;
+        }
+
+        return interval;
+    }
+
+    private void evictIdleResources() {
+        try {
+            contextPool.evictIdle(getContextIdleTimeout());
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to evict idle pooled contexts", e);
+        }
+
+        for (List<PooledConnection> connections : pooledConnections.values()) {
+            for (PooledConnection connection : connections) {
+                try {
+                    connection.evictIdleResources();
+                } catch (RuntimeException e) {
+                    LOG.debug("Failed to evict idle resources of connection: {}", connection, e);
+                }
+            }
+        }
+    }
+
+    private void stopBackgroundTasks() {
+        final ScheduledThreadPoolExecutor scheduler;
+        synchronized (this) {
+            scheduler = backgroundScheduler;
+            backgroundScheduler = null;
+            idleResourceEviction = null;
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        pendingRotations.clear();
+
+        for (PooledConnection draining : drainingConnections) {
+            draining.close();
+        }
+        drainingConnections.clear();
+    }
+
+    /*
+     * Opens the minimum number of Connections for the default credentials in parallel.  The warm
+     * up holds the single flight creation slot of that key until every Connection has been added
+     * so that callers needing a new Connection meanwhile wait for it rather than opening their own.
+     */
+    private void warmUpConnectionsPool() {
+        final GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool = getConnectionsPool();
+        final PooledConnectionKey key = new PooledConnectionKey(null, null);
+        final CompletableFuture<PooledConnection> warmUp = new CompletableFuture<PooledConnection>();
+
+        CompletableFuture<PooledConnection> inFlight;
+        while ((inFlight = pendingCreations.putIfAbsent(key, warmUp)) != null) {
             try {
-                connectionsPool.returnObject(key, connection);
-            } catch (Exception e) {
+                inFlight.get();
+            } catch (ExecutionException e) {
+                // The failed creation has been reported to its caller, the warm up still runs.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        int target = getMinConnections();
+        if (getMaxConnections() > 0) {
+            target = Math.min(target, getMaxConnections());
+        }
+
+        final int needed = target - (pool.getNumIdle(key) + pool.getNumActive(key));
+        if (needed <= 0) {
+            warmUp.complete(null);
+            pendingCreations.remove(key, warmUp);
+            return;
+        }
+
+        LOG.debug("Warming the PooledConnectionFactory with {} new connections", needed);
+
+        final int threads = Math.min(needed, MAX_WARM_UP_THREADS);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new JmsPoolThreadFactory("JmsPoolConnectionFactory Warm Up", true));
+        final CountDownLatch done = new CountDownLatch(needed);
+
+        for (int i = 0; i < needed; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        if (!stopped.get()) {
+                            // Opened in parallel under the one creation slot, the pool still
+                            // enforces the maximum when each Connection is added to it.
+                            addPooledConnection(pool, key, makePooledConnection(key));
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Create pooled connection during start failed. This exception will be ignored.", e);
+                    } finally {
+                        done.countDown();
+                        if (done.getCount() == 0) {
+                            // Waiters re-check the pool and create their own Connection if warm up fell short.
+                            warmUp.complete(null);
+                            pendingCreations.remove(key, warmUp);
+                        }
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+
+        try {
+            if (getWarmUpTimeout() < 0) {
+                done.await();
+            } else if (getWarmUpTimeout() > 0 && !done.await(getWarmUpTimeout(), TimeUnit.MILLISECONDS)) {
+                LOG.debug("Pool warm up did not complete within {} ms, continuing in the background", getWarmUpTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void registerPooledConnection(PooledConnectionKey key, final PooledConnection connection) {
+        pooledConnections.compute(key, new BiFunction<PooledConnectionKey, List<PooledConnection>, List<PooledConnection>>() {
+
+            @Override
+            public List<PooledConnection> apply(PooledConnectionKey key, List<PooledConnection> current) {
+                final List<PooledConnection> updated = current == null ?
+                    new ArrayList<PooledConnection>(1) : new ArrayList<PooledConnection>(current);
+                updated.add(connection);
+                return Collections.unmodifiableList(updated);
+            }
+        });
+    }
+
+    private void unregisterPooledConnection(PooledConnectionKey key, final PooledConnection connection) {
+        pooledConnections.computeIfPresent(key, new BiFunction<PooledConnectionKey, List<PooledConnection>, List<PooledConnection>>() {
+
+            @Override
+            public List<PooledConnection> apply(PooledConnectionKey key, List<PooledConnection> current) {
+                final List<PooledConnection> updated = new ArrayList<PooledConnection>(current);
+                updated.remove(connection);
+                return updated.isEmpty() ? null : Collections.unmodifiableList(updated);
+            }
+        });
+    }
+
+    /*
+     * Borrows a Connection from the pool without any factory wide lock, the pooled instance
+     * is handed straight back once a reference has been claimed so other callers can share it.
+     */
+    private PooledConnection borrowPooledConnection(GenericKeyedObjectPool<PooledConnectionKey, PooledConnection> pool, PooledConnectionKey key) throws JMSException {
+        PooledConnection connection = null;
+
+        try {
+            // We can race against other threads returning the connection when there is an
+            // expiration or idle timeout.  We keep pulling out ConnectionPool instances until
+            // we win and get a non-closed instance and then increment the reference count
+            // atomically to prevent another thread from triggering an expiration check and
+            // pulling the rug out from under us.
+            while (connection == null) {
+                connection = pool.borrowObject(key);
+                if (!connection.tryIncrementReferenceCount()) {
+                    // Return the bad one to the pool and let if get destroyed as normal, unless
+                    // a background replacement already removed it from the pool.
+                    try {
+                        pool.returnObject(key, connection);
+                    } catch (Exception e) {
+                        LOG.trace("Closed connection was already removed from the pool: {}", connection);
+                    }
+                    connection = null;
+                }
+            }
+        } catch (Exception e) {
+            throw JMSExceptionSupport.create("Error while attempting to retrieve a connection from the pool", e);
+        }
+
+        try {
+            pool.returnObject(key, connection);
+        } catch (Exception e) {
+            // A Connection that was rotated out while we held it is no longer in the pool but
+            // remains usable until all references to it have been released.
+            if (!connection.isDraining()) {
                 throw JMSExceptionSupport.create("Error when returning connection to the pool", e);
             }
         }
 
-        return newPooledConnectionWrapper(connection);
+        return connection;
     }
 
     //----- JNDI Operations --------------------------------------------------//
@@ -778,9 +2070,32 @@ public class JmsPoolConnectionFactory implements ConnectionFactory, QueueConnect
         props.setProperty("timeBetweenExpirationCheckMillis", Long.toString(getTimeBetweenExpirationCheckMillis()));
         props.setProperty("createConnectionOnStartup", Boolean.toString(isCreateConnectionOnStartup()));
         props.setProperty("useAnonymousProducers", Boolean.toString(isUseAnonymousProducers()));
+        props.setProperty("useThreadAffineSessions", Boolean.toString(isUseThreadAffineSessions()));
+        props.setProperty("namedProducerCacheSize", Integer.toString(getNamedProducerCacheSize()));
+        props.setProperty("namedProducerIdleTimeout", Long.toString(getNamedProducerIdleTimeout()));
         props.setProperty("blockIfSessionPoolIsFull", Boolean.toString(isBlockIfSessionPoolIsFull()));
         props.setProperty("blockIfSessionPoolIsFullTimeout", Long.toString(getBlockIfSessionPoolIsFullTimeout()));
+        props.setProperty("consumerCacheSize", Integer.toString(getConsumerCacheSize()));
+        props.setProperty("consumerIdleTimeout", Long.toString(getConsumerIdleTimeout()));
+        props.setProperty("destinationCacheSize", Integer.toString(getDestinationCacheSize()));
+        props.setProperty("maxAsyncSendsInFlight", Integer.toString(getMaxAsyncSendsInFlight()));
+        props.setProperty("blockIfAsyncSendWindowIsFull", Boolean.toString(isBlockIfAsyncSendWindowIsFull()));
+        props.setProperty("blockIfAsyncSendWindowIsFullTimeout", Long.toString(getBlockIfAsyncSendWindowIsFullTimeout()));
         props.setProperty("reconnectOnException", Boolean.toString(isReconnectOnException()));
         props.setProperty("useProviderJMSContext", Boolean.toString(isUseProviderJMSContext()));
+        props.setProperty("contextPoolSize", Integer.toString(getContextPoolSize()));
+        props.setProperty("contextIdleTimeout", Long.toString(getContextIdleTimeout()));
+        props.setProperty("reuseJMSProducers", Boolean.toString(isReuseJMSProducers()));
+        props.setProperty("minConnections", Integer.toString(getMinConnections()));
+        props.setProperty("minIdleSessionsPerConnection", Integer.toString(getMinIdleSessionsPerConnection()));
+        props.setProperty("warmUpTimeout", Long.toString(getWarmUpTimeout()));
+        props.setProperty("connectionRotationLeadTime", Long.toString(getConnectionRotationLeadTime()));
+        props.setProperty("connectionRotationJitter", Long.toString(getConnectionRotationJitter()));
+        props.setProperty("connectionCircuitBreakerThreshold", Integer.toString(getConnectionCircuitBreakerThreshold()));
+        props.setProperty("connectionCircuitBreakerInitialBackoff", Long.toString(getConnectionCircuitBreakerInitialBackoff()));
+        props.setProperty("connectionCircuitBreakerMaxBackoff", Long.toString(getConnectionCircuitBreakerMaxBackoff()));
+        props.setProperty("reconnectInBackground", Boolean.toString(isReconnectInBackground()));
+        props.setProperty("reconnectInitialBackoff", Long.toString(getReconnectInitialBackoff()));
+        props.setProperty("reconnectMaxBackoff", Long.toString(getReconnectMaxBackoff()));
     }
 }
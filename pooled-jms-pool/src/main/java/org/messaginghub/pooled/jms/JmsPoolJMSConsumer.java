@@ -16,6 +16,8 @@
  */
 package org.messaginghub.pooled.jms;
 
+import java.util.List;
+
 import javax.jms.JMSConsumer;
 import javax.jms.JMSException;
 import javax.jms.JMSRuntimeException;
@@ -102,6 +104,27 @@ public class JmsPoolJMSConsumer implements JMSConsumer, AutoCloseable {
         }
     }
 
+    /**
+     * Receives up to the given number of messages in a single call.
+     *
+     * @param maxMessages
+     *      the maximum number of messages to return, must be greater than zero.
+     * @param timeout
+     *      the time in milliseconds to wait for the batch, zero waits indefinitely for the
+     *      first message and a negative value never waits.
+     *
+     * @return the messages received in delivery order, empty if none arrived in time.
+     *
+     * @see JmsPoolMessageConsumer#receiveBatch(int, long)
+     */
+    public List<Message> receiveBatch(int maxMessages, long timeout) {
+        try {
+            return consumer.receiveBatch(maxMessages, timeout);
+        } catch (JMSException e) {
+            throw JMSExceptionSupport.createRuntimeException(e);
+        }
+    }
+
     @Override
     public <T> T receiveBody(Class<T> desired) {
         throw new JMSRuntimeException("Pooled JMSConsumer does not support receiveBody");
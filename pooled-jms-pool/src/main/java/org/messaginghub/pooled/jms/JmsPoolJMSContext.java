@@ -42,6 +42,7 @@ import javax.jms.TemporaryTopic;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 
+import org.messaginghub.pooled.jms.pool.PooledConnection;
 import org.messaginghub.pooled.jms.util.JMSExceptionSupport;
 
 /**
@@ -53,19 +54,38 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
 
     private final AtomicLong connectionRefCount;
     private final int sessionMode;
+    private final JmsPoolJMSContextPool contextPool;
+    private final JmsPoolJMSContextPool.Key contextPoolKey;
 
     private JmsPoolSession session;
     private JmsPoolMessageProducer sharedProducer;
+    private JmsPoolJMSProducer reusableProducer;
     private boolean autoStart = true;
+    private boolean recyclable;
+    private boolean released;
 
     public JmsPoolJMSContext(JmsPoolConnection connection, int sessionMode) {
-        this(connection, sessionMode, new AtomicLong(1));
+        this(connection, sessionMode, new AtomicLong(1), null, null);
     }
 
-    private JmsPoolJMSContext(JmsPoolConnection connection, int sessionMode, AtomicLong connectionRefCount) {
+    /*
+     * Creates a context whose Connection, Session and shared producer are handed back to the
+     * given pool on close, the Session and producer are null if the context starts without them.
+     */
+    JmsPoolJMSContext(JmsPoolConnection connection, int sessionMode, JmsPoolSession session, JmsPoolMessageProducer sharedProducer, JmsPoolJMSContextPool contextPool, JmsPoolJMSContextPool.Key contextPoolKey) {
+        this(connection, sessionMode, new AtomicLong(1), contextPool, contextPoolKey);
+
+        this.session = session;
+        this.sharedProducer = sharedProducer;
+        this.recyclable = sessionMode != JMSContext.CLIENT_ACKNOWLEDGE;
+    }
+
+    private JmsPoolJMSContext(JmsPoolConnection connection, int sessionMode, AtomicLong connectionRefCount, JmsPoolJMSContextPool contextPool, JmsPoolJMSContextPool.Key contextPoolKey) {
         this.connection = connection;
         this.sessionMode = sessionMode;
         this.connectionRefCount = connectionRefCount;
+        this.contextPool = contextPool;
+        this.contextPoolKey = contextPoolKey;
     }
 
     @Override
@@ -88,6 +108,10 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
 
     @Override
     public synchronized void close() {
+        if (released || (recyclable && tryReleaseToPool())) {
+            return;
+        }
+
         JMSRuntimeException failure = null;
 
         try {
@@ -254,6 +278,8 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
 
     @Override
     public TemporaryQueue createTemporaryQueue() {
+        // Temporary destinations live as long as the Connection so it cannot be handed on.
+        recyclable = false;
         try {
             return getSession().createTemporaryQueue();
         } catch (JMSException jmse) {
@@ -263,6 +289,7 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
 
     @Override
     public TemporaryTopic createTemporaryTopic() {
+        recyclable = false;
         try {
             return getSession().createTemporaryTopic();
         } catch (JMSException jmse) {
@@ -282,7 +309,7 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
 
         connectionRefCount.incrementAndGet();
 
-        return new JmsPoolJMSContext(connection, sessionMode, connectionRefCount);
+        return new JmsPoolJMSContext(connection, sessionMode, connectionRefCount, null, null);
     }
 
     //----- JMSProducer factory methods --------------------------------------//
@@ -302,12 +329,50 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
                 }
             }
 
+            if (isReuseJMSProducers()) {
+                // Each call hands back the one producer reset to its defaults.
+                if (reusableProducer == null) {
+                    reusableProducer = new JmsPoolJMSProducer(getSession(), sharedProducer, true);
+                } else {
+                    reusableProducer.reset();
+                }
+
+                return reusableProducer;
+            }
+
             return new JmsPoolJMSProducer(getSession(), sharedProducer);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
     }
 
+    /**
+     * Creates a producer that commits the messages it sends in batches on a transacted
+     * Session of its own, see {@link JmsPoolSession#createBatchingProducer(Destination, int, long)}.
+     * The producer is closed along with this context.
+     *
+     * @param destination
+     * 		the default destination of the producer or null if each send names a destination.
+     * @param batchSize
+     * 		the number of pending messages that triggers a commit.
+     * @param batchTimeout
+     * 		the time in milliseconds after the first pending message that triggers a commit, zero to disable.
+     *
+     * @return a new batching producer.
+     */
+    public JmsPoolBatchingProducer createBatchingProducer(Destination destination, int batchSize, long batchTimeout) {
+        if (connectionRefCount.get() == 0) {
+            throw new IllegalStateRuntimeException("The Connection is closed");
+        }
+
+        recyclable = false;
+        try {
+            return getSession().createBatchingProducer(destination, batchSize, batchTimeout);
+        } catch (JMSException jmse) {
+            throw JMSExceptionSupport.createRuntimeException(jmse);
+        }
+    }
+
     //----- JMSConsumer factory methods --------------------------------------//
 
     @Override
@@ -494,6 +559,10 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
     //----- Internal implementation methods ----------------------------------//
 
     protected JmsPoolSession getSession() {
+        if (connectionRefCount.get() == 0) {
+            throw new IllegalStateRuntimeException("The Connection is closed");
+        }
+
         if (session == null) {
             synchronized (this) {
                 if (session == null) {
@@ -509,6 +578,43 @@ public class JmsPoolJMSContext implements JMSContext, AutoCloseable {
         return session;
     }
 
+    /*
+     * Hands the Connection, Session and shared producer to the context pool if no other context
+     * shares the Connection and the Session holds nothing that must not outlive this context.
+     */
+    private boolean tryReleaseToPool() {
+        if (connectionRefCount.get() != 1) {
+            return false;
+        }
+
+        try {
+            if (session != null && !session.prepareForReuse(sharedProducer)) {
+                return false;
+            }
+        } catch (JMSException | RuntimeException ex) {
+            return false;
+        }
+
+        if (!connectionRefCount.compareAndSet(1, 0)) {
+            return false;
+        }
+
+        if (contextPool.release(contextPoolKey, connection, session, sharedProducer)) {
+            session = null;
+            sharedProducer = null;
+            released = true;
+            return true;
+        }
+
+        connectionRefCount.set(1);
+        return false;
+    }
+
+    private boolean isReuseJMSProducers() {
+        final PooledConnection pooled = connection.connection;
+        return pooled != null && pooled.isReuseJMSProducers();
+    }
+
     private QueueBrowser startIfNeeded(QueueBrowser browser) throws JMSException {
         if (getAutoStart()) {
             connection.start();
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.jms.JMSException;
+
+import org.messaginghub.pooled.jms.pool.PooledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the Connection, Session and shared producer of closed {@link JmsPoolJMSContext}
+ * instances so that the next context created for the same credentials and session mode can
+ * pick them up again instead of borrowing them anew.
+ * <p>
+ * Only the resources are pooled, every context handed out is a new instance so that a context
+ * which has been closed keeps failing instead of operating on resources that now belong to another one.
+ */
+final class JmsPoolJMSContextPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolJMSContextPool.class);
+
+    private final ConcurrentMap<Key, BlockingDeque<IdleContext>> idleContexts = new ConcurrentHashMap<>();
+
+    private volatile int maxIdlePerKey;
+
+    public int getMaxIdlePerKey() {
+        return maxIdlePerKey;
+    }
+
+    public void setMaxIdlePerKey(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    /**
+     * Creates a context around idle resources matching the given credentials and session mode.
+     *
+     * @return a new context reusing pooled resources or null if none are available.
+     */
+    public JmsPoolJMSContext takeContext(String username, String password, int sessionMode) {
+        final Key key = new Key(username, password, sessionMode);
+        final BlockingDeque<IdleContext> idle = idleContexts.get(key);
+
+        if (idle != null) {
+            IdleContext candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (isUsable(candidate.connection)) {
+                    return new JmsPoolJMSContext(candidate.connection, sessionMode, candidate.session, candidate.producer, this, key);
+                }
+
+                candidate.close();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a context around a newly created Connection which returns its resources to
+     * this pool when closed.
+     */
+    public JmsPoolJMSContext createContext(JmsPoolConnection connection, String username, String password, int sessionMode) {
+        return new JmsPoolJMSContext(connection, sessionMode, null, null, this, new Key(username, password, sessionMode));
+    }
+
+    /**
+     * Offers the resources of a closed context to the pool.
+     *
+     * @return true if the pool took the resources, false if the caller must close them.
+     */
+    boolean release(Key key, JmsPoolConnection connection, JmsPoolSession session, JmsPoolMessageProducer producer) {
+        // Resources of a Connection that is expired or being rotated out must not hold it open.
+        if (maxIdlePerKey <= 0 || !isUsable(connection)) {
+            return false;
+        }
+
+        BlockingDeque<IdleContext> idle = idleContexts.get(key);
+        if (idle == null) {
+            idle = new LinkedBlockingDeque<>(maxIdlePerKey);
+            final BlockingDeque<IdleContext> existing = idleContexts.putIfAbsent(key, idle);
+            if (existing != null) {
+                idle = existing;
+            }
+        }
+
+        // Most recently used first so that the warmest resources are picked up next.
+        final IdleContext entry = new IdleContext(connection, session, producer, System.currentTimeMillis());
+        return idle.offerFirst(entry);
+    }
+
+    /**
+     * Closes the idle resources that have not been used for longer than the given time or whose
+     * Connection has expired, which releases the hold they have on their pooled Connection.
+     *
+     * @param idleTimeout
+     *      the time in milliseconds resources may stay idle, zero or less for no limit.
+     */
+    public void evictIdle(long idleTimeout) {
+        final long now = System.currentTimeMillis();
+
+        for (BlockingDeque<IdleContext> idle : idleContexts.values()) {
+            // The least recently used entries are at the tail of each deque.
+            final Iterator<IdleContext> entries = idle.descendingIterator();
+            while (entries.hasNext()) {
+                final IdleContext candidate = entries.next();
+                final boolean timedOut = idleTimeout > 0 && now - candidate.lastUsed > idleTimeout;
+
+                // Only the thread that removes an entry may close it, a concurrent take wins otherwise.
+                if ((timedOut || !isUsable(candidate.connection)) && idle.removeLastOccurrence(candidate)) {
+                    candidate.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of idle context resources held by the pool.
+     */
+    public int getNumIdle() {
+        int count = 0;
+        for (BlockingDeque<IdleContext> idle : idleContexts.values()) {
+            count += idle.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Closes all idle resources currently held by the pool.
+     */
+    public void clear() {
+        for (BlockingDeque<IdleContext> idle : idleContexts.values()) {
+            IdleContext context;
+            while ((context = idle.pollFirst()) != null) {
+                context.close();
+            }
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private static boolean isUsable(JmsPoolConnection connection) {
+        final PooledConnection pooled = connection.connection;
+        return !connection.isClosed() && pooled != null && !pooled.isExpired();
+    }
+
+    static final class Key {
+
+        private final String username;
+        private final String password;
+        private final int sessionMode;
+        private final int hash;
+
+        public Key(String username, String password, int sessionMode) {
+            this.username = username;
+            this.password = password;
+            this.sessionMode = sessionMode;
+            this.hash = Objects.hash(username, password, sessionMode);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final Key other = (Key) obj;
+            return sessionMode == other.sessionMode &&
+                   Objects.equals(username, other.username) &&
+                   Objects.equals(password, other.password);
+        }
+    }
+
+    private static final class IdleContext {
+
+        private final JmsPoolConnection connection;
+        private final JmsPoolSession session;
+        private final JmsPoolMessageProducer producer;
+        private final long lastUsed;
+
+        public IdleContext(JmsPoolConnection connection, JmsPoolSession session, JmsPoolMessageProducer producer, long lastUsed) {
+            this.connection = connection;
+            this.session = session;
+            this.producer = producer;
+            this.lastUsed = lastUsed;
+        }
+
+        public void close() {
+            try {
+                if (session != null) {
+                    session.close();
+                }
+            } catch (JMSException ex) {
+                LOG.trace("Ignoring error closing pooled context session", ex);
+            }
+
+            try {
+                connection.close();
+            } catch (JMSException ex) {
+                LOG.trace("Ignoring error closing pooled context connection", ex);
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import static org.messaginghub.pooled.jms.util.JMSMessagePropertySupport.checkVa
 import static org.messaginghub.pooled.jms.util.JMSMessagePropertySupport.convertPropertyTo;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -49,6 +50,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
 
     private final JmsPoolSession session;
     private final JmsPoolMessageProducer producer;
+    private final boolean reuseMessages;
 
     private CompletionListener completionListener;
 
@@ -63,8 +65,13 @@ public class JmsPoolJMSProducer implements JMSProducer {
     private int priority = Message.DEFAULT_PRIORITY;
     private long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
 
-    // Message Properties
-    private final Map<String, Object> messageProperties = new HashMap<String, Object>();
+    // Message Properties, created on first use as most producers never set any.
+    private Map<String, Object> messageProperties;
+
+    // Messages reused by body only sends when message reuse is enabled.
+    private TextMessage reusableTextMessage;
+    private BytesMessage reusableBytesMessage;
+    private MapMessage reusableMapMessage;
 
     /**
      * Create a new pooled JMSProducer instance.
@@ -78,8 +85,28 @@ public class JmsPoolJMSProducer implements JMSProducer {
      *      The shared MessageProducer owned by the parent Session.
      */
     public JmsPoolJMSProducer(JmsPoolSession session, JmsPoolMessageProducer producer) {
+        this(session, producer, false);
+    }
+
+    /**
+     * Create a new pooled JMSProducer instance.
+     *
+     * When message reuse is enabled the producer keeps one provider message per body type and
+     * refills it for each synchronous send of a String, byte[] or Map body instead of creating
+     * a new message every time.  The application must not retain the messages sent this way
+     * as their contents change with the next send.  Asynchronous sends always use a new message.
+     *
+     * @param session
+     *      The Session that created this JMSProducer
+     * @param producer
+     *      The shared MessageProducer owned by the parent Session.
+     * @param reuseMessages
+     *      Should body only sends reuse one message instance per body type.
+     */
+    public JmsPoolJMSProducer(JmsPoolSession session, JmsPoolMessageProducer producer, boolean reuseMessages) {
         this.session = session;
         this.producer = producer;
+        this.reuseMessages = reuseMessages;
     }
 
     @Override
@@ -103,7 +130,15 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public JMSProducer send(Destination destination, byte[] body) {
         try {
-            BytesMessage message = session.createBytesMessage();
+            final BytesMessage message;
+            if (isReuseMessage()) {
+                if (reusableBytesMessage == null) {
+                    reusableBytesMessage = session.createBytesMessage();
+                }
+                message = resetForReuse(reusableBytesMessage);
+            } else {
+                message = session.createBytesMessage();
+            }
             message.writeBytes(body);
             doSend(destination, message);
         } catch (JMSException jmse) {
@@ -116,7 +151,15 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public JMSProducer send(Destination destination, Map<String, Object> body) {
         try {
-            MapMessage message = session.createMapMessage();
+            final MapMessage message;
+            if (isReuseMessage()) {
+                if (reusableMapMessage == null) {
+                    reusableMapMessage = session.createMapMessage();
+                }
+                message = resetForReuse(reusableMapMessage);
+            } else {
+                message = session.createMapMessage();
+            }
             for (Map.Entry<String, Object> entry : body.entrySet()) {
                 message.setObject(entry.getKey(), entry.getValue());
             }
@@ -145,7 +188,16 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public JMSProducer send(Destination destination, String body) {
         try {
-            TextMessage message = session.createTextMessage(body);
+            final TextMessage message;
+            if (isReuseMessage()) {
+                if (reusableTextMessage == null) {
+                    reusableTextMessage = session.createTextMessage();
+                }
+                message = resetForReuse(reusableTextMessage);
+                message.setText(body);
+            } else {
+                message = session.createTextMessage(body);
+            }
             doSend(destination, message);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
@@ -154,14 +206,61 @@ public class JmsPoolJMSProducer implements JMSProducer {
         return this;
     }
 
+    /**
+     * Sends the message using the headers, properties and quality of service settings of the
+     * given template in place of those configured on this producer.  Any completion listener
+     * set on this producer is still used.
+     *
+     * @param template
+     *      the template whose settings are applied to the message.
+     * @param destination
+     *      the destination to send the message to.
+     * @param message
+     *      the message to send.
+     *
+     * @return this producer.
+     */
+    public JMSProducer send(JmsPoolProducerTemplate template, Destination destination, Message message) {
+        try {
+            if (message == null) {
+                throw new MessageFormatException("Message must not be null");
+            }
+
+            template.applyTo(message);
+
+            if (completionListener != null) {
+                producer.send(destination, message, template.getDeliveryMode(), template.getPriority(), template.getTimeToLive(), completionListener);
+            } else {
+                producer.send(destination, message, template.getDeliveryMode(), template.getPriority(), template.getTimeToLive());
+            }
+        } catch (JMSException jmse) {
+            throw JMSExceptionSupport.createRuntimeException(jmse);
+        }
+
+        return this;
+    }
+
+    /**
+     * Creates an immutable template from the headers, properties and quality of service settings
+     * currently configured on this producer.  Later changes to this producer do not affect the
+     * returned template.
+     *
+     * @return a new template holding this producer's current send configuration.
+     */
+    public JmsPoolProducerTemplate toTemplate() {
+        return new JmsPoolProducerTemplate(deliveryMode, priority, timeToLive, correlationId, correlationIdBytes, type, replyTo, getMessageProperties());
+    }
+
     private void doSend(Destination destination, Message message) throws JMSException {
 
         if (message == null) {
             throw new MessageFormatException("Message must not be null");
         }
 
-        for (Map.Entry<String, Object> entry : messageProperties.entrySet()) {
-            message.setObjectProperty(entry.getKey(), entry.getValue());
+        if (messageProperties != null) {
+            for (Map.Entry<String, Object> entry : messageProperties.entrySet()) {
+                message.setObjectProperty(entry.getKey(), entry.getValue());
+            }
         }
 
         if (correlationId != null) {
@@ -188,24 +287,26 @@ public class JmsPoolJMSProducer implements JMSProducer {
 
     @Override
     public JMSProducer clearProperties() {
-        messageProperties.clear();
+        if (messageProperties != null) {
+            messageProperties.clear();
+        }
         return this;
     }
 
     @Override
     public Set<String> getPropertyNames() {
-        return new HashSet<String>(messageProperties.keySet());
+        return new HashSet<String>(getMessageProperties().keySet());
     }
 
     @Override
     public boolean propertyExists(String name) {
-        return messageProperties.containsKey(name);
+        return messageProperties != null && messageProperties.containsKey(name);
     }
 
     @Override
     public boolean getBooleanProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Boolean.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Boolean.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -214,7 +315,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public byte getByteProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Byte.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Byte.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -223,7 +324,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public double getDoubleProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Double.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Double.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -232,7 +333,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public float getFloatProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Float.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Float.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -241,7 +342,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public int getIntProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Integer.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Integer.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -250,7 +351,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public long getLongProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Long.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Long.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -258,13 +359,13 @@ public class JmsPoolJMSProducer implements JMSProducer {
 
     @Override
     public Object getObjectProperty(String name) {
-        return messageProperties.get(name);
+        return getMessageProperties().get(name);
     }
 
     @Override
     public short getShortProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), Short.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), Short.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -273,7 +374,7 @@ public class JmsPoolJMSProducer implements JMSProducer {
     @Override
     public String getStringProperty(String name) {
         try {
-            return convertPropertyTo(name, messageProperties.get(name), String.class);
+            return convertPropertyTo(name, getMessageProperties().get(name), String.class);
         } catch (JMSException jmse) {
             throw JMSExceptionSupport.createRuntimeException(jmse);
         }
@@ -466,10 +567,47 @@ public class JmsPoolJMSProducer implements JMSProducer {
 
     //----- Internal support methods -----------------------------------------//
 
+    /*
+     * Returns this producer to the configuration of a newly created one so that it can be handed
+     * out again, the property map is kept for reuse.
+     */
+    void reset() {
+        completionListener = null;
+        correlationId = null;
+        correlationIdBytes = null;
+        type = null;
+        replyTo = null;
+        deliveryMode = DeliveryMode.PERSISTENT;
+        priority = Message.DEFAULT_PRIORITY;
+        timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+        clearProperties();
+    }
+
+    private Map<String, Object> getMessageProperties() {
+        return messageProperties != null ? messageProperties : Collections.<String, Object>emptyMap();
+    }
+
+    private boolean isReuseMessage() {
+        // The application owns an asynchronously sent message until its completion is signaled.
+        return reuseMessages && completionListener == null;
+    }
+
+    private static <T extends Message> T resetForReuse(T message) throws JMSException {
+        message.clearBody();
+        message.clearProperties();
+        message.setJMSCorrelationID(null);
+        message.setJMSType(null);
+        message.setJMSReplyTo(null);
+        return message;
+    }
+
     private JMSProducer setObjectProperty(String name, Object value) {
         try {
             checkPropertyNameIsValid(name, true);
             checkValidObject(value);
+            if (messageProperties == null) {
+                messageProperties = new HashMap<String, Object>();
+            }
             messageProperties.put(name, value);
             return this;
         } catch (JMSException e) {
@@ -36,6 +36,8 @@ public class JmsPoolJcaConnectionFactory extends JmsPoolXAConnectionFactory {
 
     @Override
     protected PooledJCAConnection createPooledConnection(Connection connection) {
-        return new PooledJCAConnection(connection, getTransactionManager(), getName());
+        PooledJCAConnection pooled = new PooledJCAConnection(connection, getTransactionManager(), getName());
+        pooled.setUseTransactionAffineSessions(isUseTransactionAffineSessions());
+        return pooled;
     }
 }
@@ -0,0 +1,600 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.messaginghub.pooled.jms.util.JmsPoolThreadFactory;
+import org.messaginghub.pooled.jms.util.JmsPoolVirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a number of concurrent receive loops against a single destination, each on a Session
+ * borrowed from a {@link JmsPoolConnectionFactory}, and hands every message received to the
+ * configured {@link MessageListener}.
+ * <p>
+ * Each loop takes messages in batches of up to the configured batch size and, for transacted
+ * or client acknowledged sessions, completes the whole batch with a single commit or acknowledge.
+ * A batch whose listener throws is rolled back (or recovered) so that its messages are redelivered.
+ * <p>
+ * The container starts the configured number of concurrent consumers and adds loops up to the
+ * maximum while every running loop keeps finding messages waiting, loops above the minimum stop
+ * again once they have seen a number of consecutive empty receives.  A loop that encounters an
+ * error releases its Session and Connection back to the pool and retries after the recovery
+ * interval, relying on the pool's reconnect on exception handling to hand it a working Connection.
+ */
+public class JmsPoolListenerContainer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolListenerContainer.class);
+
+    private final JmsPoolConnectionFactory connectionFactory;
+    // Guards the lifecycle without pinning virtual consumer threads while they wait to recover.
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    private final Condition stopping = lifecycleLock.newCondition();
+    private final AtomicInteger activeConsumers = new AtomicInteger();
+    private final AtomicInteger idleConsumers = new AtomicInteger();
+    private final AtomicLong messagesProcessed = new AtomicLong();
+
+    private Destination destination;
+    private String messageSelector;
+    private MessageListener messageListener;
+    private boolean sessionTransacted;
+    private int sessionAcknowledgeMode = Session.AUTO_ACKNOWLEDGE;
+    private int concurrentConsumers = 1;
+    private int maxConcurrentConsumers = 1;
+    private int batchSize = 1;
+    private long receiveTimeout = 1000;
+    private int idleReceivesBeforeScaleDown = 10;
+    private long recoveryInterval = 5000;
+    private boolean useVirtualThreads;
+
+    private volatile boolean running;
+    private ExecutorService executor;
+
+    /**
+     * Creates a new listener container that borrows its Sessions from the given factory.
+     *
+     * @param connectionFactory
+     *      the pooled connection factory used to obtain Connections and Sessions.
+     */
+    public JmsPoolListenerContainer(JmsPoolConnectionFactory connectionFactory) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("A pooled connection factory is required");
+        }
+
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Starts the configured number of concurrent consumers, does nothing if already running.
+     *
+     * @throws IllegalStateException if no destination or message listener has been configured.
+     */
+    public void start() {
+        if (destination == null) {
+            throw new IllegalStateException("A destination must be configured before starting");
+        }
+        if (messageListener == null) {
+            throw new IllegalStateException("A message listener must be configured before starting");
+        }
+
+        lifecycleLock.lock();
+        try {
+            if (running) {
+                return;
+            }
+
+            running = true;
+            executor = Executors.newCachedThreadPool(createThreadFactory());
+
+            for (int i = 0; i < concurrentConsumers; ++i) {
+                scheduleConsumer();
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * Stops all running consumers and waits for any in progress batch to complete, the Sessions
+     * and Connections in use are returned to the pool.
+     *
+     * @throws InterruptedException if interrupted while waiting for the consumers to stop.
+     */
+    public void stop() throws InterruptedException {
+        final ExecutorService executor;
+
+        lifecycleLock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+
+            running = false;
+            executor = this.executor;
+            this.executor = null;
+            stopping.signalAll();
+        } finally {
+            lifecycleLock.unlock();
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(receiveTimeout + TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS)) {
+            LOG.warn("Timed out waiting for listener container consumers to stop");
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if the container has been started and not yet stopped.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of consumer loops currently running.
+     */
+    public int getActiveConsumerCount() {
+        return activeConsumers.get();
+    }
+
+    /**
+     * @return the number of messages handed to the listener since the container was created.
+     */
+    public long getNumMessagesProcessed() {
+        return messagesProcessed.get();
+    }
+
+    //----- Configuration ----------------------------------------------------//
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    /**
+     * Sets the destination that the container consumes from.
+     *
+     * @param destination
+     *      the destination to consume from.
+     */
+    public void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    public String getMessageSelector() {
+        return messageSelector;
+    }
+
+    /**
+     * Sets the message selector applied to each consumer, or null to receive all messages.
+     *
+     * @param messageSelector
+     *      the message selector to apply to each consumer.
+     */
+    public void setMessageSelector(String messageSelector) {
+        this.messageSelector = messageSelector;
+    }
+
+    public MessageListener getMessageListener() {
+        return messageListener;
+    }
+
+    /**
+     * Sets the listener that each received message is handed to.  The listener is called from
+     * several threads at once when more than one consumer is running.
+     *
+     * @param messageListener
+     *      the listener that processes the received messages.
+     */
+    public void setMessageListener(MessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    public boolean isSessionTransacted() {
+        return sessionTransacted;
+    }
+
+    /**
+     * Sets whether the consumers use transacted Sessions, in which case each batch is committed
+     * once all its messages have been processed.
+     *
+     * @param sessionTransacted
+     *      true if the consumer Sessions should be transacted.
+     */
+    public void setSessionTransacted(boolean sessionTransacted) {
+        this.sessionTransacted = sessionTransacted;
+    }
+
+    public int getSessionAcknowledgeMode() {
+        return sessionAcknowledgeMode;
+    }
+
+    /**
+     * Sets the acknowledgement mode of non-transacted consumer Sessions.  When set to
+     * {@link Session#CLIENT_ACKNOWLEDGE} each batch is acknowledged once all its messages
+     * have been processed.
+     *
+     * @param sessionAcknowledgeMode
+     *      the acknowledgement mode used when creating the consumer Sessions.
+     */
+    public void setSessionAcknowledgeMode(int sessionAcknowledgeMode) {
+        this.sessionAcknowledgeMode = sessionAcknowledgeMode;
+    }
+
+    public int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    /**
+     * Sets the number of consumers started with the container, which is also the number that
+     * the container never scales below.  The maximum is raised to match if it is lower.
+     *
+     * @param concurrentConsumers
+     *      the minimum number of concurrent consumers, must be greater than zero.
+     */
+    public void setConcurrentConsumers(int concurrentConsumers) {
+        if (concurrentConsumers <= 0) {
+            throw new IllegalArgumentException("Concurrent consumers must be greater than zero");
+        }
+
+        this.concurrentConsumers = concurrentConsumers;
+        this.maxConcurrentConsumers = Math.max(concurrentConsumers, maxConcurrentConsumers);
+    }
+
+    public int getMaxConcurrentConsumers() {
+        return maxConcurrentConsumers;
+    }
+
+    /**
+     * Sets the number of consumers the container may scale up to while a backlog of messages
+     * is waiting on the destination.  Defaults to the number of concurrent consumers.
+     *
+     * @param maxConcurrentConsumers
+     *      the maximum number of concurrent consumers, cannot be less than the concurrent consumers.
+     */
+    public void setMaxConcurrentConsumers(int maxConcurrentConsumers) {
+        if (maxConcurrentConsumers < concurrentConsumers) {
+            throw new IllegalArgumentException("Max concurrent consumers cannot be less than the concurrent consumers");
+        }
+
+        this.maxConcurrentConsumers = maxConcurrentConsumers;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages each consumer takes and completes together.
+     *
+     * @param batchSize
+     *      the maximum number of messages in a batch, must be greater than zero.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than zero");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public long getReceiveTimeout() {
+        return receiveTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds each receive waits for a batch, this bounds how long it
+     * takes the consumers to notice that the container has been stopped.
+     *
+     * @param receiveTimeout
+     *      the receive timeout in milliseconds, must be greater than zero.
+     */
+    public void setReceiveTimeout(long receiveTimeout) {
+        if (receiveTimeout <= 0) {
+            throw new IllegalArgumentException("Receive timeout must be greater than zero");
+        }
+
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    public int getIdleReceivesBeforeScaleDown() {
+        return idleReceivesBeforeScaleDown;
+    }
+
+    /**
+     * Sets the number of consecutive empty receives after which a consumer above the concurrent
+     * consumers count is stopped.
+     *
+     * @param idleReceivesBeforeScaleDown
+     *      the number of empty receives before scaling down, must be greater than zero.
+     */
+    public void setIdleReceivesBeforeScaleDown(int idleReceivesBeforeScaleDown) {
+        if (idleReceivesBeforeScaleDown <= 0) {
+            throw new IllegalArgumentException("Idle receives before scale down must be greater than zero");
+        }
+
+        this.idleReceivesBeforeScaleDown = idleReceivesBeforeScaleDown;
+    }
+
+    public long getRecoveryInterval() {
+        return recoveryInterval;
+    }
+
+    /**
+     * Sets the time in milliseconds a consumer waits after an error before it obtains a new
+     * Connection and Session from the pool and resumes consuming.
+     *
+     * @param recoveryInterval
+     *      the recovery interval in milliseconds.
+     */
+    public void setRecoveryInterval(long recoveryInterval) {
+        if (recoveryInterval < 0) {
+            throw new IllegalArgumentException("Recovery interval cannot be negative");
+        }
+
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Sets whether the consumer loops run on virtual threads, which allows for large numbers of
+     * consumers that spend most of their time blocked in receive.  Virtual threads require the
+     * pool to be running on Java 21 or later, on older JVMs the container logs a warning and
+     * uses platform threads.
+     *
+     * @param useVirtualThreads
+     *      true if the consumer loops should run on virtual threads.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " { " + destination + ", consumers = " + activeConsumers.get() + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private ThreadFactory createThreadFactory() {
+        if (useVirtualThreads) {
+            if (JmsPoolVirtualThreads.isSupported()) {
+                return JmsPoolVirtualThreads.newThreadFactory("JmsPoolListenerContainer Consumer");
+            }
+
+            LOG.warn("Virtual threads are not supported on this JVM, listener container will use platform threads");
+        }
+
+        return new JmsPoolThreadFactory("JmsPoolListenerContainer Consumer", true);
+    }
+
+    private void scheduleConsumer() {
+        activeConsumers.incrementAndGet();
+        try {
+            executor.execute(new ConsumerLoop());
+        } catch (RuntimeException ex) {
+            activeConsumers.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private void considerScalingUp() {
+        if (idleConsumers.get() > 0 || activeConsumers.get() >= maxConcurrentConsumers) {
+            return;
+        }
+
+        lifecycleLock.lock();
+        try {
+            if (running && activeConsumers.get() < maxConcurrentConsumers) {
+                LOG.debug("Adding consumer to {} to work through a message backlog", this);
+                scheduleConsumer();
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    private boolean tryScaleDown() {
+        int current;
+        do {
+            current = activeConsumers.get();
+            if (current <= concurrentConsumers) {
+                return false;
+            }
+        } while (!activeConsumers.compareAndSet(current, current - 1));
+
+        LOG.debug("Removed idle consumer from {}", this);
+        return true;
+    }
+
+    private boolean waitForRecovery() {
+        lifecycleLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(recoveryInterval);
+            while (running && remaining > 0) {
+                remaining = stopping.awaitNanos(remaining);
+            }
+
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    private final class ConsumerLoop implements Runnable {
+
+        private boolean idle;
+
+        @Override
+        public void run() {
+            boolean scaledDown = false;
+
+            try {
+                while (running && !scaledDown) {
+                    Connection connection = null;
+                    Session session = null;
+
+                    try {
+                        connection = connectionFactory.createConnection();
+                        connection.start();
+                        session = connection.createSession(sessionTransacted, sessionAcknowledgeMode);
+
+                        scaledDown = consume(session);
+                    } catch (JMSException | RuntimeException ex) {
+                        if (running) {
+                            LOG.warn("Listener container consumer on {} failed, will recover: {}", destination, ex.getMessage());
+                            LOG.debug("Listener container consumer failure detail", ex);
+                        }
+                    } finally {
+                        setIdle(false);
+                        closeQuietly(session, connection);
+                    }
+
+                    if (!scaledDown && !waitForRecovery()) {
+                        break;
+                    }
+                }
+            } finally {
+                if (!scaledDown) {
+                    activeConsumers.decrementAndGet();
+                }
+            }
+        }
+
+        /*
+         * Returns true if the loop stopped because the container scaled it down.
+         */
+        private boolean consume(Session session) throws JMSException {
+            final JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(destination, messageSelector);
+            final boolean clientAcknowledge = !sessionTransacted && sessionAcknowledgeMode == Session.CLIENT_ACKNOWLEDGE;
+
+            int emptyReceives = 0;
+
+            try {
+                while (running) {
+                    final List<Message> batch = consumer.receiveBatch(batchSize, receiveTimeout);
+
+                    if (batch.isEmpty()) {
+                        setIdle(true);
+                        if (++emptyReceives >= idleReceivesBeforeScaleDown) {
+                            emptyReceives = 0;
+                            if (tryScaleDown()) {
+                                return true;
+                            }
+                        }
+                        continue;
+                    }
+
+                    emptyReceives = 0;
+                    setIdle(false);
+                    considerScalingUp();
+
+                    if (!dispatch(batch, sessionTransacted || clientAcknowledge)) {
+                        if (sessionTransacted) {
+                            session.rollback();
+                        } else if (clientAcknowledge) {
+                            session.recover();
+                        }
+                    } else if (sessionTransacted) {
+                        session.commit();
+                    } else if (clientAcknowledge) {
+                        batch.get(batch.size() - 1).acknowledge();
+                    }
+                }
+            } finally {
+                consumer.close();
+            }
+
+            return false;
+        }
+
+        /*
+         * Returns false if the listener failed on a message of a batch that can be redelivered,
+         * batches that were already acknowledged on receipt are dispatched in full regardless.
+         */
+        private boolean dispatch(List<Message> batch, boolean redeliverable) {
+            boolean failed = false;
+
+            for (Message message : batch) {
+                try {
+                    messageListener.onMessage(message);
+                    messagesProcessed.incrementAndGet();
+                } catch (RuntimeException ex) {
+                    LOG.warn("Message listener on {} threw: {}", destination, ex.getMessage());
+                    LOG.debug("Message listener failure detail", ex);
+                    failed = true;
+                    if (redeliverable) {
+                        break;
+                    }
+                }
+            }
+
+            return !(failed && redeliverable);
+        }
+
+        private void setIdle(boolean idle) {
+            if (this.idle != idle) {
+                this.idle = idle;
+                if (idle) {
+                    idleConsumers.incrementAndGet();
+                } else {
+                    idleConsumers.decrementAndGet();
+                }
+            }
+        }
+
+        private void closeQuietly(Session session, Connection connection) {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (JMSException ex) {
+                    LOG.trace("Ignoring error closing listener container session", ex);
+                }
+            }
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException ex) {
+                    LOG.trace("Ignoring error closing listener container connection", ex);
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,10 @@
  */
 package org.messaginghub.pooled.jms;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jms.IllegalStateException;
@@ -24,6 +28,8 @@ import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
 
+import org.messaginghub.pooled.jms.pool.PooledConsumerKey;
+
 /**
  * A {@link MessageConsumer} which was created by {@link JmsPoolSession}.
  */
@@ -31,8 +37,11 @@ public class JmsPoolMessageConsumer implements MessageConsumer, AutoCloseable {
 
     private final JmsPoolSession session;
     private final MessageConsumer messageConsumer;
+    private final PooledConsumerKey cacheKey;
     private final AtomicBoolean closed = new AtomicBoolean();
 
+    private volatile boolean listenerSet;
+
     /**
      * Wraps the message consumer.
      *
@@ -42,16 +51,37 @@ public class JmsPoolMessageConsumer implements MessageConsumer, AutoCloseable {
      * 		the created consumer to wrap
      */
     JmsPoolMessageConsumer(JmsPoolSession session, MessageConsumer messageConsumer) {
+        this(session, messageConsumer, null);
+    }
+
+    /**
+     * Wraps the message consumer.
+     *
+     * @param session
+     * 		the pooled session
+     * @param messageConsumer
+     * 		the created consumer to wrap
+     * @param cacheKey
+     * 		the key the consumer is returned to the session's consumer cache under when closed, or null.
+     */
+    JmsPoolMessageConsumer(JmsPoolSession session, MessageConsumer messageConsumer, PooledConsumerKey cacheKey) {
         this.session = session;
         this.messageConsumer = messageConsumer;
+        this.cacheKey = cacheKey;
     }
 
     @Override
     public void close() throws JMSException {
         // ensure session removes consumer from it's list of managed resources.
         if (closed.compareAndSet(false, true)) {
-            session.onConsumerClose(messageConsumer);
-            messageConsumer.close();
+            session.onConsumerClose(this);
+
+            // A consumer that had a listener may be mid delivery so it is never reused.
+            if (cacheKey != null && !listenerSet) {
+                session.onCachedConsumerReleased(cacheKey, messageConsumer);
+            } else {
+                messageConsumer.close();
+            }
         }
     }
 
@@ -70,24 +100,88 @@ public class JmsPoolMessageConsumer implements MessageConsumer, AutoCloseable {
     @Override
     public Message receive() throws JMSException {
         checkClosed();
+        session.onTransactedWork();
         return messageConsumer.receive();
     }
 
     @Override
     public Message receive(long timeout) throws JMSException {
         checkClosed();
+        session.onTransactedWork();
         return messageConsumer.receive(timeout);
     }
 
     @Override
     public Message receiveNoWait() throws JMSException {
         checkClosed();
+        session.onTransactedWork();
         return messageConsumer.receiveNoWait();
     }
 
+    /**
+     * Receives up to the given number of messages in a single call.
+     * <p>
+     * The call blocks until the first message arrives or the timeout expires, any further
+     * messages are then taken with {@link MessageConsumer#receiveNoWait()} until either the
+     * batch is full, no message is immediately available or the timeout has been used up.
+     * Pairing this with a single acknowledge or commit per batch avoids paying the per call
+     * receive and per message acknowledge costs of a {@link #receive()} loop.
+     *
+     * @param maxMessages
+     *      the maximum number of messages to return, must be greater than zero.
+     * @param timeout
+     *      the time in milliseconds to wait for the batch, zero waits indefinitely for the
+     *      first message and a negative value never waits.
+     *
+     * @return the messages received in delivery order, empty if none arrived in time.
+     *
+     * @throws JMSException if an error occurs while receiving from the underlying consumer.
+     */
+    public List<Message> receiveBatch(int maxMessages, long timeout) throws JMSException {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than zero");
+        }
+
+        checkClosed();
+        session.onTransactedWork();
+
+        final Message first;
+        if (timeout == 0) {
+            first = messageConsumer.receive();
+        } else if (timeout > 0) {
+            first = messageConsumer.receive(timeout);
+        } else {
+            first = messageConsumer.receiveNoWait();
+        }
+
+        if (first == null) {
+            return Collections.emptyList();
+        } else if (maxMessages == 1) {
+            return Collections.singletonList(first);
+        }
+
+        final long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        final List<Message> batch = new ArrayList<>(Math.min(maxMessages, 64));
+        batch.add(first);
+
+        while (batch.size() < maxMessages && (deadline == 0 || deadline - System.nanoTime() > 0)) {
+            final Message next = messageConsumer.receiveNoWait();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+
+        return batch;
+    }
+
     @Override
     public void setMessageListener(MessageListener listener) throws JMSException {
         checkClosed();
+        if (listener != null) {
+            listenerSet = true;
+            session.onAsyncDeliveryEnabled();
+        }
         messageConsumer.setMessageListener(listener);
     }
 
@@ -98,6 +192,7 @@ public class JmsPoolMessageConsumer implements MessageConsumer, AutoCloseable {
 
     public MessageConsumer getMessageConsumer() throws JMSException {
         checkClosed();
+        session.onProviderResourceExposed();
         return messageConsumer;
     }
 
@@ -26,6 +26,8 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageProducer;
 
+import org.messaginghub.pooled.jms.pool.AsyncSendWindow.TrackedCompletionListener;
+
 /**
  * A pooled {@link MessageProducer}
  */
@@ -36,6 +38,7 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
     private final Destination destination;
 
     private final boolean shared;
+    private final boolean cached;
     private final boolean anonymousProducer;
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
@@ -45,12 +48,34 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
     private int priority;
     private long timeToLive;
     private long deliveryDelay;
+    private long providerDeliveryDelay;
 
     public JmsPoolMessageProducer(JmsPoolSession session, MessageProducer messageProducer, Destination destination, boolean shared) throws JMSException {
+        this(session, messageProducer, destination, shared, false);
+    }
+
+    /**
+     * Wraps the given producer.
+     *
+     * @param session
+     *      the pooled session that created this producer.
+     * @param messageProducer
+     *      the provider producer being wrapped.
+     * @param destination
+     *      the destination given when the producer was created.
+     * @param shared
+     *      true if the provider producer is the session's shared anonymous producer.
+     * @param cached
+     *      true if the provider producer is handed back to the session's named producer cache on close.
+     *
+     * @throws JMSException if an error occurs while reading the producer configuration.
+     */
+    public JmsPoolMessageProducer(JmsPoolSession session, MessageProducer messageProducer, Destination destination, boolean shared, boolean cached) throws JMSException {
         this.session = session;
         this.messageProducer = messageProducer;
         this.destination = destination;
         this.shared = shared;
+        this.cached = cached;
         this.anonymousProducer = destination == null;
 
         this.deliveryMode = messageProducer.getDeliveryMode();
@@ -61,6 +86,7 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
 
         if (session.isJMSVersionSupported(2, 0)) {
             this.deliveryDelay = messageProducer.getDeliveryDelay();
+            this.providerDeliveryDelay = deliveryDelay;
         }
     }
 
@@ -68,7 +94,12 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
     public void close() throws JMSException {
         if (closed.compareAndSet(false, true)) {
             session.onMessageProducerClosed(this);
-            if (!shared) {
+            if (cached) {
+                if (deliveryDelay != providerDeliveryDelay) {
+                    messageProducer.setDeliveryDelay(providerDeliveryDelay);
+                }
+                session.onCachedProducerReleased(destination, messageProducer);
+            } else if (!shared) {
                 this.messageProducer.close();
             }
         }
@@ -154,42 +185,66 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
     }
 
     private void sendMessage(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener listener) throws JMSException {
-        MessageProducer messageProducer = getMessageProducer();
+        session.onTransactedWork();
+
+        if (listener == null) {
+            sendMessage(messageProducer, destination, message, deliveryMode, priority, timeToLive, null);
+            return;
+        }
 
-        // Only one thread can use the producer at a time to allow for dynamic configuration
-        // changes to match what's been configured here.
-        synchronized (messageProducer) {
+        // Asynchronous sends hold room in the Connection's send window until they complete.
+        final TrackedCompletionListener tracked = session.getAsyncSendWindow().acquire(listener);
+        try {
+            sendMessage(messageProducer, destination, message, deliveryMode, priority, timeToLive, tracked);
+        } catch (JMSException | RuntimeException e) {
+            tracked.release();
+            throw e;
+        }
+    }
 
-            long oldDelayValue = 0;
-            if (deliveryDelay != 0 && session.isJMSVersionSupported(2, 0)) {
-                oldDelayValue = messageProducer.getDeliveryDelay();
-                messageProducer.setDeliveryDelay(deliveryDelay);
-            }
+    private void sendMessage(MessageProducer messageProducer, Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener listener) throws JMSException {
 
-            // For the non-shared MessageProducer that is also not an anonymous producer we
-            // need to call the send method for an explicit MessageProducer otherwise we
-            // would be violating the JMS specification in regards to send calls.
-            //
-            // In all other cases we create an anonymous producer so we call the send with
-            // destination parameter version.
+        // A producer owned by this wrapper already carries the configured delivery delay and the
+        // shared anonymous producer never has its delay changed, so neither needs any per send
+        // configuration and can be used without locking.
+        if (deliveryDelay == 0 || !shared) {
+            doSend(messageProducer, !shared && !anonymousProducer, destination, message, deliveryMode, priority, timeToLive, listener);
+            return;
+        }
+
+        // Sends that need a delivery delay on the shared producer use an anonymous producer
+        // the session keeps for that delay rather than reconfiguring the shared one.
+        final MessageProducer delayedProducer = session.getDelayedProducer(deliveryDelay);
+        if (delayedProducer != null) {
+            doSend(delayedProducer, false, destination, message, deliveryMode, priority, timeToLive, listener);
+        } else {
+            final MessageProducer temporaryProducer = session.createDelayedProducer(deliveryDelay);
             try {
-                if (!shared && !anonymousProducer) {
-                    if (listener == null) {
-                        messageProducer.send(message, deliveryMode, priority, timeToLive);
-                    } else {
-                        messageProducer.send(message, deliveryMode, priority, timeToLive, listener);
-                    }
-                } else {
-                    if (listener == null) {
-                        messageProducer.send(destination, message, deliveryMode, priority, timeToLive);
-                    } else {
-                        messageProducer.send(destination, message, deliveryMode, priority, timeToLive, listener);
-                    }
-                }
+                doSend(temporaryProducer, false, destination, message, deliveryMode, priority, timeToLive, listener);
             } finally {
-                if (deliveryDelay != 0 && session.isJMSVersionSupported(2, 0)) {
-                    messageProducer.setDeliveryDelay(oldDelayValue);
-                }
+                temporaryProducer.close();
+            }
+        }
+    }
+
+    private static void doSend(MessageProducer messageProducer, boolean named, Destination destination, Message message, int deliveryMode, int priority, long timeToLive, CompletionListener listener) throws JMSException {
+        // For the non-shared MessageProducer that is also not an anonymous producer we
+        // need to call the send method for an explicit MessageProducer otherwise we
+        // would be violating the JMS specification in regards to send calls.
+        //
+        // In all other cases we create an anonymous producer so we call the send with
+        // destination parameter version.
+        if (named) {
+            if (listener == null) {
+                messageProducer.send(message, deliveryMode, priority, timeToLive);
+            } else {
+                messageProducer.send(message, deliveryMode, priority, timeToLive, listener);
+            }
+        } else {
+            if (listener == null) {
+                messageProducer.send(destination, message, deliveryMode, priority, timeToLive);
+            } else {
+                messageProducer.send(destination, message, deliveryMode, priority, timeToLive, listener);
             }
         }
     }
@@ -274,8 +329,11 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
         checkClosed();
         session.checkClientJMSVersionSupport(2, 0);
 
+        // The shared producer is left untouched, delayed sends on it use a dedicated producer.
+        if (!shared) {
+            this.messageProducer.setDeliveryDelay(deliveryDelay);
+        }
         this.deliveryDelay = deliveryDelay;
-        this.messageProducer.setDeliveryDelay(deliveryDelay);
     }
 
     @Override
@@ -285,6 +343,7 @@ public class JmsPoolMessageProducer implements MessageProducer, AutoCloseable {
 
     public MessageProducer getMessageProducer() throws JMSException {
         checkClosed();
+        session.onProviderResourceExposed();
         return messageProducer;
     }
 
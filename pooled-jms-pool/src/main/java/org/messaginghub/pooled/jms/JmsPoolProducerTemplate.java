@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * An immutable snapshot of the message headers, properties and quality of service settings
+ * of a {@link JmsPoolJMSProducer}, created with {@link JmsPoolJMSProducer#toTemplate()}.
+ * <p>
+ * Property names and values are validated once when the template is created and are applied
+ * to each message sent with the template using the typed property setters, so that a send
+ * neither iterates a property map nor re-validates the values.  A template holds no reference
+ * to the producer or Session it was created from and can be shared between threads and used
+ * with any {@link JmsPoolJMSProducer}.
+ */
+public final class JmsPoolProducerTemplate {
+
+    private static final byte BOOLEAN_PROPERTY = 0;
+    private static final byte BYTE_PROPERTY = 1;
+    private static final byte SHORT_PROPERTY = 2;
+    private static final byte INT_PROPERTY = 3;
+    private static final byte LONG_PROPERTY = 4;
+    private static final byte FLOAT_PROPERTY = 5;
+    private static final byte DOUBLE_PROPERTY = 6;
+    private static final byte STRING_PROPERTY = 7;
+    private static final byte OBJECT_PROPERTY = 8;
+
+    private final int deliveryMode;
+    private final int priority;
+    private final long timeToLive;
+
+    private final String correlationId;
+    private final byte[] correlationIdBytes;
+    private final String type;
+    private final Destination replyTo;
+
+    private final String[] propertyNames;
+    private final Object[] propertyValues;
+    private final byte[] propertyTypes;
+
+    JmsPoolProducerTemplate(int deliveryMode, int priority, long timeToLive, String correlationId, byte[] correlationIdBytes,
+                            String type, Destination replyTo, Map<String, Object> properties) {
+        this.deliveryMode = deliveryMode;
+        this.priority = priority;
+        this.timeToLive = timeToLive;
+        this.correlationId = correlationId;
+        this.correlationIdBytes = correlationIdBytes != null ? correlationIdBytes.clone() : null;
+        this.type = type;
+        this.replyTo = replyTo;
+
+        this.propertyNames = new String[properties.size()];
+        this.propertyValues = new Object[properties.size()];
+        this.propertyTypes = new byte[properties.size()];
+
+        int index = 0;
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            propertyNames[index] = entry.getKey();
+            propertyValues[index] = entry.getValue();
+            propertyTypes[index] = typeOf(entry.getValue());
+            index++;
+        }
+    }
+
+    /**
+     * Applies the headers and properties of this template to the given message.
+     *
+     * @param message
+     *      the message to update.
+     *
+     * @throws JMSException if the message rejects one of the values.
+     */
+    public void applyTo(Message message) throws JMSException {
+        for (int i = 0; i < propertyNames.length; ++i) {
+            final String name = propertyNames[i];
+            final Object value = propertyValues[i];
+
+            switch (propertyTypes[i]) {
+                case BOOLEAN_PROPERTY:
+                    message.setBooleanProperty(name, (Boolean) value);
+                    break;
+                case BYTE_PROPERTY:
+                    message.setByteProperty(name, (Byte) value);
+                    break;
+                case SHORT_PROPERTY:
+                    message.setShortProperty(name, (Short) value);
+                    break;
+                case INT_PROPERTY:
+                    message.setIntProperty(name, (Integer) value);
+                    break;
+                case LONG_PROPERTY:
+                    message.setLongProperty(name, (Long) value);
+                    break;
+                case FLOAT_PROPERTY:
+                    message.setFloatProperty(name, (Float) value);
+                    break;
+                case DOUBLE_PROPERTY:
+                    message.setDoubleProperty(name, (Double) value);
+                    break;
+                case STRING_PROPERTY:
+                    message.setStringProperty(name, (String) value);
+                    break;
+                default:
+                    message.setObjectProperty(name, value);
+            }
+        }
+
+        if (correlationId != null) {
+            message.setJMSCorrelationID(correlationId);
+        }
+        if (correlationIdBytes != null) {
+            message.setJMSCorrelationIDAsBytes(correlationIdBytes);
+        }
+        if (type != null) {
+            message.setJMSType(type);
+        }
+        if (replyTo != null) {
+            message.setJMSReplyTo(replyTo);
+        }
+    }
+
+    public int getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public String getJMSCorrelationID() {
+        return correlationId;
+    }
+
+    public byte[] getJMSCorrelationIDAsBytes() {
+        return correlationIdBytes != null ? correlationIdBytes.clone() : null;
+    }
+
+    public String getJMSType() {
+        return type;
+    }
+
+    public Destination getJMSReplyTo() {
+        return replyTo;
+    }
+
+    /**
+     * @return the names of the properties this template sets on each message.
+     */
+    public Set<String> getPropertyNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(propertyNames)));
+    }
+
+    /**
+     * @param name
+     *      the name of the property to look up.
+     *
+     * @return the value this template sets for the named property or null if it sets none.
+     */
+    public Object getObjectProperty(String name) {
+        for (int i = 0; i < propertyNames.length; ++i) {
+            if (propertyNames[i].equals(name)) {
+                return propertyValues[i];
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " { properties = " + Arrays.toString(propertyNames) + " }";
+    }
+
+    //----- Internal support methods -----------------------------------------//
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Boolean) {
+            return BOOLEAN_PROPERTY;
+        } else if (value instanceof Byte) {
+            return BYTE_PROPERTY;
+        } else if (value instanceof Short) {
+            return SHORT_PROPERTY;
+        } else if (value instanceof Integer) {
+            return INT_PROPERTY;
+        } else if (value instanceof Long) {
+            return LONG_PROPERTY;
+        } else if (value instanceof Float) {
+            return FLOAT_PROPERTY;
+        } else if (value instanceof Double) {
+            return DOUBLE_PROPERTY;
+        } else if (value instanceof String) {
+            return STRING_PROPERTY;
+        } else {
+            return OBJECT_PROPERTY;
+        }
+    }
+}
@@ -20,6 +20,8 @@ import javax.jms.JMSException;
 import javax.jms.Queue;
 import javax.jms.QueueReceiver;
 
+import org.messaginghub.pooled.jms.pool.PooledConsumerKey;
+
 /**
  * A {@link QueueReceiver} which was created by {@link JmsPoolSession}.
  */
@@ -37,6 +39,20 @@ public class JmsPoolQueueReceiver extends JmsPoolMessageConsumer implements Queu
         super(session, delegate);
     }
 
+    /**
+     * Wraps the QueueReceiver.
+     *
+     * @param session
+     * 		the pooled session that created this object.
+     * @param delegate
+     * 		the created QueueReceiver to wrap.
+     * @param cacheKey
+     * 		the key the receiver is returned to the session's consumer cache under when closed, or null.
+     */
+    public JmsPoolQueueReceiver(JmsPoolSession session, QueueReceiver delegate, PooledConsumerKey cacheKey) {
+        super(session, delegate, cacheKey);
+    }
+
     @Override
     public Queue getQueue() throws JMSException {
         return getQueueReceiver().getQueue();
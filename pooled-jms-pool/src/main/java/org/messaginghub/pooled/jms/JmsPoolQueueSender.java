@@ -31,6 +31,10 @@ public class JmsPoolQueueSender extends JmsPoolMessageProducer implements QueueS
         super(session, messageProducer, destination, shared);
     }
 
+    public JmsPoolQueueSender(JmsPoolSession session, QueueSender messageProducer, Destination destination, boolean shared, boolean cached) throws JMSException {
+        super(session, messageProducer, destination, shared, cached);
+    }
+
     @Override
     public void send(Queue queue, Message message, int deliveryMode, int priority, long timeToLine) throws JMSException {
         super.send(queue, message, deliveryMode, priority, timeToLine);
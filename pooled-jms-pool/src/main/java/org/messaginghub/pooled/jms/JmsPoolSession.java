@@ -47,9 +47,11 @@ import javax.jms.TopicSubscriber;
 import javax.jms.XASession;
 import javax.transaction.xa.XAResource;
 
-import org.apache.commons.pool2.KeyedObjectPool;
+import org.messaginghub.pooled.jms.pool.AsyncSendWindow;
+import org.messaginghub.pooled.jms.pool.PooledConsumerKey;
 import org.messaginghub.pooled.jms.pool.PooledSessionHolder;
 import org.messaginghub.pooled.jms.pool.PooledSessionKey;
+import org.messaginghub.pooled.jms.pool.PooledSessionPool;
 import org.messaginghub.pooled.jms.util.JMSExceptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +60,7 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
     private static final transient Logger LOG = LoggerFactory.getLogger(JmsPoolSession.class);
 
     private final PooledSessionKey key;
-    private final KeyedObjectPool<PooledSessionKey, PooledSessionHolder> sessionPool;
+    private final PooledSessionPool sessionPool;
     private final CopyOnWriteArrayList<MessageProducer> producers = new CopyOnWriteArrayList<>();
     private final CopyOnWriteArrayList<MessageConsumer> consumers = new CopyOnWriteArrayList<>();
     private final CopyOnWriteArrayList<QueueBrowser> browsers = new CopyOnWriteArrayList<>();
@@ -71,7 +73,14 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
     private boolean isXa;
     private boolean useAnonymousProducers = true;
 
-    public JmsPoolSession(PooledSessionKey key, PooledSessionHolder sessionHolder, KeyedObjectPool<PooledSessionKey, PooledSessionHolder> sessionPool, boolean transactional, boolean anonymous) {
+    // Tracks whether a transacted session may hold work that needs a rollback on close.
+    private volatile boolean transactionDirty;
+    private volatile boolean asyncDelivery;
+    private volatile boolean sessionListenerSet;
+    private volatile boolean internalSessionExposed;
+    private volatile boolean providerResourceExposed;
+
+    public JmsPoolSession(PooledSessionKey key, PooledSessionHolder sessionHolder, PooledSessionPool sessionPool, boolean transactional, boolean anonymous) {
         this.key = key;
         this.sessionHolder = sessionHolder;
         this.sessionPool = sessionPool;
@@ -88,40 +97,56 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
         if (closed.compareAndSet(false, true)) {
             boolean invalidate = false;
             try {
-                // lets reset the session
-                getInternalSession().setMessageListener(null);
-
-                // Close any consumers, producers and browsers that may have been created.
-                for (MessageConsumer consumer : consumers) {
-                    consumer.close();
+                // lets reset the session, only needed if a listener could have been set on it.
+                if (sessionListenerSet || internalSessionExposed) {
+                    safeGetSession().setMessageListener(null);
                 }
 
-                for (QueueBrowser browser : browsers) {
-                    browser.close();
+                // Close any consumers, producers and browsers that are still open, those
+                // closed by the client have already removed themselves.
+                if (!consumers.isEmpty()) {
+                    for (MessageConsumer consumer : consumers) {
+                        consumer.close();
+                    }
                 }
 
-                for (MessageProducer producer : producers) {
-                    producer.close();
+                if (!browsers.isEmpty()) {
+                    for (QueueBrowser browser : browsers) {
+                        browser.close();
+                    }
                 }
 
-                consumers.clear();
-                producers.clear();
-                browsers.clear();
+                if (!producers.isEmpty()) {
+                    for (MessageProducer producer : producers) {
+                        producer.close();
+                    }
+                }
 
                 if (transactional && !isXa) {
-                    try {
-                        getInternalSession().rollback();
-                    } catch (JMSException e) {
-                        invalidate = true;
-                        LOG.warn("Caught exception trying rollback() when putting session back into the pool, will invalidate. " + e, e);
+                    if (transactionDirty || asyncDelivery || internalSessionExposed || providerResourceExposed) {
+                        try {
+                            safeGetSession().rollback();
+                        } catch (JMSException e) {
+                            invalidate = true;
+                            LOG.warn("Caught exception trying rollback() when putting session back into the pool, will invalidate. " + e, e);
+                        }
+                    } else {
+                        safeGetSessionHolder().getConnection().onSessionRollbackSkipped();
                     }
                 }
             } catch (JMSException ex) {
                 invalidate = true;
                 LOG.warn("Caught exception trying close() when putting session back into the pool, will invalidate. " + ex, ex);
             } finally {
-                consumers.clear();
-                browsers.clear();
+                if (!consumers.isEmpty()) {
+                    consumers.clear();
+                }
+                if (!browsers.isEmpty()) {
+                    browsers.clear();
+                }
+                if (!producers.isEmpty()) {
+                    producers.clear();
+                }
                 for (JmsPoolSessionEventListener listener : this.sessionEventListeners) {
                     listener.onSessionClosed(this);
                 }
@@ -164,7 +189,7 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
     public TemporaryQueue createTemporaryQueue() throws JMSException {
         TemporaryQueue result;
 
-        result = getInternalSession().createTemporaryQueue();
+        result = safeGetSession().createTemporaryQueue();
 
         // Notify all of the listeners of the created temporary Queue.
         for (JmsPoolSessionEventListener listener : this.sessionEventListeners) {
@@ -178,7 +203,7 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
     public TemporaryTopic createTemporaryTopic() throws JMSException {
         TemporaryTopic result;
 
-        result = getInternalSession().createTemporaryTopic();
+        result = safeGetSession().createTemporaryTopic();
 
         // Notify all of the listeners of the created temporary Topic.
         for (JmsPoolSessionEventListener listener : this.sessionEventListeners) {
@@ -190,86 +215,90 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
     @Override
     public Queue createQueue(String s) throws JMSException {
-        return getInternalSession().createQueue(s);
+        final PooledSessionHolder state = safeGetSessionHolder();
+        return state.getConnection().createQueue(state.getSession(), s);
     }
 
     @Override
     public Topic createTopic(String s) throws JMSException {
-        return getInternalSession().createTopic(s);
+        final PooledSessionHolder state = safeGetSessionHolder();
+        return state.getConnection().createTopic(state.getSession(), s);
     }
 
     //----- Message factory methods ------------------------------------------//
 
     @Override
     public BytesMessage createBytesMessage() throws JMSException {
-        return getInternalSession().createBytesMessage();
+        return safeGetSession().createBytesMessage();
     }
 
     @Override
     public MapMessage createMapMessage() throws JMSException {
-        return getInternalSession().createMapMessage();
+        return safeGetSession().createMapMessage();
     }
 
     @Override
     public Message createMessage() throws JMSException {
-        return getInternalSession().createMessage();
+        return safeGetSession().createMessage();
     }
 
     @Override
     public ObjectMessage createObjectMessage() throws JMSException {
-        return getInternalSession().createObjectMessage();
+        return safeGetSession().createObjectMessage();
     }
 
     @Override
     public ObjectMessage createObjectMessage(Serializable serializable) throws JMSException {
-        return getInternalSession().createObjectMessage(serializable);
+        return safeGetSession().createObjectMessage(serializable);
     }
 
     @Override
     public StreamMessage createStreamMessage() throws JMSException {
-        return getInternalSession().createStreamMessage();
+        return safeGetSession().createStreamMessage();
     }
 
     @Override
     public TextMessage createTextMessage() throws JMSException {
-        return getInternalSession().createTextMessage();
+        return safeGetSession().createTextMessage();
     }
 
     @Override
     public TextMessage createTextMessage(String s) throws JMSException {
-        return getInternalSession().createTextMessage(s);
+        return safeGetSession().createTextMessage(s);
     }
 
     //----- Session management APIs ------------------------------------------//
 
     @Override
     public void unsubscribe(String s) throws JMSException {
-        getInternalSession().unsubscribe(s);
+        safeGetSession().unsubscribe(s);
     }
 
     @Override
     public int getAcknowledgeMode() throws JMSException {
-        return getInternalSession().getAcknowledgeMode();
+        return safeGetSession().getAcknowledgeMode();
     }
 
     @Override
     public boolean getTransacted() throws JMSException {
-        return getInternalSession().getTransacted();
+        return safeGetSession().getTransacted();
     }
 
     @Override
     public void recover() throws JMSException {
-        getInternalSession().recover();
+        safeGetSession().recover();
     }
 
     @Override
     public void commit() throws JMSException {
-        getInternalSession().commit();
+        safeGetSession().commit();
+        transactionDirty = false;
     }
 
     @Override
     public void rollback() throws JMSException {
-        getInternalSession().rollback();
+        safeGetSession().rollback();
+        transactionDirty = false;
     }
 
     @Override
@@ -297,12 +326,16 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
     @Override
     public MessageListener getMessageListener() throws JMSException {
-        return getInternalSession().getMessageListener();
+        return safeGetSession().getMessageListener();
     }
 
     @Override
     public void setMessageListener(MessageListener messageListener) throws JMSException {
-        getInternalSession().setMessageListener(messageListener);
+        if (messageListener != null) {
+            asyncDelivery = true;
+        }
+        sessionListenerSet = true;
+        safeGetSession().setMessageListener(messageListener);
     }
 
     @Override
@@ -315,6 +348,7 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
         }
 
         if (session != null) {
+            asyncDelivery = true;
             session.getSession().run();
         }
     }
@@ -323,57 +357,78 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
     @Override
     public QueueBrowser createBrowser(Queue queue) throws JMSException {
-        return addQueueBrowser(getInternalSession().createBrowser(queue));
+        return addQueueBrowser(safeGetSession().createBrowser(queue));
     }
 
     @Override
     public QueueBrowser createBrowser(Queue queue, String selector) throws JMSException {
-        return addQueueBrowser(getInternalSession().createBrowser(queue, selector));
+        return addQueueBrowser(safeGetSession().createBrowser(queue, selector));
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination) throws JMSException {
-        return addConsumer(getInternalSession().createConsumer(destination));
+        if (isConsumerCacheEnabled()) {
+            return addCachedConsumer(new PooledConsumerKey(destination, null, false));
+        }
+        return addConsumer(safeGetSession().createConsumer(destination));
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector) throws JMSException {
-        return addConsumer(getInternalSession().createConsumer(destination, selector));
+        if (isConsumerCacheEnabled()) {
+            return addCachedConsumer(new PooledConsumerKey(destination, selector, false));
+        }
+        return addConsumer(safeGetSession().createConsumer(destination, selector));
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector, boolean noLocal) throws JMSException {
-        return addConsumer(getInternalSession().createConsumer(destination, selector, noLocal));
+        if (isConsumerCacheEnabled()) {
+            return addCachedConsumer(new PooledConsumerKey(destination, selector, noLocal));
+        }
+        return addConsumer(safeGetSession().createConsumer(destination, selector, noLocal));
     }
 
     @Override
     public TopicSubscriber createDurableSubscriber(Topic topic, String selector) throws JMSException {
-        return addTopicSubscriber(getInternalSession().createDurableSubscriber(topic, selector));
+        return addTopicSubscriber(safeGetSession().createDurableSubscriber(topic, selector));
     }
 
     @Override
     public TopicSubscriber createDurableSubscriber(Topic topic, String name, String selector, boolean noLocal) throws JMSException {
-        return addTopicSubscriber(getInternalSession().createDurableSubscriber(topic, name, selector, noLocal));
+        return addTopicSubscriber(safeGetSession().createDurableSubscriber(topic, name, selector, noLocal));
     }
 
     @Override
     public TopicSubscriber createSubscriber(Topic topic) throws JMSException {
-        return addTopicSubscriber(((TopicSession) getInternalSession()).createSubscriber(topic));
+        if (isConsumerCacheEnabled()) {
+            return addCachedTopicSubscriber(new PooledConsumerKey(topic, null, false));
+        }
+        return addTopicSubscriber(((TopicSession) safeGetSession()).createSubscriber(topic));
     }
 
     @Override
     public TopicSubscriber createSubscriber(Topic topic, String selector, boolean local) throws JMSException {
-        return addTopicSubscriber(((TopicSession) getInternalSession()).createSubscriber(topic, selector, local));
+        if (isConsumerCacheEnabled()) {
+            return addCachedTopicSubscriber(new PooledConsumerKey(topic, selector, local));
+        }
+        return addTopicSubscriber(((TopicSession) safeGetSession()).createSubscriber(topic, selector, local));
     }
 
     @Override
     public QueueReceiver createReceiver(Queue queue) throws JMSException {
-        return addQueueReceiver(((QueueSession) getInternalSession()).createReceiver(queue));
+        if (isConsumerCacheEnabled()) {
+            return addCachedQueueReceiver(new PooledConsumerKey(queue, null, false));
+        }
+        return addQueueReceiver(((QueueSession) safeGetSession()).createReceiver(queue));
     }
 
     @Override
     public QueueReceiver createReceiver(Queue queue, String selector) throws JMSException {
-        return addQueueReceiver(((QueueSession) getInternalSession()).createReceiver(queue, selector));
+        if (isConsumerCacheEnabled()) {
+            return addCachedQueueReceiver(new PooledConsumerKey(queue, selector, false));
+        }
+        return addQueueReceiver(((QueueSession) safeGetSession()).createReceiver(queue, selector));
     }
 
     //----- JMS 2.0 Subscriber creation API ----------------------------------//
@@ -437,6 +492,58 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
         return addTopicPublisher(getTopicPublisher(topic), topic);
     }
 
+    /**
+     * Creates a producer that sends into a transacted Session borrowed from the same pool as
+     * this Session and commits the sent messages in batches.  The returned producer is closed
+     * along with this Session, committing whatever it still has pending.
+     *
+     * @param destination
+     * 		the default destination of the producer or null if each send names a destination.
+     * @param batchSize
+     * 		the number of pending messages that triggers a commit.
+     * @param batchTimeout
+     * 		the time in milliseconds after the first pending message that triggers a commit, zero to disable.
+     *
+     * @return a new batching producer.
+     *
+     * @throws JMSException if this Session is closed or the producer cannot be created.
+     */
+    public JmsPoolBatchingProducer createBatchingProducer(Destination destination, int batchSize, long batchTimeout) throws JMSException {
+        final PooledSessionHolder state = safeGetSessionHolder();
+        if (isXa) {
+            throw new IllegalStateException("Batching producers cannot be used within an XA transaction");
+        }
+
+        final JmsPoolSession batchSession = (JmsPoolSession) state.getConnection().createSession(true, Session.SESSION_TRANSACTED);
+        final JmsPoolBatchingProducer producer;
+        try {
+            producer = new JmsPoolBatchingProducer(batchSession, destination, batchSize, batchTimeout);
+        } catch (JMSException | RuntimeException e) {
+            batchSession.close();
+            throw e;
+        }
+
+        final JmsPoolSessionEventListener closeListener = producer.getSessionCloseListener();
+        addSessionEventListener(closeListener);
+        batchSession.addSessionEventListener(new JmsPoolSessionEventListener() {
+
+            @Override
+            public void onTemporaryQueueCreate(TemporaryQueue tempQueue) {
+            }
+
+            @Override
+            public void onTemporaryTopicCreate(TemporaryTopic tempTopic) {
+            }
+
+            @Override
+            public void onSessionClosed(JmsPoolSession session) {
+                removeSessionEventListener(closeListener);
+            }
+        });
+
+        return producer;
+    }
+
     //----- Session configuration methods ------------------------------------//
 
     public void addSessionEventListener(JmsPoolSessionEventListener listener) throws JMSException {
@@ -446,8 +553,24 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
         }
     }
 
+    public void removeSessionEventListener(JmsPoolSessionEventListener listener) {
+        this.sessionEventListeners.remove(listener);
+    }
+
+    /**
+     * Returns the provider Session this pooled Session wraps.
+     * <p>
+     * Work done directly on the returned Session cannot be tracked so the Session is assumed to
+     * hold uncommitted work from this point on and will be rolled back when closed if transacted.
+     *
+     * @return the provider Session wrapped by this pooled Session.
+     *
+     * @throws JMSException if this pooled Session has been closed.
+     */
     public Session getInternalSession() throws JMSException {
-        return safeGetSessionHolder().getSession();
+        final Session session = safeGetSession();
+        internalSessionExposed = true;
+        return session;
     }
 
     public void setIsXa(boolean isXa) {
@@ -483,7 +606,10 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
      * 		the consumer which is being closed.
      */
     protected void onConsumerClose(MessageConsumer consumer) {
-        consumers.remove(consumer);
+        // The list is cleared in one go when the session is closed.
+        if (!closed.get()) {
+            consumers.remove(consumer);
+        }
     }
 
     /**
@@ -496,7 +622,10 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
      * 		the browser which is being closed.
      */
     protected void onQueueBrowserClose(QueueBrowser browser) {
-        browsers.remove(browser);
+        // The list is cleared in one go when the session is closed.
+        if (!closed.get()) {
+            browsers.remove(browser);
+        }
     }
 
     /**
@@ -509,7 +638,162 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
      * 		the producer which is being closed.
      */
     protected void onMessageProducerClosed(MessageProducer producer) {
-        producers.remove(producer);
+        // The list is cleared in one go when the session is closed.
+        if (!closed.get()) {
+            producers.remove(producer);
+        }
+    }
+
+    /**
+     * Callback invoked when a message is sent or received using this session.
+     * <p>
+     * This is used to determine if a transacted session has uncommitted work that must
+     * be rolled back before the session can be returned to the pool.
+     */
+    protected void onTransactedWork() {
+        transactionDirty = true;
+    }
+
+    /**
+     * Callback invoked when the provider producer or consumer wrapped by a resource of this
+     * session is handed to the application.
+     * <p>
+     * Work done directly on it cannot be tracked, not even after a later commit, so from then
+     * on a transacted session is always rolled back before being returned to the pool.
+     */
+    protected void onProviderResourceExposed() {
+        providerResourceExposed = true;
+    }
+
+    /**
+     * Callback invoked when a MessageListener is set on a consumer created by this session.
+     * <p>
+     * Messages can then be delivered at any time so a transacted session is always rolled
+     * back before being returned to the pool.
+     */
+    protected void onAsyncDeliveryEnabled() {
+        asyncDelivery = true;
+    }
+
+    /**
+     * Prepares this session to be handed to a new owner without being returned to the pool,
+     * closing any consumers, browsers and producers other than the one to be retained and
+     * rolling back any uncommitted work.
+     *
+     * @param retained
+     *      the producer that stays open with the session or null if there is none.
+     *
+     * @return true if the session can be reused, false if it must be closed instead.
+     *
+     * @throws JMSException if an error occurs while cleaning up the session.
+     */
+    boolean prepareForReuse(MessageProducer retained) throws JMSException {
+        if (closed.get() || isXa || asyncDelivery || sessionListenerSet || internalSessionExposed || providerResourceExposed) {
+            return false;
+        }
+
+        for (MessageConsumer consumer : consumers) {
+            consumer.close();
+        }
+
+        for (QueueBrowser browser : browsers) {
+            browser.close();
+        }
+
+        for (MessageProducer producer : producers) {
+            if (producer != retained) {
+                producer.close();
+            }
+        }
+
+        if (transactional && transactionDirty) {
+            rollback();
+        }
+
+        return true;
+    }
+
+    /**
+     * Callback invoked when a consumer taken from the consumer cache is closed.
+     * <p>
+     * The provider consumer is handed back to the cache of the pooled session so that it
+     * can be reused the next time a matching consumer is created.
+     *
+     * @param key
+     * 		the destination, selector and noLocal setting of the consumer being released.
+     * @param consumer
+     * 		the provider consumer being released.
+     *
+     * @throws JMSException if an error occurs while closing a consumer that cannot be cached.
+     */
+    protected void onCachedConsumerReleased(PooledConsumerKey key, MessageConsumer consumer) throws JMSException {
+        final PooledSessionHolder sessionHolder = this.sessionHolder;
+        if (sessionHolder != null) {
+            sessionHolder.returnConsumer(key, consumer);
+        } else {
+            consumer.close();
+        }
+    }
+
+    /**
+     * Callback invoked when a producer taken from the named producer cache is closed.
+     * <p>
+     * The provider producer is handed back to the cache of the pooled session so that it
+     * can be reused the next time a producer for the same destination is created.
+     *
+     * @param destination
+     * 		the destination of the producer being released.
+     * @param producer
+     * 		the provider producer being released.
+     *
+     * @throws JMSException if an error occurs while closing a producer that cannot be cached.
+     */
+    protected void onCachedProducerReleased(Destination destination, MessageProducer producer) throws JMSException {
+        final PooledSessionHolder sessionHolder = this.sessionHolder;
+        if (sessionHolder != null) {
+            sessionHolder.returnNamedProducer(destination, producer);
+        } else {
+            producer.close();
+        }
+    }
+
+    /**
+     * Returns the anonymous producer this session keeps for sends with the given delivery delay.
+     *
+     * @param deliveryDelay
+     * 		the delivery delay the producer is configured with.
+     *
+     * @return the producer for the given delay or null if the session keeps no more such producers.
+     *
+     * @throws JMSException if an error occurs while creating the producer.
+     */
+    protected MessageProducer getDelayedProducer(long deliveryDelay) throws JMSException {
+        return safeGetSessionHolder().getOrCreateDelayedProducer(deliveryDelay);
+    }
+
+    /**
+     * @return the window that limits the asynchronous sends of the Connection this Session belongs to.
+     *
+     * @throws JMSException if this Session has been closed.
+     */
+    protected AsyncSendWindow getAsyncSendWindow() throws JMSException {
+        return safeGetSessionHolder().getConnection().getAsyncSendWindow();
+    }
+
+    /**
+     * Creates a new anonymous producer with the given delivery delay that the caller must close.
+     *
+     * @param deliveryDelay
+     * 		the delivery delay the producer is configured with.
+     *
+     * @return a new producer for the given delay.
+     *
+     * @throws JMSException if an error occurs while creating the producer.
+     */
+    protected MessageProducer createDelayedProducer(long deliveryDelay) throws JMSException {
+        final MessageProducer producer = safeGetSession().createProducer(null);
+        producer.setDeliveryDelay(deliveryDelay);
+        return producer;
     }
 
     //----- Internal support methods -----------------------------------------//
@@ -533,8 +817,10 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
         if (useAnonymousProducers) {
             result = safeGetSessionHolder().getOrCreateProducer();
+        } else if (isNamedProducerCacheEnabled()) {
+            result = safeGetSessionHolder().takeNamedProducer(destination);
         } else {
-            result = getInternalSession().createProducer(destination);
+            result = safeGetSession().createProducer(destination);
         }
 
         return result;
@@ -545,8 +831,10 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
         if (useAnonymousProducers) {
             result = safeGetSessionHolder().getOrCreateSender();
+        } else if (isNamedProducerCacheEnabled()) {
+            result = safeGetSessionHolder().takeNamedSender(destination);
         } else {
-            result = ((QueueSession) getInternalSession()).createSender(destination);
+            result = ((QueueSession) safeGetSession()).createSender(destination);
         }
 
         return result;
@@ -557,8 +845,10 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
 
         if (useAnonymousProducers) {
             result = safeGetSessionHolder().getOrCreatePublisher();
+        } else if (isNamedProducerCacheEnabled()) {
+            result = safeGetSessionHolder().takeNamedPublisher(destination);
         } else {
-            result = ((TopicSession) getInternalSession()).createPublisher(destination);
+            result = ((TopicSession) safeGetSession()).createPublisher(destination);
         }
 
         return result;
@@ -576,6 +866,24 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
         return consumer;
     }
 
+    private MessageConsumer addCachedConsumer(PooledConsumerKey key) throws JMSException {
+        final MessageConsumer consumer = new JmsPoolMessageConsumer(this, safeGetSessionHolder().takeConsumer(key), key);
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    private TopicSubscriber addCachedTopicSubscriber(PooledConsumerKey key) throws JMSException {
+        final TopicSubscriber subscriber = new JmsPoolTopicSubscriber(this, safeGetSessionHolder().takeSubscriber(key), key);
+        consumers.add(subscriber);
+        return subscriber;
+    }
+
+    private QueueReceiver addCachedQueueReceiver(PooledConsumerKey key) throws JMSException {
+        final QueueReceiver receiver = new JmsPoolQueueReceiver(this, safeGetSessionHolder().takeReceiver(key), key);
+        consumers.add(receiver);
+        return receiver;
+    }
+
     private TopicSubscriber addTopicSubscriber(TopicSubscriber subscriber) {
         subscriber = new JmsPoolTopicSubscriber(this, subscriber);
         consumers.add(subscriber);
@@ -589,23 +897,39 @@ public class JmsPoolSession implements Session, TopicSession, QueueSession, XASe
     }
 
     private QueueSender addQueueSender(QueueSender sender, Queue queue) throws JMSException {
-        sender = new JmsPoolQueueSender(this, sender, queue, useAnonymousProducers);
+        sender = new JmsPoolQueueSender(this, sender, queue, useAnonymousProducers, isNamedProducerCacheEnabled());
         producers.add(sender);
         return sender;
     }
 
     private TopicPublisher addTopicPublisher(TopicPublisher publisher, Topic topic) throws JMSException {
-        publisher = new JmsPoolTopicPublisher(this, publisher, topic, useAnonymousProducers);
+        publisher = new JmsPoolTopicPublisher(this, publisher, topic, useAnonymousProducers, isNamedProducerCacheEnabled());
         producers.add(publisher);
         return publisher;
     }
 
     private MessageProducer addMessageProducer(MessageProducer producer, Destination destination) throws JMSException {
-        producer = new JmsPoolMessageProducer(this, producer, destination, useAnonymousProducers);
+        producer = new JmsPoolMessageProducer(this, producer, destination, useAnonymousProducers, isNamedProducerCacheEnabled());
         producers.add(producer);
         return producer;
     }
 
+    /*
+     * Consumers of CLIENT_ACKNOWLEDGE and XA sessions are never cached as messages they delivered
+     * could be left unacknowledged or enlisted once the session goes back to the pool.
+     */
+    private boolean isConsumerCacheEnabled() throws JMSException {
+        return !isXa && key.getAckMode() != Session.CLIENT_ACKNOWLEDGE && safeGetSessionHolder().getConnection().getConsumerCacheSize() > 0;
+    }
+
+    private boolean isNamedProducerCacheEnabled() throws JMSException {
+        return !useAnonymousProducers && safeGetSessionHolder().getConnection().getNamedProducerCacheSize() > 0;
+    }
+
+    private Session safeGetSession() throws JMSException {
+        return safeGetSessionHolder().getSession();
+    }
+
     private PooledSessionHolder safeGetSessionHolder() throws JMSException {
         PooledSessionHolder sessionHolder = this.sessionHolder;
         if (sessionHolder == null) {
@@ -31,6 +31,10 @@ public class JmsPoolTopicPublisher extends JmsPoolMessageProducer implements Top
         super(session, messageProducer, destination, shared);
     }
 
+    public JmsPoolTopicPublisher(JmsPoolSession session, TopicPublisher messageProducer, Destination destination, boolean shared, boolean cached) throws JMSException {
+        super(session, messageProducer, destination, shared, cached);
+    }
+
     @Override
     public Topic getTopic() throws JMSException {
         return (Topic) getDestination();
@@ -20,6 +20,8 @@ import javax.jms.JMSException;
 import javax.jms.Topic;
 import javax.jms.TopicSubscriber;
 
+import org.messaginghub.pooled.jms.pool.PooledConsumerKey;
+
 /**
  * A {@link TopicSubscriber} which was created by {@link JmsPoolSession}.
  */
@@ -37,6 +39,20 @@ public class JmsPoolTopicSubscriber extends JmsPoolMessageConsumer implements To
         super(session, delegate);
     }
 
+    /**
+     * Wraps the TopicSubscriber.
+     *
+     * @param session
+     * 		the pooled session that created this object.
+     * @param delegate
+     * 		the created TopicSubscriber to wrap.
+     * @param cacheKey
+     * 		the key the subscriber is returned to the session's consumer cache under when closed, or null.
+     */
+    public JmsPoolTopicSubscriber(JmsPoolSession session, TopicSubscriber delegate, PooledConsumerKey cacheKey) {
+        super(session, delegate, cacheKey);
+    }
+
     @Override
     public Topic getTopic() throws JMSException {
         return getTopicSubscriber().getTopic();
@@ -19,6 +19,7 @@ package org.messaginghub.pooled.jms;
 import java.io.Serializable;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.Properties;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -52,6 +53,7 @@ public class JmsPoolXAConnectionFactory extends JmsPoolConnectionFactory impleme
     private TransactionManager transactionManager;
     private boolean tmFromJndi = false;
     private String tmJndiName = "java:/TransactionManager";
+    private boolean useTransactionAffineSessions = true;
 
     public TransactionManager getTransactionManager() {
         if (transactionManager == null && tmFromJndi) {
@@ -115,7 +117,9 @@ public class JmsPoolXAConnectionFactory extends JmsPoolConnectionFactory impleme
 
     @Override
     protected PooledXAConnection createPooledConnection(Connection connection) {
-        return new PooledXAConnection(connection, getTransactionManager());
+        PooledXAConnection pooled = new PooledXAConnection(connection, getTransactionManager());
+        pooled.setUseTransactionAffineSessions(isUseTransactionAffineSessions());
+        return pooled;
     }
 
     @Override
@@ -123,6 +127,11 @@ public class JmsPoolXAConnectionFactory extends JmsPoolConnectionFactory impleme
         return new JmsPoolXAJMSContext(connection, sessionMode);
     }
 
+    @Override
+    protected boolean isContextPoolingSupported() {
+        return false;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
@@ -163,6 +172,33 @@ public class JmsPoolXAConnectionFactory extends JmsPoolConnectionFactory impleme
         this.tmJndiName = tmJndiName;
     }
 
+    /**
+     * @return true if Sessions are bound to the XA transaction they were enlisted in.
+     */
+    public boolean isUseTransactionAffineSessions() {
+        return useTransactionAffineSessions;
+    }
+
+    /**
+     * Sets whether every call to createSession made while the same XA transaction is active returns
+     * the Session that was first enlisted in that transaction, default is true.  Only one Session
+     * per Connection is then enlisted in each transaction which saves the enlistment along with
+     * the XA start and end calls of any further Session.  The Session is returned to the pool when
+     * the transaction completes.
+     *
+     * @param useTransactionAffineSessions
+     * 		controls if Sessions are reused within a transaction
+     */
+    public void setUseTransactionAffineSessions(boolean useTransactionAffineSessions) {
+        this.useTransactionAffineSessions = useTransactionAffineSessions;
+    }
+
+    @Override
+    protected void populateProperties(Properties props) {
+        super.populateProperties(props);
+        props.setProperty("useTransactionAffineSessions", Boolean.toString(isUseTransactionAffineSessions()));
+    }
+
     public boolean isTmFromJndi() {
         return tmFromJndi;
     }
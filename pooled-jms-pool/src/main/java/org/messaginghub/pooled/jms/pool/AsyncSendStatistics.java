@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long asynchronous sends take to complete, may be shared between the send
+ * windows of several Connections to collect statistics for a whole pool.
+ */
+public class AsyncSendStatistics {
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Records the completion of an asynchronous send.
+     *
+     * @param latencyNanos
+     *      the time in nanoseconds between the send call and its completion.
+     */
+    public void onSendCompleted(long latencyNanos) {
+        completed.increment();
+        totalLatency.add(latencyNanos);
+
+        long currentMax = maxLatency.get();
+        while (latencyNanos > currentMax && !maxLatency.compareAndSet(currentMax, latencyNanos)) {
+            currentMax = maxLatency.get();
+        }
+    }
+
+    /**
+     * @return the number of asynchronous sends that have completed, successfully or not.
+     */
+    public long getNumCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * @return the average time in nanoseconds an asynchronous send took to complete.
+     */
+    public long getAverageCompletionNanos() {
+        final long count = completed.sum();
+        return count == 0 ? 0 : totalLatency.sum() / count;
+    }
+
+    /**
+     * @return the longest time in nanoseconds an asynchronous send took to complete.
+     */
+    public long getMaxCompletionNanos() {
+        return maxLatency.get();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.CompletionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ResourceAllocationException;
+
+import org.messaginghub.pooled.jms.util.JMSExceptionSupport;
+
+/**
+ * Limits the number of asynchronous sends a Connection has waiting on completion from the
+ * remote peer.  A send that would exceed the limit either blocks until an earlier send
+ * completes or fails, depending on configuration.
+ */
+public class AsyncSendWindow {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    private volatile int maxInFlight;
+    private volatile boolean blockIfFull = true;
+    private volatile long blockIfFullTimeout = -1L;
+    private volatile AsyncSendStatistics statistics = new AsyncSendStatistics();
+
+    /**
+     * Reserves room in the window for a new asynchronous send and wraps the given listener so
+     * that the room is released once the send completes.
+     *
+     * @param listener
+     *      the application's listener for the send.
+     *
+     * @return a listener that must be used for the send in place of the given one.
+     *
+     * @throws JMSException if the window is full and the send cannot wait for room.
+     */
+    public TrackedCompletionListener acquire(CompletionListener listener) throws JMSException {
+        if (!tryAcquire()) {
+            if (!blockIfFull) {
+                throw new ResourceAllocationException("Async send window is full: " + maxInFlight + " sends in flight");
+            }
+
+            awaitRoom();
+        }
+
+        return new TrackedCompletionListener(listener, System.nanoTime());
+    }
+
+    /**
+     * @return the number of asynchronous sends that have not yet completed.
+     */
+    public int getNumInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of asynchronous sends that may be awaiting completion, zero or
+     * less means no limit is applied.
+     *
+     * @param maxInFlight
+     *      the maximum number of asynchronous sends in flight.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        signalWaiters();
+    }
+
+    public boolean isBlockIfFull() {
+        return blockIfFull;
+    }
+
+    public void setBlockIfFull(boolean blockIfFull) {
+        this.blockIfFull = blockIfFull;
+    }
+
+    public long getBlockIfFullTimeout() {
+        return blockIfFullTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a send waits for room in a full window before failing,
+     * zero or less means the send waits for as long as it takes.
+     *
+     * @param blockIfFullTimeout
+     *      the time to wait for room in the window.
+     */
+    public void setBlockIfFullTimeout(long blockIfFullTimeout) {
+        this.blockIfFullTimeout = blockIfFullTimeout;
+    }
+
+    public AsyncSendStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(AsyncSendStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private boolean tryAcquire() {
+        for (;;) {
+            final int current = inFlight.get();
+            final int limit = maxInFlight;
+            if (limit > 0 && current >= limit) {
+                return false;
+            }
+
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void awaitRoom() throws JMSException {
+        final long timeout = blockIfFullTimeout;
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        lock.lock();
+        try {
+            // Registered before checking again so that a release racing with us sees the waiter.
+            waiters.incrementAndGet();
+            while (!tryAcquire()) {
+                if (timeout <= 0) {
+                    notFull.await();
+                } else if (remaining <= 0) {
+                    throw new ResourceAllocationException("Timed out waiting for room in the async send window");
+                } else {
+                    remaining = notFull.awaitNanos(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw JMSExceptionSupport.create(e);
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private void release(long startNanos) {
+        inFlight.decrementAndGet();
+        statistics.onSendCompleted(System.nanoTime() - startNanos);
+        signalWaiters();
+    }
+
+    private void signalWaiters() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Listener that frees the room its send held in the window when the send completes before
+     * passing the outcome on to the application's listener.
+     */
+    public final class TrackedCompletionListener implements CompletionListener {
+
+        private final CompletionListener listener;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private TrackedCompletionListener(CompletionListener listener, long startNanos) {
+            this.listener = listener;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            release();
+            listener.onCompletion(message);
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            release();
+            listener.onException(message, exception);
+        }
+
+        /**
+         * Frees the room held by the send, called directly when the send failed before the
+         * provider accepted it.  Only the first call has any effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AsyncSendWindow.this.release(startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import javax.jms.JMSException;
+
+/**
+ * Tracks failures to create new Connections for a single {@link PooledConnectionKey} and stops
+ * further attempts for a time once a threshold of consecutive failures has been reached.
+ * <p>
+ * While the circuit is open callers fail fast instead of each waiting on the provider's connect
+ * timeout.  Once the backoff period elapses a single caller is allowed through to probe the
+ * remote peer, success closes the circuit while failure re-opens it with the backoff doubled
+ * up to the configured maximum.
+ */
+public final class ConnectionCircuitBreaker {
+
+    /**
+     * The states a {@link ConnectionCircuitBreaker} can be in.
+     */
+    public enum State {
+        /** Connection creation is allowed. */
+        CLOSED,
+        /** Connection creation fails fast until the backoff period elapses. */
+        OPEN,
+        /** A single probe attempt is in progress, all other attempts fail fast. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long backoff;
+    private long nextAttemptTime;
+    private Exception lastFailure;
+
+    /**
+     * Creates a new circuit breaker in the closed state.
+     *
+     * @param failureThreshold
+     *      The number of consecutive failures that opens the circuit.
+     * @param initialBackoff
+     *      The time in milliseconds the circuit stays open after it first opens.
+     * @param maxBackoff
+     *      The upper bound in milliseconds for the backoff after failed probe attempts.
+     */
+    public ConnectionCircuitBreaker(int failureThreshold, long initialBackoff, long maxBackoff) {
+        this.failureThreshold = failureThreshold;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = Math.max(initialBackoff, maxBackoff);
+        this.backoff = initialBackoff;
+    }
+
+    /**
+     * Checks whether a new Connection may be created right now, moving the circuit to the
+     * half open state if this caller has been selected to probe the remote peer.
+     *
+     * @throws JMSException if the circuit is open and the caller must fail fast.
+     */
+    public synchronized void acquire() throws JMSException {
+        switch (state) {
+            case CLOSED:
+                return;
+            case OPEN:
+                if (System.currentTimeMillis() >= nextAttemptTime) {
+                    state = State.HALF_OPEN;
+                    return;
+                }
+                break;
+            case HALF_OPEN:
+                break;
+        }
+
+        JMSException error = new JMSException("Connection creation suspended after " + consecutiveFailures +
+            " consecutive failures, next attempt allowed in " + Math.max(0, nextAttemptTime - System.currentTimeMillis()) + " ms");
+        if (lastFailure != null) {
+            error.setLinkedException(lastFailure);
+            error.initCause(lastFailure);
+        }
+
+        throw error;
+    }
+
+    /**
+     * Records that a Connection was created, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        backoff = initialBackoff;
+        lastFailure = null;
+    }
+
+    /**
+     * Records that a Connection could not be created.
+     *
+     * @param failure
+     *      The error that caused the Connection creation to fail.
+     */
+    public synchronized void onFailure(Exception failure) {
+        consecutiveFailures++;
+        lastFailure = failure;
+
+        if (state == State.HALF_OPEN) {
+            backoff = Math.min(backoff * 2, maxBackoff);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            backoff = initialBackoff;
+            open();
+        }
+    }
+
+    /**
+     * @return the current state of this circuit breaker.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of consecutive Connection creation failures recorded.
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionCircuitBreaker { state = " + state + ", failures = " + consecutiveFailures + " }";
+    }
+
+    private void open() {
+        state = State.OPEN;
+        nextAttemptTime = System.currentTimeMillis() + backoff;
+    }
+}
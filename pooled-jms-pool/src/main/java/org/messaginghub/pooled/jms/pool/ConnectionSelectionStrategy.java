@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.util.List;
+
+/**
+ * Strategy used by the pooled ConnectionFactory to choose which of the Connections that are
+ * already in the pool for a given {@link PooledConnectionKey} is handed out on the next call
+ * to createConnection once the pool has reached its configured maximum number of Connections.
+ * <p>
+ * Implementations must be thread safe as they are called concurrently from any thread that
+ * is creating a Connection.  The selected Connection is only a hint, the pool will validate
+ * it and fall back to its default ordering if the Connection turns out to be closed.
+ */
+public interface ConnectionSelectionStrategy {
+
+    /**
+     * Selects one Connection from the given snapshot of pooled Connections.
+     *
+     * @param key
+     *      The key that identifies the Connection pool the candidates belong to.
+     * @param connections
+     *      The Connections currently in the pool for the given key, never empty.
+     *
+     * @return the selected Connection or null to let the pool apply its default ordering.
+     */
+    PooledConnection select(PooledConnectionKey key, List<PooledConnection> connections);
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.util.List;
+
+/**
+ * {@link ConnectionSelectionStrategy} that selects the pooled Connection which currently has
+ * the fewest Sessions loaned out, spreading Session load evenly over the pooled Connections.
+ * <p>
+ * Each selection inspects every Connection in the pool, which is inexpensive for the typical
+ * small number of pooled Connections.
+ */
+public class LeastActiveSessionsConnectionSelectionStrategy implements ConnectionSelectionStrategy {
+
+    @Override
+    public PooledConnection select(PooledConnectionKey key, List<PooledConnection> connections) {
+        PooledConnection selected = null;
+        int selectedActive = Integer.MAX_VALUE;
+
+        for (PooledConnection connection : connections) {
+            final int active = connection.getNumActiveSessions();
+            if (active < selectedActive) {
+                selected = connection;
+                selectedActive = active;
+            }
+        }
+
+        return selected;
+    }
+}
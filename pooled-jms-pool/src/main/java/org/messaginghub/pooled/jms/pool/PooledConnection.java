@@ -16,24 +16,27 @@
  */
 package org.messaginghub.pooled.jms.pool;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jms.Connection;
+import javax.jms.Destination;
 import javax.jms.ExceptionListener;
 import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.JMSRuntimeException;
+import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TemporaryQueue;
 import javax.jms.TemporaryTopic;
+import javax.jms.Topic;
 
-import org.apache.commons.pool2.KeyedPooledObjectFactory;
-import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.impl.DefaultPooledObject;
-import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
-import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 import org.messaginghub.pooled.jms.JmsPoolSession;
 import org.messaginghub.pooled.jms.JmsPoolSessionEventListener;
 import org.slf4j.Logger;
@@ -51,26 +54,38 @@ public class PooledConnection implements ExceptionListener {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(PooledConnection.class);
 
-    protected Connection connection;
+    protected volatile Connection connection;
+    private final ReentrantLock lock = new ReentrantLock();
     private int referenceCount;
     private long lastUsed = System.currentTimeMillis();
     private final long firstUsed = lastUsed;
     private boolean hasExpired;
+    private boolean draining;
+    private Runnable drainCompletedTask;
     private int idleTimeout = 30 * 1000;
     private long expiryTimeout = 0l;
     private boolean useAnonymousProducers = true;
+    private int namedProducerCacheSize = 0;
+    private boolean reuseJMSProducers = false;
+    private long namedProducerIdleTimeout = 0l;
+    private int consumerCacheSize = 0;
+    private long consumerIdleTimeout = 0l;
     private int jmsMajorVersion = 1;
     private int jmsMinorVersion = 1;
 
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private final GenericKeyedObjectPool<PooledSessionKey, PooledSessionHolder> sessionPool;
+    private final PooledSessionPool sessionPool;
     private final List<JmsPoolSession> loanedSessions = new CopyOnWriteArrayList<JmsPoolSession>();
     private boolean reconnectOnException;
     private ExceptionListener parentExceptionListener;
+    private ExceptionListener connectionFailedListener;
+    private AtomicLong sessionRollbacksSkipped = new AtomicLong();
+    private final AsyncSendWindow asyncSendWindow = new AsyncSendWindow();
+    private final ConcurrentMap<String, Queue> cachedQueues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Topic> cachedTopics = new ConcurrentHashMap<>();
+    private volatile int destinationCacheSize = 0;
 
     public PooledConnection(Connection connection) {
-        final GenericKeyedObjectPoolConfig poolConfig = new GenericKeyedObjectPoolConfig();
-        poolConfig.setJmxEnabled(false);
         this.connection = wrap(connection);
         try {
             this.connection.setExceptionListener(this);
@@ -85,32 +100,40 @@ public class PooledConnection implements ExceptionListener {
         } catch (JMSException ex) {}
 
         // Create our internal Pool of session instances.
-        this.sessionPool = new GenericKeyedObjectPool<PooledSessionKey, PooledSessionHolder>(
-            new KeyedPooledObjectFactory<PooledSessionKey, PooledSessionHolder>() {
-                @Override
-                public PooledObject<PooledSessionHolder> makeObject(PooledSessionKey sessionKey) throws Exception {
-                    return new DefaultPooledObject<PooledSessionHolder>(new PooledSessionHolder(PooledConnection.this, makeSession(sessionKey)));
-                }
-
-                @Override
-                public void destroyObject(PooledSessionKey sessionKey, PooledObject<PooledSessionHolder> pooledObject) throws Exception {
-                    pooledObject.getObject().close();
-                }
-
-                @Override
-                public boolean validateObject(PooledSessionKey sessionKey, PooledObject<PooledSessionHolder> pooledObject) {
-                    return true;
-                }
+        this.sessionPool = new PooledSessionPool(this);
+    }
 
-                @Override
-                public void activateObject(PooledSessionKey sessionKey, PooledObject<PooledSessionHolder> pooledObject) throws Exception {
-                }
+    /**
+     * Marks this Connection as rotated out of the pool.  The Connection is closed right away
+     * if it has no references, otherwise it is closed once the last reference is released.
+     *
+     * @param drainCompletedTask
+     *      Optional task that is run once the draining Connection has been closed.
+     */
+    public void drain(Runnable drainCompletedTask) {
+        lock.lock();
+        try {
+            this.drainCompletedTask = drainCompletedTask;
+            draining = true;
+            hasExpired = true;
+            if (referenceCount == 0) {
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                @Override
-                public void passivateObject(PooledSessionKey sessionKey, PooledObject<PooledSessionHolder> pooledObject) throws Exception {
-                }
-            }, poolConfig
-        );
+    /**
+     * @return true if this Connection has been rotated out of the pool and is draining.
+     */
+    public boolean isDraining() {
+        lock.lock();
+        try {
+            return draining;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // useful when external failure needs to force expiry
@@ -143,7 +166,7 @@ public class PooledConnection implements ExceptionListener {
         }
     }
 
-    public synchronized Connection getConnection() {
+    public Connection getConnection() {
         return connection;
     }
 
@@ -176,46 +199,92 @@ public class PooledConnection implements ExceptionListener {
         return session;
     }
 
-    public synchronized void close() {
-        if (connection != null) {
-            try {
-                sessionPool.close();
-            } catch (Exception e) {
-            } finally {
+    public void close() {
+        lock.lock();
+        try {
+            clearDestinationCache();
+
+            if (connection != null) {
                 try {
-                    connection.close();
+                    sessionPool.close();
                 } catch (Exception e) {
                 } finally {
-                    connection = null;
+                    try {
+                        connection.close();
+                    } catch (Exception e) {
+                    } finally {
+                        connection = null;
+                    }
                 }
             }
+
+            if (draining && drainCompletedTask != null) {
+                final Runnable task = drainCompletedTask;
+                drainCompletedTask = null;
+                task.run();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void incrementReferenceCount() {
-        referenceCount++;
-        lastUsed = System.currentTimeMillis();
+    public void incrementReferenceCount() {
+        lock.lock();
+        try {
+            referenceCount++;
+            lastUsed = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized void decrementReferenceCount() {
-        referenceCount--;
-        lastUsed = System.currentTimeMillis();
-        if (referenceCount == 0) {
-            // Loaned sessions are those that are active in the sessionPool and
-            // have not been closed by the client before closing the connection.
-            // These need to be closed so that all session's reflect the fact
-            // that the parent Connection is closed.
-            for (JmsPoolSession session : this.loanedSessions) {
-                try {
-                    session.close();
-                } catch (Exception e) {
-                }
+    /**
+     * Attempts to add a new reference to this Connection provided that the underlying
+     * provider Connection has not already been closed by an expiration or failure.
+     * <p>
+     * The check and the increment happen atomically so that a caller which wins this race
+     * cannot have the Connection closed out from under it by a concurrent expiration check.
+     *
+     * @return true if the reference count was incremented, false if this Connection is closed.
+     */
+    public boolean tryIncrementReferenceCount() {
+        lock.lock();
+        try {
+            if (connection == null) {
+                return false;
             }
-            this.loanedSessions.clear();
 
-            unWrap(getConnection());
+            incrementReferenceCount();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void decrementReferenceCount() {
+        lock.lock();
+        try {
+            referenceCount--;
+            lastUsed = System.currentTimeMillis();
+            if (referenceCount == 0) {
+                // Loaned sessions are those that are active in the sessionPool and
+                // have not been closed by the client before closing the connection.
+                // These need to be closed so that all session's reflect the fact
+                // that the parent Connection is closed.
+                for (JmsPoolSession session : this.loanedSessions) {
+                    try {
+                        session.close();
+                    } catch (Exception e) {
+                    }
+                }
+                this.loanedSessions.clear();
+
+                unWrap(getConnection());
 
-            expiredCheck();
+                expiredCheck();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -228,38 +297,58 @@ public class PooledConnection implements ExceptionListener {
      *
      * @return true if this connection has expired.
      */
-    public synchronized boolean expiredCheck() {
+    public boolean expiredCheck() {
+        lock.lock();
+        try {
+            boolean expired = false;
 
-        boolean expired = false;
+            if (connection == null) {
+                return true;
+            }
 
-        if (connection == null) {
-            return true;
-        }
+            if (hasExpired) {
+                if (referenceCount == 0) {
+                    close();
+                    expired = true;
+                }
+            }
 
-        if (hasExpired) {
-            if (referenceCount == 0) {
-                close();
-                expired = true;
+            if (expiryTimeout > 0 && System.currentTimeMillis() > firstUsed + expiryTimeout) {
+                hasExpired = true;
+                if (referenceCount == 0) {
+                    close();
+                    expired = true;
+                }
             }
-        }
 
-        if (expiryTimeout > 0 && System.currentTimeMillis() > firstUsed + expiryTimeout) {
-            hasExpired = true;
-            if (referenceCount == 0) {
+            // Only set hasExpired here is no references, as a Connection with references is by
+            // definition not idle at this time.
+            if (referenceCount == 0 && idleTimeout > 0 && System.currentTimeMillis() > lastUsed + idleTimeout) {
+                hasExpired = true;
                 close();
                 expired = true;
             }
-        }
 
-        // Only set hasExpired here is no references, as a Connection with references is by
-        // definition not idle at this time.
-        if (referenceCount == 0 && idleTimeout > 0 && System.currentTimeMillis() > lastUsed + idleTimeout) {
-            hasExpired = true;
-            close();
-            expired = true;
+            return expired;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return expired;
+    /**
+     * Checks without side effects whether this Connection should no longer be handed out, used
+     * by holders of long lived references to decide whether to keep using it.
+     *
+     * @return true if this Connection is closed, draining or past its expiry or a failure.
+     */
+    public boolean isExpired() {
+        lock.lock();
+        try {
+            return connection == null || hasExpired || draining ||
+                   (expiryTimeout > 0 && System.currentTimeMillis() > firstUsed + expiryTimeout);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public int getIdleTimeout() {
@@ -294,6 +383,337 @@ public class PooledConnection implements ExceptionListener {
         this.useAnonymousProducers = value;
     }
 
+    public boolean isReuseJMSProducers() {
+        return this.reuseJMSProducers;
+    }
+
+    /**
+     * Sets whether a JMSContext using this Connection hands out one reusable JMSProducer whose
+     * body only sends refill the same message instances instead of allocating new ones.
+     *
+     * @param reuseJMSProducers
+     *      Should JMSContext instances reuse their JMSProducer and its messages.
+     */
+    public void setReuseJMSProducers(boolean reuseJMSProducers) {
+        this.reuseJMSProducers = reuseJMSProducers;
+    }
+
+    public int getNamedProducerCacheSize() {
+        return this.namedProducerCacheSize;
+    }
+
+    /**
+     * Sets the number of named MessageProducers each pooled Session keeps open for reuse when
+     * anonymous producers are disabled, zero disables the cache.
+     *
+     * @param namedProducerCacheSize
+     *      The maximum number of named producers cached per Session.
+     */
+    public void setNamedProducerCacheSize(int namedProducerCacheSize) {
+        this.namedProducerCacheSize = namedProducerCacheSize;
+    }
+
+    public long getNamedProducerIdleTimeout() {
+        return this.namedProducerIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a cached named MessageProducer can remain unused before it
+     * is closed, zero or less means cached producers are only closed when the cache is full.
+     *
+     * @param namedProducerIdleTimeout
+     *      The idle timeout for cached named producers.
+     */
+    public void setNamedProducerIdleTimeout(long namedProducerIdleTimeout) {
+        this.namedProducerIdleTimeout = namedProducerIdleTimeout;
+    }
+
+    public int getConsumerCacheSize() {
+        return this.consumerCacheSize;
+    }
+
+    /**
+     * Sets the number of MessageConsumers each pooled Session keeps open for reuse on its next
+     * loans, zero disables the cache.
+     *
+     * @param consumerCacheSize
+     *      The maximum number of consumers cached per Session.
+     */
+    public void setConsumerCacheSize(int consumerCacheSize) {
+        this.consumerCacheSize = consumerCacheSize;
+    }
+
+    /**
+     * Closes the resources cached by the idle Sessions of this Connection that have been left
+     * unused for longer than their configured idle timeout.
+     */
+    public void evictIdleResources() {
+        sessionPool.evictIdleResources();
+    }
+
+    public long getConsumerIdleTimeout() {
+        return this.consumerIdleTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a cached MessageConsumer can remain unused before it is
+     * closed, zero or less means cached consumers are only closed when the cache is full.
+     *
+     * @param consumerIdleTimeout
+     *      The idle timeout for cached consumers.
+     */
+    public void setConsumerIdleTimeout(long consumerIdleTimeout) {
+        this.consumerIdleTimeout = consumerIdleTimeout;
+    }
+
+    public boolean isUseThreadAffineSessions() {
+        return this.sessionPool.isThreadAffinity();
+    }
+
+    /**
+     * Controls whether a Session closed by a thread is kept for that thread and handed back to
+     * it on its next call to createSession with the same transacted and acknowledgement mode.
+     *
+     * @param value
+     *      Boolean value that configures whether Sessions are kept per thread.
+     */
+    public void setUseThreadAffineSessions(boolean value) {
+        this.sessionPool.setThreadAffinity(value);
+    }
+
+    /**
+     * Creates idle non-transacted AUTO_ACKNOWLEDGE Sessions in this Connection's Session pool
+     * until the given number of idle Sessions is available, bounded by the maximum number of
+     * active Sessions allowed.  Sessions created here are retained by the pool when returned.
+     *
+     * @param count
+     *      The number of idle Sessions that should be available once this method returns.
+     *
+     * @throws JMSException if an error occurs while creating the Sessions.
+     */
+    public void prepareIdleSessions(int count) throws JMSException {
+        final PooledSessionKey key = new PooledSessionKey(false, Session.AUTO_ACKNOWLEDGE);
+
+        int limit = count;
+        if (sessionPool.getMaxTotalPerKey() >= 0) {
+            limit = Math.min(limit, sessionPool.getMaxTotalPerKey());
+        }
+
+        if (sessionPool.getMaxIdlePerKey() >= 0 && sessionPool.getMaxIdlePerKey() < limit) {
+            sessionPool.setMaxIdlePerKey(limit);
+        }
+
+        try {
+            for (int i = sessionPool.getNumIdle(key); i < limit; ++i) {
+                sessionPool.addObject(key);
+            }
+        } catch (Exception e) {
+            IllegalStateException illegalStateException = new IllegalStateException(e.toString());
+            illegalStateException.initCause(e);
+            throw illegalStateException;
+        }
+    }
+
+    /**
+     * Sets the counter that is incremented each time a transacted Session is returned to the
+     * pool without needing a rollback, allowing the count to be shared between Connections.
+     *
+     * @param counter
+     *      The counter to increment when a rollback is skipped.
+     */
+    public void setSessionRollbacksSkippedCounter(AtomicLong counter) {
+        this.sessionRollbacksSkipped = counter;
+    }
+
+    /**
+     * Called when a transacted Session with no uncommitted work is returned to the pool and
+     * the rollback that would otherwise be issued on close is skipped.
+     */
+    public void onSessionRollbackSkipped() {
+        sessionRollbacksSkipped.incrementAndGet();
+    }
+
+    /**
+     * @return the number of Session rollbacks skipped because the Session had no uncommitted work.
+     */
+    public long getNumSessionRollbacksSkipped() {
+        return sessionRollbacksSkipped.get();
+    }
+
+    /**
+     * Resolves the named Queue using the given Session, returning the Queue resolved by an earlier
+     * call for the same name on any Session of this Connection when destination caching is enabled.
+     *
+     * @param session
+     *      The provider Session used to resolve the Queue if it is not cached.
+     * @param name
+     *      The name of the Queue.
+     *
+     * @return the Queue with the given name.
+     *
+     * @throws JMSException if the Queue cannot be resolved.
+     */
+    public Queue createQueue(Session session, String name) throws JMSException {
+        if (destinationCacheSize <= 0 || name == null) {
+            return session.createQueue(name);
+        }
+
+        Queue result = cachedQueues.get(name);
+        if (result == null) {
+            result = session.createQueue(name);
+            cacheDestination(cachedQueues, name, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Resolves the named Topic using the given Session, returning the Topic resolved by an earlier
+     * call for the same name on any Session of this Connection when destination caching is enabled.
+     *
+     * @param session
+     *      The provider Session used to resolve the Topic if it is not cached.
+     * @param name
+     *      The name of the Topic.
+     *
+     * @return the Topic with the given name.
+     *
+     * @throws JMSException if the Topic cannot be resolved.
+     */
+    public Topic createTopic(Session session, String name) throws JMSException {
+        if (destinationCacheSize <= 0 || name == null) {
+            return session.createTopic(name);
+        }
+
+        Topic result = cachedTopics.get(name);
+        if (result == null) {
+            result = session.createTopic(name);
+            cacheDestination(cachedTopics, name, result);
+        }
+
+        return result;
+    }
+
+    public int getDestinationCacheSize() {
+        return destinationCacheSize;
+    }
+
+    /**
+     * Sets the number of Queues and the number of Topics resolved by name that this Connection
+     * keeps for reuse by all of its Sessions, zero disables the cache.
+     *
+     * @param destinationCacheSize
+     *      The maximum number of cached destinations of each type.
+     */
+    public void setDestinationCacheSize(int destinationCacheSize) {
+        this.destinationCacheSize = destinationCacheSize;
+        if (destinationCacheSize <= 0) {
+            clearDestinationCache();
+        }
+    }
+
+    /**
+     * @return the number of Queues and Topics currently held in the destination cache.
+     */
+    public int getNumCachedDestinations() {
+        return cachedQueues.size() + cachedTopics.size();
+    }
+
+    /**
+     * Discards all cached destinations, later lookups resolve them with the provider again.
+     */
+    public void clearDestinationCache() {
+        cachedQueues.clear();
+        cachedTopics.clear();
+    }
+
+    private <T extends Destination> void cacheDestination(ConcurrentMap<String, T> cache, String name, T destination) {
+        if (destination instanceof TemporaryQueue || destination instanceof TemporaryTopic) {
+            return;
+        }
+
+        // Bounded by dropping an arbitrary entry, a miss only costs one provider lookup.
+        while (cache.size() >= destinationCacheSize) {
+            final Iterator<String> names = cache.keySet().iterator();
+            if (!names.hasNext()) {
+                break;
+            }
+            cache.remove(names.next());
+        }
+
+        cache.putIfAbsent(name, destination);
+    }
+
+    /**
+     * @return the window that limits the asynchronous sends this Connection has in flight.
+     */
+    public AsyncSendWindow getAsyncSendWindow() {
+        return asyncSendWindow;
+    }
+
+    public int getMaxAsyncSendsInFlight() {
+        return asyncSendWindow.getMaxInFlight();
+    }
+
+    /**
+     * Sets the maximum number of asynchronous sends Sessions of this Connection may have waiting
+     * on completion, zero or less means no limit is applied.
+     *
+     * @param maxAsyncSendsInFlight
+     *      The maximum number of asynchronous sends in flight.
+     */
+    public void setMaxAsyncSendsInFlight(int maxAsyncSendsInFlight) {
+        asyncSendWindow.setMaxInFlight(maxAsyncSendsInFlight);
+    }
+
+    public boolean isBlockIfAsyncSendWindowIsFull() {
+        return asyncSendWindow.isBlockIfFull();
+    }
+
+    /**
+     * Controls whether an asynchronous send blocks until an earlier send completes when the
+     * async send window is full, or fails with a ResourceAllocationException.
+     *
+     * @param block
+     *      Boolean value that configures whether a send blocks on a full window.
+     */
+    public void setBlockIfAsyncSendWindowIsFull(boolean block) {
+        asyncSendWindow.setBlockIfFull(block);
+    }
+
+    public long getBlockIfAsyncSendWindowIsFullTimeout() {
+        return asyncSendWindow.getBlockIfFullTimeout();
+    }
+
+    /**
+     * Sets the time in milliseconds an asynchronous send waits for room in a full async send
+     * window before failing, zero or less means it waits for as long as it takes.
+     *
+     * @param timeout
+     *      The time to wait for room in the window.
+     */
+    public void setBlockIfAsyncSendWindowIsFullTimeout(long timeout) {
+        asyncSendWindow.setBlockIfFullTimeout(timeout);
+    }
+
+    /**
+     * Sets the statistics the completion of asynchronous sends is recorded in, allowing the
+     * statistics to be shared between Connections.
+     *
+     * @param statistics
+     *      The statistics to record completed asynchronous sends in.
+     */
+    public void setAsyncSendStatistics(AsyncSendStatistics statistics) {
+        asyncSendWindow.setStatistics(statistics);
+    }
+
+    /**
+     * @return the number of asynchronous sends awaiting completion on this Connection.
+     */
+    public int getNumAsyncSendsInFlight() {
+        return asyncSendWindow.getNumInFlight();
+    }
+
     /**
      * @return the total number of Pooled session including idle sessions that are not
      *          currently loaned out to any client.
@@ -404,10 +824,33 @@ public class PooledConnection implements ExceptionListener {
         this.parentExceptionListener = parentExceptionListener;
     }
 
+    public ExceptionListener getConnectionFailedListener() {
+        return connectionFailedListener;
+    }
+
+    /**
+     * Sets a listener that is notified after this Connection has been closed due to an error
+     * reported by the underlying Connection when reconnect on exception is enabled.  This allows
+     * the owner of the pool to replace the failed Connection without waiting for a client to
+     * encounter it.
+     *
+     * @param connectionFailedListener
+     *      The listener to notify when the Connection has failed and been closed.
+     */
+    public void setConnectionFailedListener(ExceptionListener connectionFailedListener) {
+        this.connectionFailedListener = connectionFailedListener;
+    }
+
     @Override
     public void onException(JMSException exception) {
+        // Destinations resolved before the failure may not be valid for a reconnected provider.
+        clearDestinationCache();
+
         if (isReconnectOnException()) {
             close();
+            if (connectionFailedListener != null) {
+                connectionFailedListener.onException(exception);
+            }
         }
         if (parentExceptionListener != null) {
             parentExceptionListener.onException(exception);
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import javax.jms.Destination;
+
+/**
+ * A cache key for the details of a MessageConsumer used to locate cached consumer instances.
+ */
+public final class PooledConsumerKey {
+
+    private final Destination destination;
+    private final String selector;
+    private final boolean noLocal;
+
+    private final int hash;
+
+    public PooledConsumerKey(Destination destination, String selector, boolean noLocal) {
+        this.destination = destination;
+        this.selector = selector != null && !selector.trim().isEmpty() ? selector : null;
+        this.noLocal = noLocal;
+
+        int result = 1;
+        result = 31 * result + (destination == null ? 0 : destination.hashCode());
+        result = 31 * result + (this.selector == null ? 0 : this.selector.hashCode());
+        result = 31 * result + (noLocal ? 1231 : 1237);
+        this.hash = result;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public boolean isNoLocal() {
+        return noLocal;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        PooledConsumerKey other = (PooledConsumerKey) obj;
+        if (hash != other.hash) {
+            return false;
+        }
+        if (noLocal != other.noLocal) {
+            return false;
+        }
+        if (destination == null ? other.destination != null : !destination.equals(other.destination)) {
+            return false;
+        }
+        if (selector == null ? other.selector != null : !selector.equals(other.selector)) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledConsumerKey { " + destination + ", " + selector + ", " + noLocal + " }";
+    }
+}
@@ -16,27 +16,61 @@
  */
 package org.messaginghub.pooled.jms.pool;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.QueueReceiver;
 import javax.jms.QueueSender;
 import javax.jms.QueueSession;
 import javax.jms.Session;
+import javax.jms.Topic;
 import javax.jms.TopicPublisher;
 import javax.jms.TopicSession;
+import javax.jms.TopicSubscriber;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Used to store a pooled session instance and any resources that can
  * be left open and carried along with the pooled instance such as the
  * anonymous producer used for all MessageProducer instances created
  * from this pooled session when enabled.
+ * <p>
+ * When anonymous producers are disabled the holder can also keep a bounded cache of the named
+ * MessageProducer instances created for each destination.  A producer is taken out of the cache
+ * while it is in use and put back once the client closes it, so only producers that are not in
+ * use are ever evicted and closed.
+ * <p>
+ * The same applies to MessageConsumer instances when the consumer cache is enabled, which lets
+ * a consumer keep its subscription and prefetched messages from one loan of the session to the
+ * next.
  */
 public final class PooledSessionHolder {
 
+    private static final transient Logger LOG = LoggerFactory.getLogger(PooledSessionHolder.class);
+
+    private static final int MAX_DELAYED_PRODUCERS = 8;
+
     private final PooledConnection connection;
     private final Session session;
     private volatile MessageProducer producer;
     private volatile TopicPublisher publisher;
     private volatile QueueSender sender;
+    private final ConcurrentMap<Long, MessageProducer> delayedProducers = new ConcurrentHashMap<>();
+    private Map<Destination, CachedProducer> namedProducers;
+    private Map<PooledConsumerKey, CachedConsumer> cachedConsumers;
+    private boolean closed;
 
     public PooledSessionHolder(PooledConnection connection, Session session) {
         this.connection = connection;
@@ -50,6 +84,13 @@ public final class PooledSessionHolder {
             producer = null;
             publisher = null;
             sender = null;
+            delayedProducers.clear();
+
+            synchronized (this) {
+                closed = true;
+                namedProducers = null;
+                cachedConsumers = null;
+            }
         }
     }
 
@@ -93,6 +134,353 @@ public final class PooledSessionHolder {
         return sender;
     }
 
+    /**
+     * Returns an anonymous MessageProducer configured with the given delivery delay, creating it
+     * on first use.  The holder keeps one such producer for each of a small number of distinct
+     * delays so that delayed sends never reconfigure the shared anonymous producer.
+     *
+     * @param deliveryDelay
+     *      The delivery delay the producer is configured with.
+     *
+     * @return the producer for the given delay or null if the holder keeps no more delayed producers.
+     *
+     * @throws JMSException if an error occurs while creating the producer.
+     */
+    public MessageProducer getOrCreateDelayedProducer(long deliveryDelay) throws JMSException {
+        MessageProducer result = delayedProducers.get(deliveryDelay);
+        if (result == null && delayedProducers.size() < MAX_DELAYED_PRODUCERS) {
+            synchronized (this) {
+                result = delayedProducers.get(deliveryDelay);
+                if (result == null && delayedProducers.size() < MAX_DELAYED_PRODUCERS) {
+                    result = session.createProducer(null);
+                    result.setDeliveryDelay(deliveryDelay);
+                    delayedProducers.put(deliveryDelay, result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Takes a MessageProducer for the given destination out of the named producer cache, or
+     * creates a new one if none is cached.
+     *
+     * @param destination
+     *      The destination the returned producer sends to.
+     *
+     * @return a MessageProducer for the given destination.
+     *
+     * @throws JMSException if an error occurs while creating a new producer.
+     */
+    public MessageProducer takeNamedProducer(Destination destination) throws JMSException {
+        final MessageProducer result = removeNamedProducer(destination);
+        if (result != null) {
+            return result;
+        }
+
+        return session.createProducer(destination);
+    }
+
+    /**
+     * Takes a QueueSender for the given queue out of the named producer cache, or creates a
+     * new one if none is cached.
+     *
+     * @param queue
+     *      The queue the returned sender sends to.
+     *
+     * @return a QueueSender for the given queue.
+     *
+     * @throws JMSException if an error occurs while creating a new sender.
+     */
+    public QueueSender takeNamedSender(Queue queue) throws JMSException {
+        final MessageProducer result = removeNamedProducer(queue);
+        if (result instanceof QueueSender) {
+            return (QueueSender) result;
+        } else if (result != null) {
+            returnNamedProducer(queue, result);
+        }
+
+        return ((QueueSession) session).createSender(queue);
+    }
+
+    /**
+     * Takes a TopicPublisher for the given topic out of the named producer cache, or creates a
+     * new one if none is cached.
+     *
+     * @param topic
+     *      The topic the returned publisher sends to.
+     *
+     * @return a TopicPublisher for the given topic.
+     *
+     * @throws JMSException if an error occurs while creating a new publisher.
+     */
+    public TopicPublisher takeNamedPublisher(Topic topic) throws JMSException {
+        final MessageProducer result = removeNamedProducer(topic);
+        if (result instanceof TopicPublisher) {
+            return (TopicPublisher) result;
+        } else if (result != null) {
+            returnNamedProducer(topic, result);
+        }
+
+        return ((TopicSession) session).createPublisher(topic);
+    }
+
+    /**
+     * Returns a MessageProducer that was taken from the named producer cache once the client is
+     * done with it.  The least recently used producers are closed if the cache is full and any
+     * producer that has been idle for longer than the configured timeout is closed.
+     *
+     * @param destination
+     *      The destination the producer sends to.
+     * @param producer
+     *      The producer being returned to the cache.
+     */
+    public void returnNamedProducer(Destination destination, MessageProducer producer) {
+        final int maxSize = connection.getNamedProducerCacheSize();
+        final long idleTimeout = connection.getNamedProducerIdleTimeout();
+        final long now = System.currentTimeMillis();
+
+        MessageProducer discarded = producer;
+        List<MessageProducer> evicted = null;
+
+        // Evicted producers are closed once the lock is released as the close can block on the provider.
+        synchronized (this) {
+            if (maxSize > 0 && !closed) {
+                if (namedProducers == null) {
+                    namedProducers = new LinkedHashMap<>(16, 0.75f, true);
+                }
+
+                if (!namedProducers.containsKey(destination)) {
+                    namedProducers.put(destination, new CachedProducer(producer, now));
+                    discarded = null;
+                }
+
+                // Iteration order is least recently used first, so stop at the first entry
+                // that is neither over the size limit nor idle for too long.
+                final Iterator<CachedProducer> entries = namedProducers.values().iterator();
+                while (entries.hasNext()) {
+                    final CachedProducer cached = entries.next();
+                    if (namedProducers.size() > maxSize || (idleTimeout > 0 && now - cached.lastUsed > idleTimeout)) {
+                        entries.remove();
+                        if (evicted == null) {
+                            evicted = new ArrayList<>();
+                        }
+                        evicted.add(cached.producer);
+                    } else {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (discarded != null) {
+            closeProducer(discarded);
+        }
+
+        if (evicted != null) {
+            for (MessageProducer evictedProducer : evicted) {
+                closeProducer(evictedProducer);
+            }
+        }
+    }
+
+    /**
+     * Takes a MessageConsumer matching the given key out of the consumer cache, or creates a new
+     * one if none is cached.
+     *
+     * @param key
+     *      The destination, selector and noLocal setting of the consumer.
+     *
+     * @return a MessageConsumer matching the given key.
+     *
+     * @throws JMSException if an error occurs while creating a new consumer.
+     */
+    public MessageConsumer takeConsumer(PooledConsumerKey key) throws JMSException {
+        final MessageConsumer result = removeCachedConsumer(key);
+        if (result != null) {
+            return result;
+        }
+
+        return session.createConsumer(key.getDestination(), key.getSelector(), key.isNoLocal());
+    }
+
+    /**
+     * Takes a QueueReceiver matching the given key out of the consumer cache, or creates a new
+     * one if none is cached.
+     *
+     * @param key
+     *      The queue and selector of the receiver.
+     *
+     * @return a QueueReceiver matching the given key.
+     *
+     * @throws JMSException if an error occurs while creating a new receiver.
+     */
+    public QueueReceiver takeReceiver(PooledConsumerKey key) throws JMSException {
+        final MessageConsumer result = removeCachedConsumer(key);
+        if (result instanceof QueueReceiver) {
+            return (QueueReceiver) result;
+        } else if (result != null) {
+            returnConsumer(key, result);
+        }
+
+        return ((QueueSession) session).createReceiver((Queue) key.getDestination(), key.getSelector());
+    }
+
+    /**
+     * Takes a TopicSubscriber matching the given key out of the consumer cache, or creates a new
+     * one if none is cached.
+     *
+     * @param key
+     *      The topic, selector and noLocal setting of the subscriber.
+     *
+     * @return a TopicSubscriber matching the given key.
+     *
+     * @throws JMSException if an error occurs while creating a new subscriber.
+     */
+    public TopicSubscriber takeSubscriber(PooledConsumerKey key) throws JMSException {
+        final MessageConsumer result = removeCachedConsumer(key);
+        if (result instanceof TopicSubscriber) {
+            return (TopicSubscriber) result;
+        } else if (result != null) {
+            returnConsumer(key, result);
+        }
+
+        return ((TopicSession) session).createSubscriber((Topic) key.getDestination(), key.getSelector(), key.isNoLocal());
+    }
+
+    /**
+     * Returns a MessageConsumer that was taken from the consumer cache once the client is done
+     * with it.  The least recently used consumers are closed if the cache is full and any
+     * consumer that has been idle for longer than the configured timeout is closed.
+     *
+     * @param key
+     *      The destination, selector and noLocal setting of the consumer.
+     * @param consumer
+     *      The consumer being returned to the cache.
+     */
+    public void returnConsumer(PooledConsumerKey key, MessageConsumer consumer) {
+        final int maxSize = connection.getConsumerCacheSize();
+        final long idleTimeout = connection.getConsumerIdleTimeout();
+        final long now = System.currentTimeMillis();
+
+        MessageConsumer discarded = consumer;
+        List<MessageConsumer> evicted = null;
+
+        synchronized (this) {
+            if (maxSize > 0 && !closed) {
+                if (cachedConsumers == null) {
+                    cachedConsumers = new LinkedHashMap<>(16, 0.75f, true);
+                }
+
+                if (!cachedConsumers.containsKey(key)) {
+                    cachedConsumers.put(key, new CachedConsumer(consumer, now));
+                    discarded = null;
+                }
+
+                final Iterator<CachedConsumer> entries = cachedConsumers.values().iterator();
+                while (entries.hasNext()) {
+                    final CachedConsumer cached = entries.next();
+                    if (cachedConsumers.size() > maxSize || (idleTimeout > 0 && now - cached.lastUsed > idleTimeout)) {
+                        entries.remove();
+                        if (evicted == null) {
+                            evicted = new ArrayList<>();
+                        }
+                        evicted.add(cached.consumer);
+                    } else {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (discarded != null) {
+            closeConsumer(discarded);
+        }
+
+        if (evicted != null) {
+            for (MessageConsumer evictedConsumer : evicted) {
+                closeConsumer(evictedConsumer);
+            }
+        }
+    }
+
+    /**
+     * Closes the cached consumers and named producers that have been idle for longer than their
+     * configured timeout.
+     */
+    public void evictIdleResources() {
+        final long consumerIdleTimeout = connection.getConsumerIdleTimeout();
+        final long producerIdleTimeout = connection.getNamedProducerIdleTimeout();
+        if (consumerIdleTimeout <= 0 && producerIdleTimeout <= 0) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        List<MessageConsumer> evicted = null;
+        List<MessageProducer> evictedProducers = null;
+
+        synchronized (this) {
+            if (namedProducers != null && !closed && producerIdleTimeout > 0) {
+                final Iterator<CachedProducer> entries = namedProducers.values().iterator();
+                while (entries.hasNext()) {
+                    final CachedProducer cached = entries.next();
+                    if (now - cached.lastUsed > producerIdleTimeout) {
+                        entries.remove();
+                        if (evictedProducers == null) {
+                            evictedProducers = new ArrayList<>();
+                        }
+                        evictedProducers.add(cached.producer);
+                    } else {
+                        break;
+                    }
+                }
+            }
+
+            if (cachedConsumers != null && !closed && consumerIdleTimeout > 0) {
+                final Iterator<CachedConsumer> entries = cachedConsumers.values().iterator();
+                while (entries.hasNext()) {
+                    final CachedConsumer cached = entries.next();
+                    if (now - cached.lastUsed > consumerIdleTimeout) {
+                        entries.remove();
+                        if (evicted == null) {
+                            evicted = new ArrayList<>();
+                        }
+                        evicted.add(cached.consumer);
+                    } else {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (evictedProducers != null) {
+            for (MessageProducer evictedProducer : evictedProducers) {
+                closeProducer(evictedProducer);
+            }
+        }
+
+        if (evicted != null) {
+            for (MessageConsumer evictedConsumer : evicted) {
+                closeConsumer(evictedConsumer);
+            }
+        }
+    }
+
+    /**
+     * @return the number of consumers currently held in the cache.
+     */
+    public synchronized int getNumCachedConsumers() {
+        return cachedConsumers != null ? cachedConsumers.size() : 0;
+    }
+
+    /**
+     * @return the number of named producers currently held in the cache.
+     */
+    public synchronized int getNumCachedNamedProducers() {
+        return namedProducers != null ? namedProducers.size() : 0;
+    }
+
     public PooledConnection getConnection() {
         return connection;
     }
@@ -101,4 +489,60 @@ public final class PooledSessionHolder {
     public String toString() {
         return session.toString();
     }
+
+    private synchronized MessageProducer removeNamedProducer(Destination destination) {
+        if (namedProducers == null) {
+            return null;
+        }
+
+        final CachedProducer cached = namedProducers.remove(destination);
+        return cached != null ? cached.producer : null;
+    }
+
+    private synchronized MessageConsumer removeCachedConsumer(PooledConsumerKey key) {
+        if (cachedConsumers == null) {
+            return null;
+        }
+
+        final CachedConsumer cached = cachedConsumers.remove(key);
+        return cached != null ? cached.consumer : null;
+    }
+
+    private static void closeConsumer(MessageConsumer consumer) {
+        try {
+            consumer.close();
+        } catch (JMSException e) {
+            LOG.trace("Ignoring exception on close of evicted consumer: {}", e.getMessage());
+        }
+    }
+
+    private static void closeProducer(MessageProducer producer) {
+        try {
+            producer.close();
+        } catch (JMSException e) {
+            LOG.trace("Ignoring exception on close of evicted producer: {}", e.getMessage());
+        }
+    }
+
+    private static final class CachedConsumer {
+
+        private final MessageConsumer consumer;
+        private final long lastUsed;
+
+        public CachedConsumer(MessageConsumer consumer, long lastUsed) {
+            this.consumer = consumer;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static final class CachedProducer {
+
+        private final MessageProducer producer;
+        private final long lastUsed;
+
+        public CachedProducer(MessageProducer producer, long lastUsed) {
+            this.producer = producer;
+            this.lastUsed = lastUsed;
+        }
+    }
 }
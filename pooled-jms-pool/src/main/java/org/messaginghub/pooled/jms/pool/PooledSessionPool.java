@@ -0,0 +1,516 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keyed pool of {@link PooledSessionHolder} instances owned by a single {@link PooledConnection}.
+ * <p>
+ * The pool is tuned for the small and fixed set of {@link PooledSessionKey} values a JMS Connection
+ * can produce, the standard acknowledgement modes crossed with the transacted flag are mapped onto
+ * a fixed array of slots while any provider specific acknowledgement modes fall back to a map.  Each
+ * slot keeps its idle sessions on a lock-free stack and bounds the number of active sessions with a
+ * semaphore so that the borrow and return paths do not contend on any shared lock.
+ * <p>
+ * When thread affinity is enabled each thread remembers the last session it returned and takes
+ * that session back out of the shared idle stack on its next borrow with the same key if no other
+ * thread has taken it in the meantime.  The session itself stays on the shared idle stack so it
+ * counts against the idle and total limits like any other idle session and remains available to
+ * every thread, the hint is only weakly held so it never keeps a session alive.
+ */
+public class PooledSessionPool {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PooledSessionPool.class);
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE / 2;
+    private static final int MAX_STANDARD_ACK_MODE = Session.DUPS_OK_ACKNOWLEDGE;
+
+    private final PooledConnection connection;
+    private final SessionSlot[] standardSlots = new SessionSlot[(MAX_STANDARD_ACK_MODE + 1) * 2];
+    private final ConcurrentMap<PooledSessionKey, SessionSlot> otherSlots = new ConcurrentHashMap<>();
+    private final ThreadLocal<WeakReference<PooledSessionHolder>> lastReturned = new ThreadLocal<>();
+
+    private volatile boolean closed;
+    private volatile int maxIdlePerKey = 8;
+    private volatile int maxTotalPerKey = 8;
+    private volatile boolean blockWhenExhausted = true;
+    private volatile long maxWaitMillis = -1;
+    private volatile boolean threadAffinity;
+
+    public PooledSessionPool(PooledConnection connection) {
+        this.connection = connection;
+
+        for (int i = 0; i < standardSlots.length; ++i) {
+            standardSlots[i] = new SessionSlot(maxTotalPerKey);
+        }
+    }
+
+    /**
+     * Borrows an idle session for the given key, creating a new one when none is idle.
+     * <p>
+     * When the maximum number of active sessions for the key has been reached the call either
+     * blocks until a session is returned or fails right away depending on the configuration.
+     *
+     * @param key
+     *      The session key that identifies the type of session to borrow.
+     *
+     * @return a session holder that is now considered active.
+     *
+     * @throws JMSException if an error occurs while creating a new session.
+     * @throws NoSuchElementException if the pool is exhausted or the wait for a session timed out.
+     * @throws IllegalStateException if the pool has been closed.
+     */
+    public PooledSessionHolder borrowObject(PooledSessionKey key) throws JMSException {
+        assertOpen();
+
+        final SessionSlot slot = getSlot(key);
+
+        acquirePermit(slot);
+
+        if (closed) {
+            slot.permits.release();
+            assertOpen();
+        }
+
+        PooledSessionHolder holder = threadAffinity ? takeLastReturned(slot) : null;
+        if (holder == null) {
+            holder = slot.idle.pollFirst();
+        }
+
+        if (holder != null) {
+            slot.numIdle.decrementAndGet();
+        } else {
+            try {
+                holder = new PooledSessionHolder(connection, connection.makeSession(key));
+            } catch (JMSException | RuntimeException e) {
+                slot.permits.release();
+                throw e;
+            }
+        }
+
+        slot.numActive.incrementAndGet();
+
+        return holder;
+    }
+
+    /**
+     * Returns a previously borrowed session to the pool, the session is closed instead of
+     * being retained if the pool is closed or already holds the maximum number of idle sessions.
+     *
+     * @param key
+     *      The session key the session was borrowed with.
+     * @param holder
+     *      The session holder being returned.
+     */
+    public void returnObject(PooledSessionKey key, PooledSessionHolder holder) {
+        final SessionSlot slot = getSlot(key);
+
+        if (offerIdle(slot, holder)) {
+            if (threadAffinity) {
+                lastReturned.set(new WeakReference<>(holder));
+            }
+        } else {
+            destroy(holder);
+        }
+
+        slot.numActive.decrementAndGet();
+        slot.permits.release();
+    }
+
+    /**
+     * Closes a previously borrowed session and releases its place in the pool.
+     *
+     * @param key
+     *      The session key the session was borrowed with.
+     * @param holder
+     *      The session holder being invalidated.
+     */
+    public void invalidateObject(PooledSessionKey key, PooledSessionHolder holder) {
+        final SessionSlot slot = getSlot(key);
+
+        destroy(holder);
+
+        slot.numActive.decrementAndGet();
+        slot.permits.release();
+    }
+
+    /**
+     * Creates a new session and places it in the idle stack for the given key.  No session is
+     * created if the key already holds the maximum number of idle or total sessions.
+     *
+     * @param key
+     *      The session key that identifies the type of session to create.
+     *
+     * @throws JMSException if an error occurs while creating the session.
+     */
+    public void addObject(PooledSessionKey key) throws JMSException {
+        assertOpen();
+
+        final SessionSlot slot = getSlot(key);
+
+        if (slot.numIdle.get() + slot.numActive.get() >= maxTotalPerKey && maxTotalPerKey >= 0) {
+            return;
+        }
+
+        final PooledSessionHolder holder = new PooledSessionHolder(connection, connection.makeSession(key));
+
+        if (!offerIdle(slot, holder)) {
+            destroy(holder);
+        }
+    }
+
+    /**
+     * Closes the pool, all idle sessions are closed and any caller blocked waiting on a session
+     * is released.  Sessions that are still active are closed as they are returned.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        for (SessionSlot slot : standardSlots) {
+            closeSlot(slot);
+        }
+
+        for (SessionSlot slot : otherSlots.values()) {
+            closeSlot(slot);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the cached resources of the idle sessions in the pool that have been left unused
+     * for longer than their configured idle timeout, the sessions themselves stay in the pool.
+     */
+    public void evictIdleResources() {
+        for (SessionSlot slot : standardSlots) {
+            evictIdleResources(slot);
+        }
+
+        for (SessionSlot slot : otherSlots.values()) {
+            evictIdleResources(slot);
+        }
+    }
+
+    /**
+     * @return the number of idle sessions held for the given key.
+     */
+    public int getNumIdle(PooledSessionKey key) {
+        return getSlot(key).numIdle.get();
+    }
+
+    /**
+     * @return the number of active sessions borrowed with the given key.
+     */
+    public int getNumActive(PooledSessionKey key) {
+        return getSlot(key).numActive.get();
+    }
+
+    /**
+     * @return the total number of idle sessions held across all keys.
+     */
+    public int getNumIdle() {
+        int result = 0;
+
+        for (SessionSlot slot : standardSlots) {
+            result += slot.numIdle.get();
+        }
+
+        for (SessionSlot slot : otherSlots.values()) {
+            result += slot.numIdle.get();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the total number of active sessions across all keys.
+     */
+    public int getNumActive() {
+        int result = 0;
+
+        for (SessionSlot slot : standardSlots) {
+            result += slot.numActive.get();
+        }
+
+        for (SessionSlot slot : otherSlots.values()) {
+            result += slot.numActive.get();
+        }
+
+        return result;
+    }
+
+    public int getMaxIdlePerKey() {
+        return maxIdlePerKey;
+    }
+
+    /**
+     * Sets the maximum number of idle sessions retained for each key, a negative value means
+     * that there is no limit.
+     *
+     * @param maxIdlePerKey
+     *      The maximum number of idle sessions retained for each key.
+     */
+    public void setMaxIdlePerKey(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    public int getMaxTotalPerKey() {
+        return maxTotalPerKey;
+    }
+
+    /**
+     * Sets the maximum number of active sessions for each key, a negative value means that there
+     * is no limit.
+     *
+     * @param maxTotalPerKey
+     *      The maximum number of active sessions for each key.
+     */
+    public synchronized void setMaxTotalPerKey(int maxTotalPerKey) {
+        this.maxTotalPerKey = maxTotalPerKey;
+
+        for (SessionSlot slot : standardSlots) {
+            slot.permits.resize(maxTotalPerKey);
+        }
+
+        for (SessionSlot slot : otherSlots.values()) {
+            slot.permits.resize(maxTotalPerKey);
+        }
+    }
+
+    public boolean getBlockWhenExhausted() {
+        return blockWhenExhausted;
+    }
+
+    public void setBlockWhenExhausted(boolean blockWhenExhausted) {
+        this.blockWhenExhausted = blockWhenExhausted;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets the time to wait for a session when the pool is exhausted and blocking is enabled,
+     * a negative value means wait indefinitely.
+     *
+     * @param maxWaitMillis
+     *      The time in milliseconds to wait for a session to become available.
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public boolean isThreadAffinity() {
+        return threadAffinity;
+    }
+
+    /**
+     * Sets whether the last session returned by a thread is handed back to that thread on its
+     * next borrow if it is still idle, rather than whichever session was most recently returned.
+     *
+     * @param threadAffinity
+     *      true if returned sessions should be kept for the thread that returned them.
+     */
+    public void setThreadAffinity(boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private SessionSlot getSlot(PooledSessionKey key) {
+        final int ackMode = key.getAckMode();
+
+        if (ackMode >= 0 && ackMode <= MAX_STANDARD_ACK_MODE) {
+            return standardSlots[(ackMode << 1) | (key.isTransacted() ? 1 : 0)];
+        }
+
+        SessionSlot slot = otherSlots.get(key);
+        if (slot == null) {
+            synchronized (this) {
+                slot = otherSlots.get(key);
+                if (slot == null) {
+                    slot = new SessionSlot(maxTotalPerKey);
+                    otherSlots.put(key, slot);
+                    if (closed) {
+                        closeSlot(slot);
+                    }
+                }
+            }
+        }
+
+        return slot;
+    }
+
+    private void acquirePermit(SessionSlot slot) {
+        if (slot.permits.tryAcquire()) {
+            return;
+        }
+
+        if (!blockWhenExhausted) {
+            throw new NoSuchElementException("Pool exhausted");
+        }
+
+        final long waitTime = maxWaitMillis;
+
+        try {
+            if (waitTime < 0) {
+                slot.permits.acquire();
+            } else if (!slot.permits.tryAcquire(waitTime, TimeUnit.MILLISECONDS)) {
+                throw new NoSuchElementException("Timeout waiting for idle object");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            NoSuchElementException nsee = new NoSuchElementException("Interrupted while waiting for idle object");
+            nsee.initCause(e);
+            throw nsee;
+        }
+    }
+
+    private boolean offerIdle(SessionSlot slot, PooledSessionHolder holder) {
+        if (closed) {
+            return false;
+        }
+
+        final int maxIdle = maxIdlePerKey;
+        if (slot.numIdle.incrementAndGet() > maxIdle && maxIdle >= 0) {
+            slot.numIdle.decrementAndGet();
+            return false;
+        }
+
+        slot.idle.offerFirst(holder);
+
+        // The pool could have been closed while the session was being pushed, make sure
+        // it does not linger in the idle stack of a closed pool.
+        if (closed) {
+            clearIdle(slot);
+        }
+
+        return true;
+    }
+
+    private PooledSessionHolder takeLastReturned(SessionSlot slot) {
+        final WeakReference<PooledSessionHolder> hint = lastReturned.get();
+        final PooledSessionHolder holder = hint != null ? hint.get() : null;
+
+        if (holder == null) {
+            return null;
+        }
+
+        // Only one thread can remove a given entry so a session taken by another thread, or
+        // one that was returned with another key, is simply not found here.
+        if (!slot.idle.removeFirstOccurrence(holder)) {
+            return null;
+        }
+
+        lastReturned.remove();
+        return holder;
+    }
+
+    private void evictIdleResources(SessionSlot slot) {
+        // A session borrowed while this runs keeps its cached resources in use and those are
+        // not in the cache, the holder guards the cache itself.
+        for (PooledSessionHolder holder : slot.idle) {
+            holder.evictIdleResources();
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool not open");
+        }
+    }
+
+    private void closeSlot(SessionSlot slot) {
+        clearIdle(slot);
+
+        // Wake any threads blocked waiting on a session, they will find the pool closed.
+        slot.permits.release(UNBOUNDED);
+    }
+
+    private void clearIdle(SessionSlot slot) {
+        PooledSessionHolder holder;
+        while ((holder = slot.idle.pollFirst()) != null) {
+            slot.numIdle.decrementAndGet();
+            destroy(holder);
+        }
+    }
+
+    private void destroy(PooledSessionHolder holder) {
+        try {
+            holder.close();
+        } catch (Exception e) {
+            LOG.trace("Ignoring exception on close of pooled session: {}", e.getMessage());
+        }
+    }
+
+    private static final class SessionSlot {
+
+        private final ConcurrentLinkedDeque<PooledSessionHolder> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger numIdle = new AtomicInteger();
+        private final AtomicInteger numActive = new AtomicInteger();
+        private final SessionPermits permits;
+
+        public SessionSlot(int maxTotal) {
+            this.permits = new SessionPermits(maxTotal);
+        }
+    }
+
+    private static final class SessionPermits extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private int limit;
+
+        public SessionPermits(int maxTotal) {
+            super(maxTotal < 0 ? UNBOUNDED : maxTotal);
+            this.limit = maxTotal < 0 ? UNBOUNDED : maxTotal;
+        }
+
+        public synchronized void resize(int maxTotal) {
+            final int newLimit = maxTotal < 0 ? UNBOUNDED : maxTotal;
+            final int delta = newLimit - limit;
+
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+
+            limit = newLimit;
+        }
+    }
+}
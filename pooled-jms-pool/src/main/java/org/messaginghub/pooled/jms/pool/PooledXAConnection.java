@@ -16,6 +16,9 @@
  */
 package org.messaginghub.pooled.jms.pool;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Session;
@@ -23,6 +26,7 @@ import javax.jms.XAConnection;
 import javax.transaction.RollbackException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
+import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 
@@ -31,17 +35,36 @@ import org.messaginghub.pooled.jms.JmsPoolSession;
 /**
  * An XA-aware connection pool. When a session is created and an xa transaction
  * is active, the session will automatically be enlisted in the current
- * transaction.
+ * transaction.  Unless disabled, later requests for a session made within the
+ * same transaction return the session that is already enlisted in it.
  */
 public class PooledXAConnection extends PooledConnection {
 
     private final TransactionManager transactionManager;
+    private final ConcurrentMap<Transaction, JmsPoolSession> transactionSessions = new ConcurrentHashMap<>();
+
+    private volatile boolean useTransactionAffineSessions = true;
 
     public PooledXAConnection(Connection connection, TransactionManager transactionManager) {
         super(connection);
         this.transactionManager = transactionManager;
     }
 
+    public boolean isUseTransactionAffineSessions() {
+        return useTransactionAffineSessions;
+    }
+
+    /**
+     * Sets whether a session enlisted in a transaction is handed back by every later call to
+     * createSession made within that transaction instead of enlisting another session.
+     *
+     * @param useTransactionAffineSessions
+     *      Should sessions be bound to the transaction they were enlisted in.
+     */
+    public void setUseTransactionAffineSessions(boolean useTransactionAffineSessions) {
+        this.useTransactionAffineSessions = useTransactionAffineSessions;
+    }
+
     @Override
     protected Session makeSession(PooledSessionKey key) throws JMSException {
         return ((XAConnection) connection).createXASession();
@@ -51,6 +74,14 @@ public class PooledXAConnection extends PooledConnection {
     public Session createSession(boolean transacted, int ackMode) throws JMSException {
         try {
             boolean isXa = (transactionManager != null && transactionManager.getStatus() != Status.STATUS_NO_TRANSACTION);
+            final Transaction transaction = isXa ? transactionManager.getTransaction() : null;
+            if (isXa && useTransactionAffineSessions) {
+                final JmsPoolSession bound = transaction != null ? transactionSessions.get(transaction) : null;
+                if (bound != null) {
+                    return bound;
+                }
+            }
+
             if (isXa) {
                 // if the xa tx aborts inflight we don't want to auto create a
                 // local transaction or auto ack
@@ -67,9 +98,12 @@ public class PooledXAConnection extends PooledConnection {
             if (isXa) {
                 session.setIgnoreClose(true);
                 session.setIsXa(true);
-                transactionManager.getTransaction().registerSynchronization(new Synchronization(session));
+                transaction.registerSynchronization(new Synchronization(session, transaction));
                 incrementReferenceCount();
-                transactionManager.getTransaction().enlistResource(createXaResource(session));
+                transaction.enlistResource(createXaResource(session));
+                if (useTransactionAffineSessions) {
+                    transactionSessions.put(transaction, session);
+                }
             } else {
                 session.setIgnoreClose(false);
             }
@@ -92,9 +126,11 @@ public class PooledXAConnection extends PooledConnection {
     protected class Synchronization implements javax.transaction.Synchronization {
 
         private final JmsPoolSession session;
+        private final Transaction transaction;
 
-        private Synchronization(JmsPoolSession session) {
+        private Synchronization(JmsPoolSession session, Transaction transaction) {
             this.session = session;
+            this.transaction = transaction;
         }
 
         @Override
@@ -103,6 +139,8 @@ public class PooledXAConnection extends PooledConnection {
 
         @Override
         public void afterCompletion(int status) {
+            transactionSessions.remove(transaction, session);
+
             try {
                 // This will return session to the pool.
                 session.setIgnoreClose(false);
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.pool;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link ConnectionSelectionStrategy} that picks two pooled Connections at random and selects
+ * the one with fewer Sessions loaned out.
+ * <p>
+ * This gives close to the balance of always choosing the least loaded Connection while only
+ * ever inspecting two Connections, which avoids all callers piling onto the same Connection
+ * when the active Session counts change faster than they can be observed.
+ */
+public class RandomOfTwoConnectionSelectionStrategy implements ConnectionSelectionStrategy {
+
+    @Override
+    public PooledConnection select(PooledConnectionKey key, List<PooledConnection> connections) {
+        final int size = connections.size();
+        if (size == 1) {
+            return connections.get(0);
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        final PooledConnection candidate1 = connections.get(first);
+        final PooledConnection candidate2 = connections.get(second);
+
+        return candidate1.getNumActiveSessions() <= candidate2.getNumActiveSessions() ? candidate1 : candidate2;
+    }
+}
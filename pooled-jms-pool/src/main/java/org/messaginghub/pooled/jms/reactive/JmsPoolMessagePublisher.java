@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.reactive;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.messaginghub.pooled.jms.JmsPoolMessageConsumer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Reactive Streams {@link Publisher} that emits the messages consumed from a destination.
+ * <p>
+ * Every subscriber is given its own consumer on a Session borrowed from the pool, so subscribers
+ * to a Queue compete for its messages.  Messages are only received while the subscriber has
+ * outstanding demand, the demand is drained with {@link JmsPoolMessageConsumer#receiveBatch(int, long)}
+ * in batches of at most the configured batch size so that unrequested messages are left with the
+ * broker rather than buffered in the application.  Receives run on the configured executor and a
+ * subscription holds no thread while it has no outstanding demand.
+ * <p>
+ * The Session is created with the configured acknowledgement mode, when that is
+ * {@link Session#CLIENT_ACKNOWLEDGE} the subscriber is responsible for acknowledging the
+ * messages it is given.  The consumer and its Session are returned to the pool when the
+ * subscription is cancelled or fails.  A subscriber that throws from onNext is treated as
+ * having cancelled, the failure is logged and the subscriber is not signalled again.
+ */
+public class JmsPoolMessagePublisher implements Publisher<Message> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsPoolMessagePublisher.class);
+
+    private final JmsPoolConnectionFactory connectionFactory;
+    private final Destination destination;
+
+    private String messageSelector;
+    private int sessionAcknowledgeMode = Session.AUTO_ACKNOWLEDGE;
+    private int batchSize = 32;
+    private long receiveTimeout = 1000;
+    private Executor executor;
+
+    /**
+     * Creates a new publisher of the messages sent to the given destination.
+     *
+     * @param connectionFactory
+     *      the pooled connection factory used to obtain Connections and Sessions.
+     * @param destination
+     *      the destination to consume from.
+     */
+    public JmsPoolMessagePublisher(JmsPoolConnectionFactory connectionFactory, Destination destination) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("A pooled connection factory is required");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("A destination is required");
+        }
+
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+
+        final ConsumerSubscription subscription = new ConsumerSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    //----- Configuration ----------------------------------------------------//
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public String getMessageSelector() {
+        return messageSelector;
+    }
+
+    /**
+     * Sets the message selector applied to the consumer of each subscription.
+     *
+     * @param messageSelector
+     *      the message selector to apply or null to receive all messages.
+     */
+    public void setMessageSelector(String messageSelector) {
+        this.messageSelector = messageSelector;
+    }
+
+    public int getSessionAcknowledgeMode() {
+        return sessionAcknowledgeMode;
+    }
+
+    /**
+     * Sets the acknowledgement mode of the Session backing each subscription, transacted
+     * Sessions are not supported as the receives happen on the executor threads.
+     *
+     * @param sessionAcknowledgeMode
+     *      the acknowledgement mode used when creating the Sessions.
+     */
+    public void setSessionAcknowledgeMode(int sessionAcknowledgeMode) {
+        if (sessionAcknowledgeMode == Session.SESSION_TRANSACTED) {
+            throw new IllegalArgumentException("Transacted sessions are not supported");
+        }
+
+        this.sessionAcknowledgeMode = sessionAcknowledgeMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of messages taken in a single receive, fewer are taken when the
+     * subscriber has requested less.
+     *
+     * @param batchSize
+     *      the maximum number of messages received at once, must be greater than zero.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than zero");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public long getReceiveTimeout() {
+        return receiveTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds each receive waits for messages, this bounds how long it
+     * takes a subscription to notice that it has been cancelled.
+     *
+     * @param receiveTimeout
+     *      the receive timeout in milliseconds, must be greater than zero.
+     */
+    public void setReceiveTimeout(long receiveTimeout) {
+        if (receiveTimeout <= 0) {
+            throw new IllegalArgumentException("Receive timeout must be greater than zero");
+        }
+
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor that receives run on, by default a shared executor whose threads are
+     * virtual threads on JVMs that support them.
+     *
+     * @param executor
+     *      the executor to receive on or null to use the shared default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " { " + destination + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private final class ConsumerSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super Message> subscriber;
+        private final Executor executor;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger workInProgress = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // Only accessed from the drain loop which never runs concurrently with itself.
+        private Connection connection;
+        private Session session;
+        private JmsPoolMessageConsumer consumer;
+        private boolean terminated;
+
+        public ConsumerSubscription(Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+            this.executor = JmsPoolMessagePublisher.this.executor != null ?
+                JmsPoolMessagePublisher.this.executor : ReactiveSupport.getDefaultExecutor();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested demand must be greater than zero but was " + n);
+            } else {
+                long current;
+                do {
+                    current = requested.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (workInProgress.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            do {
+                drain();
+                missed = workInProgress.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (terminated) {
+                return;
+            }
+
+            try {
+                while (!cancelled && invalidRequest == null && requested.get() > 0) {
+                    if (consumer == null) {
+                        createConsumer();
+                    }
+
+                    final long demand = requested.get();
+                    final List<Message> batch = consumer.receiveBatch((int) Math.min(demand, batchSize), receiveTimeout);
+
+                    for (Message message : batch) {
+                        if (!deliver(message)) {
+                            return;
+                        }
+                    }
+
+                    if (!batch.isEmpty() && demand != Long.MAX_VALUE) {
+                        requested.addAndGet(-batch.size());
+                    }
+                }
+
+                if (cancelled) {
+                    terminate(null);
+                } else if (invalidRequest != null) {
+                    terminate(invalidRequest);
+                }
+            } catch (Throwable error) {
+                if (!cancelled) {
+                    LOG.debug("Subscription to {} failed", destination, error);
+                    terminate(error);
+                } else {
+                    terminate(null);
+                }
+            }
+        }
+
+        /*
+         * A subscriber that throws from onNext has violated rule 2.13, the subscription is
+         * considered cancelled and the subscriber must not be signalled again, not even onError.
+         */
+        private boolean deliver(Message message) {
+            try {
+                subscriber.onNext(message);
+                return true;
+            } catch (Throwable error) {
+                LOG.warn("Subscriber {} of {} failed to handle a message, cancelling its subscription", subscriber, destination, error);
+                terminate(null);
+                return false;
+            }
+        }
+
+        private void createConsumer() throws Exception {
+            connection = connectionFactory.createConnection();
+            if (connection == null) {
+                throw new IllegalStateException("The pooled connection factory has been stopped");
+            }
+
+            connection.start();
+            session = connection.createSession(false, sessionAcknowledgeMode);
+            consumer = (JmsPoolMessageConsumer) session.createConsumer(destination, messageSelector);
+        }
+
+        private void terminate(Throwable error) {
+            terminated = true;
+            cancelled = true;
+
+            ReactiveSupport.closeQuietly(consumer, null, session, connection);
+            consumer = null;
+            session = null;
+            connection = null;
+
+            if (error != null) {
+                subscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.reactive;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A Reactive Streams {@link Subscriber} that sends every message it is given to a destination.
+ * <p>
+ * The messages are sent asynchronously from a producer on a Session borrowed from the pool, the
+ * subscriber requests no more messages than it has room for in its window of sends in flight and
+ * requests one more each time a send completes, so a slow broker slows the upstream publisher down.
+ * Sends also count against the pooled Connection's own asynchronous send window when one is
+ * configured.
+ * <p>
+ * The returned {@link #getCompletion() completion} finishes once the upstream publisher has
+ * completed and all of its messages have been sent, or fails with the first error.  The producer
+ * and its Session are returned to the pool when the stream ends either way.
+ */
+public class JmsPoolMessageSubscriber implements Subscriber<Message> {
+
+    private final JmsPoolConnectionFactory connectionFactory;
+    private final Destination destination;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private final AtomicInteger sendsInFlight = new AtomicInteger();
+    private final CompletionListener sendCompletion = new SendCompletion();
+
+    // Demand not yet signalled upstream, only the thread that moves signalsInProgress off zero signals it.
+    private final AtomicLong pendingDemand = new AtomicLong();
+    private final AtomicInteger signalsInProgress = new AtomicInteger();
+
+    private int maxSendsInFlight = 64;
+    private Executor executor;
+
+    private volatile Subscription subscription;
+    private volatile boolean upstreamComplete;
+    private volatile boolean cancelRequested;
+
+    private volatile Connection connection;
+    private volatile Session session;
+    private volatile MessageProducer producer;
+
+    /**
+     * Creates a new subscriber that sends the messages it is given to the given destination.
+     *
+     * @param connectionFactory
+     *      the pooled connection factory used to obtain Connections and Sessions.
+     * @param destination
+     *      the destination to send to.
+     */
+    public JmsPoolMessageSubscriber(JmsPoolConnectionFactory connectionFactory, Destination destination) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("A pooled connection factory is required");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("A destination is required");
+        }
+
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("Subscription cannot be null");
+        }
+
+        if (!subscribed.compareAndSet(false, true)) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+
+        try {
+            connection = connectionFactory.createConnection();
+            if (connection == null) {
+                throw new IllegalStateException("The pooled connection factory has been stopped");
+            }
+
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(destination);
+        } catch (JMSException ex) {
+            fail(ex);
+            return;
+        }
+
+        request(maxSendsInFlight);
+    }
+
+    @Override
+    public void onNext(Message message) {
+        if (message == null) {
+            throw new NullPointerException("Message cannot be null");
+        }
+
+        if (terminated.get()) {
+            return;
+        }
+
+        sendsInFlight.incrementAndGet();
+        try {
+            producer.send(message, sendCompletion);
+        } catch (JMSException | RuntimeException ex) {
+            sendsInFlight.decrementAndGet();
+            fail(ex);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        if (error == null) {
+            throw new NullPointerException("Error cannot be null");
+        }
+
+        fail(error);
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamComplete = true;
+        if (sendsInFlight.get() == 0) {
+            finish();
+        }
+    }
+
+    /**
+     * @return a stage that completes when all messages have been sent or fails with the first error.
+     */
+    public CompletionStage<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * @return the number of sends that have not yet been completed by the provider.
+     */
+    public int getNumSendsInFlight() {
+        return sendsInFlight.get();
+    }
+
+    //----- Configuration ----------------------------------------------------//
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public int getMaxSendsInFlight() {
+        return maxSendsInFlight;
+    }
+
+    /**
+     * Sets the number of messages that can be sent and not yet completed, which is the
+     * amount of demand the subscriber signals upstream before any send completes.
+     *
+     * @param maxSendsInFlight
+     *      the maximum number of sends in flight, must be greater than zero.
+     */
+    public void setMaxSendsInFlight(int maxSendsInFlight) {
+        if (maxSendsInFlight <= 0) {
+            throw new IllegalArgumentException("Max sends in flight must be greater than zero");
+        }
+
+        this.maxSendsInFlight = maxSendsInFlight;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor that releases the pooled resources once the stream ends, as they
+     * cannot be closed from within a send completion callback.  By default a shared executor
+     * is used.
+     *
+     * @param executor
+     *      the executor to release resources on or null to use the shared default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " { " + destination + " }";
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void finish() {
+        if (terminated.compareAndSet(false, true)) {
+            release(null);
+        }
+    }
+
+    private void fail(Throwable error) {
+        if (terminated.compareAndSet(false, true)) {
+            cancelRequested = true;
+            signalUpstream();
+            release(error);
+        }
+    }
+
+    private void request(long demand) {
+        pendingDemand.addAndGet(demand);
+        signalUpstream();
+    }
+
+    /*
+     * Send completions arrive on provider threads so demand and cancellation are collected
+     * here and signalled by one thread at a time, as the Subscription may not be called
+     * concurrently.  Demand added by a send that completes from within request is picked up
+     * by the loop instead of recursing into the Subscription.
+     */
+    private void signalUpstream() {
+        if (signalsInProgress.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            final Subscription subscription = this.subscription;
+            if (subscription != null) {
+                if (cancelRequested) {
+                    this.subscription = null;
+                    pendingDemand.set(0);
+                    subscription.cancel();
+                } else {
+                    final long demand = pendingDemand.getAndSet(0);
+                    if (demand > 0) {
+                        subscription.request(demand);
+                    }
+                }
+            }
+
+            missed = signalsInProgress.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void release(final Throwable error) {
+        final Executor executor = this.executor != null ? this.executor : ReactiveSupport.getDefaultExecutor();
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                ReactiveSupport.closeQuietly(null, producer, session, connection);
+
+                if (error == null) {
+                    completion.complete(null);
+                } else {
+                    completion.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    private final class SendCompletion implements CompletionListener {
+
+        @Override
+        public void onCompletion(Message message) {
+            final int remaining = sendsInFlight.decrementAndGet();
+
+            if (upstreamComplete) {
+                if (remaining == 0) {
+                    finish();
+                }
+            } else if (!terminated.get()) {
+                request(1);
+            }
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            sendsInFlight.decrementAndGet();
+            fail(exception);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.reactive;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.messaginghub.pooled.jms.util.JmsPoolVirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Support methods shared by the reactive adapters.
+ */
+final class ReactiveSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveSupport.class);
+
+    private static ExecutorService defaultExecutor;
+
+    private ReactiveSupport() {}
+
+    /*
+     * Receives and resource cleanup run on a shared executor whose threads are virtual where
+     * the JVM supports them so that idle subscriptions do not each hold a platform thread.
+     */
+    static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(JmsPoolVirtualThreads.newThreadFactory("JmsPool Reactive Streams"));
+        }
+
+        return defaultExecutor;
+    }
+
+    static void closeQuietly(MessageConsumer consumer, MessageProducer producer, Session session, Connection connection) {
+        try {
+            if (consumer != null) {
+                consumer.close();
+            }
+            if (producer != null) {
+                producer.close();
+            }
+        } catch (JMSException ex) {
+            LOG.trace("Ignoring error closing reactive adapter resources", ex);
+        }
+
+        try {
+            if (session != null) {
+                session.close();
+            }
+        } catch (JMSException ex) {
+            LOG.trace("Ignoring error closing reactive adapter session", ex);
+        }
+
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (JMSException ex) {
+            LOG.trace("Ignoring error closing reactive adapter connection", ex);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simple ThreadFactory object used to name the threads the pool creates for its background
+ * work and to control whether those threads prevent the JVM from exiting.
+ */
+public class JmsPoolThreadFactory implements ThreadFactory {
+
+    private final String threadName;
+    private final boolean daemon;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates a new Thread factory that will create threads with the given name prefix
+     * and daemon state.
+     *
+     * @param threadName
+     *      the name prefix that will be assigned to each new thread.
+     * @param daemon
+     *      should the created thread be a daemon thread.
+     */
+    public JmsPoolThreadFactory(String threadName, boolean daemon) {
+        this.threadName = threadName;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable target) {
+        Thread thread = new Thread(target, threadName + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(daemon);
+        return thread;
+    }
+}
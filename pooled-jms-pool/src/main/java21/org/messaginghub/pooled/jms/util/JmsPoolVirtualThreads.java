@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads used to run blocking pool work such as listener container consumers.
+ * <p>
+ * This is the Java 21 version of the class which creates virtual threads.
+ */
+public final class JmsPoolVirtualThreads {
+
+    private JmsPoolVirtualThreads() {}
+
+    /**
+     * @return true if the running JVM and this version of the pool support virtual threads.
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates a ThreadFactory whose threads are virtual threads.
+     *
+     * @param threadName
+     *      the name prefix that will be assigned to each new thread.
+     *
+     * @return a new ThreadFactory for the given thread name prefix.
+     */
+    public static ThreadFactory newThreadFactory(String threadName) {
+        return Thread.ofVirtual().name(threadName + "-", 1).factory();
+    }
+}
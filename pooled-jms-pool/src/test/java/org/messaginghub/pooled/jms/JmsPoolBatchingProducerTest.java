@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.IllegalStateException;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.mock.MockJMSSessionListener;
+import org.messaginghub.pooled.jms.util.Wait;
+
+/**
+ * Tests for the batching producer that commits its sends in groups.
+ */
+public class JmsPoolBatchingProducerTest extends JmsPoolTestSupport {
+
+    @Test(timeout = 60000)
+    public void testCommitsEachFullBatch() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        AtomicInteger commits = trackCommits(connection);
+
+        Session session = connection.createSession();
+        JmsPoolBatchingProducer producer = ((JmsPoolSession) session).createBatchingProducer(new MockJMSQueue("test"), 3, 0);
+
+        CompletableFuture<Message> first = producer.send(session.createMessage()).toCompletableFuture();
+        producer.send(session.createMessage());
+        assertFalse(first.isDone());
+        assertEquals(0, commits.get());
+        assertEquals(2, producer.getNumPendingMessages());
+
+        Message third = session.createMessage();
+        CompletableFuture<Message> result = producer.send(third).toCompletableFuture();
+        assertTrue(first.isDone());
+        assertSame(third, result.get());
+        assertEquals(1, commits.get());
+
+        CompletableFuture<Message> last = producer.send(session.createMessage()).toCompletableFuture();
+        assertEquals(1, producer.getNumPendingMessages());
+
+        producer.close();
+        assertTrue(last.isDone());
+        assertEquals(2, commits.get());
+        assertEquals("Batching session should return to the pool", 1, connection.getNumtIdleSessions());
+    }
+
+    @Test(timeout = 60000)
+    public void testCommitsPartialBatchOnTimeout() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        AtomicInteger commits = trackCommits(connection);
+
+        Session session = connection.createSession();
+        JmsPoolBatchingProducer producer = ((JmsPoolSession) session).createBatchingProducer(null, 100, 20);
+
+        final CompletableFuture<Message> result =
+            producer.send(new MockJMSQueue("test"), session.createMessage()).toCompletableFuture();
+
+        assertTrue("Batch should commit on timeout", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return result.isDone();
+            }
+        }, 5000, 10));
+
+        assertEquals(1, commits.get());
+        assertEquals(0, producer.getNumPendingMessages());
+        producer.close();
+        assertEquals(1, commits.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedCommitCompletesSendsExceptionally() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateSession(MockJMSSession session) throws JMSException {
+                session.addSessionListener(new MockJMSSessionListener() {
+
+                    @Override
+                    public void onSessionCommit(MockJMSSession session) throws JMSException {
+                        throw new JMSException("Commit failed");
+                    }
+                });
+            }
+        });
+
+        Session session = connection.createSession();
+        JmsPoolBatchingProducer producer = ((JmsPoolSession) session).createBatchingProducer(new MockJMSQueue("test"), 2, 0);
+
+        CompletableFuture<Message> first = producer.send(session.createMessage()).toCompletableFuture();
+        CompletableFuture<Message> second = producer.send(session.createMessage()).toCompletableFuture();
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+
+        try {
+            first.get();
+            fail("Should have failed with the commit error");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof JMSException);
+        }
+
+        producer.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testClosingSessionClosesBatchingProducer() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        AtomicInteger commits = trackCommits(connection);
+
+        Session session = connection.createSession();
+        JmsPoolBatchingProducer producer = ((JmsPoolSession) session).createBatchingProducer(new MockJMSQueue("test"), 10, 0);
+
+        CompletableFuture<Message> result = producer.send(session.createMessage()).toCompletableFuture();
+        session.close();
+
+        assertTrue(result.isDone());
+        assertEquals(1, commits.get());
+
+        try {
+            producer.send(session.createMessage());
+            fail("Should not be able to send after close");
+        } catch (IllegalStateException ise) {
+            // Expected
+        } catch (JMSException ex) {
+            // Expected as the closed session cannot create messages
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCreateFromContext() throws Exception {
+        JMSContext context = cf.createContext();
+        JmsPoolBatchingProducer producer = ((JmsPoolJMSContext) context).createBatchingProducer(new MockJMSQueue("test"), 2, 0);
+
+        CompletableFuture<Message> result = producer.send(context.createMessage()).toCompletableFuture();
+        assertFalse(result.isDone());
+
+        context.close();
+        assertTrue(result.isDone());
+    }
+
+    @Test(timeout = 60000)
+    public void testInvalidBatchConfigurationRejected() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        JmsPoolSession session = (JmsPoolSession) connection.createSession();
+
+        try {
+            session.createBatchingProducer(null, 0, 0);
+            fail("Should not accept an empty batch");
+        } catch (IllegalArgumentException iae) {
+            // Expected
+        }
+
+        try {
+            session.createBatchingProducer(null, 1, -1);
+            fail("Should not accept a negative timeout");
+        } catch (IllegalArgumentException iae) {
+            // Expected
+        }
+
+        assertEquals("Failed creations should return their session", 1, connection.getNumtIdleSessions());
+    }
+
+    private AtomicInteger trackCommits(JmsPoolConnection connection) throws JMSException {
+        final AtomicInteger commits = new AtomicInteger();
+
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateSession(MockJMSSession session) throws JMSException {
+                session.addSessionListener(new MockJMSSessionListener() {
+
+                    @Override
+                    public void onSessionCommit(MockJMSSession session) throws JMSException {
+                        commits.incrementAndGet();
+                    }
+                });
+            }
+        });
+
+        return commits;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionFactory;
+import org.messaginghub.pooled.jms.pool.ConnectionCircuitBreaker;
+import org.messaginghub.pooled.jms.util.Wait;
+
+/**
+ * Tests for the circuit breaker that guards creation of new provider Connections.
+ */
+public class JmsPoolConnectionCircuitBreakerTest extends JmsPoolTestSupport {
+
+    private FailingConnectionFactory provider;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        provider = new FailingConnectionFactory();
+
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(provider);
+        cf.setCreateConnectionOnStartup(false);
+        cf.setConnectionCircuitBreakerThreshold(2);
+        cf.setConnectionCircuitBreakerInitialBackoff(200);
+        cf.setConnectionCircuitBreakerMaxBackoff(400);
+    }
+
+    @Test(timeout = 60000)
+    public void testCircuitBreakerDisabledByDefault() throws Exception {
+        JmsPoolConnectionFactory defaults = new JmsPoolConnectionFactory();
+        assertEquals(0, defaults.getConnectionCircuitBreakerThreshold());
+        assertEquals(ConnectionCircuitBreaker.State.CLOSED, defaults.getConnectionCircuitBreakerState());
+    }
+
+    @Test(timeout = 60000)
+    public void testCircuitOpensAfterThresholdAndFailsFast() throws Exception {
+        provider.available = false;
+
+        assertCreateFails();
+        assertEquals(ConnectionCircuitBreaker.State.CLOSED, cf.getConnectionCircuitBreakerState());
+        assertCreateFails();
+        assertEquals(ConnectionCircuitBreaker.State.OPEN, cf.getConnectionCircuitBreakerState());
+        assertEquals(2, provider.attempts.get());
+
+        for (int i = 0; i < 10; ++i) {
+            assertCreateFails();
+        }
+
+        assertEquals("Open circuit should not call the provider", 2, provider.attempts.get());
+        assertEquals(2, cf.getConnectionCreationFailures());
+    }
+
+    @Test(timeout = 60000)
+    public void testSuccessfulProbeClosesCircuit() throws Exception {
+        provider.available = false;
+
+        assertCreateFails();
+        assertCreateFails();
+        assertEquals(ConnectionCircuitBreaker.State.OPEN, cf.getConnectionCircuitBreakerState());
+
+        provider.available = true;
+
+        assertTrue("Probe should eventually be allowed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                try {
+                    return cf.createConnection() != null;
+                } catch (JMSException ex) {
+                    return false;
+                }
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(20)));
+
+        assertEquals(ConnectionCircuitBreaker.State.CLOSED, cf.getConnectionCircuitBreakerState());
+        assertEquals(0, cf.getConnectionCreationFailures());
+        assertEquals(3, provider.attempts.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedProbeReopensCircuit() throws Exception {
+        provider.available = false;
+
+        assertCreateFails();
+        assertCreateFails();
+
+        TimeUnit.MILLISECONDS.sleep(250);
+
+        // The probe goes to the provider and fails which re-opens the circuit
+        assertCreateFails();
+        assertEquals(3, provider.attempts.get());
+        assertEquals(ConnectionCircuitBreaker.State.OPEN, cf.getConnectionCircuitBreakerState());
+
+        // Backoff has doubled so the original backoff period is no longer enough
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertCreateFails();
+        assertEquals(3, provider.attempts.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testCircuitIsPerCredentials() throws Exception {
+        provider.available = false;
+
+        assertCreateFails();
+        assertCreateFails();
+        assertEquals(ConnectionCircuitBreaker.State.OPEN, cf.getConnectionCircuitBreakerState());
+        assertEquals(ConnectionCircuitBreaker.State.CLOSED, cf.getConnectionCircuitBreakerState("user", "pass"));
+
+        provider.available = true;
+
+        assertNotNull(cf.createConnection("user", "pass"));
+    }
+
+    private void assertCreateFails() {
+        try {
+            cf.createConnection();
+            fail("Should not be able to create a connection");
+        } catch (JMSException ex) {
+        }
+    }
+
+    private static class FailingConnectionFactory extends MockJMSConnectionFactory {
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private volatile boolean available = true;
+
+        @Override
+        public Connection createConnection() throws JMSException {
+            attempts.incrementAndGet();
+            if (!available) {
+                throw new JMSException("Remote peer is not available");
+            }
+
+            return super.createConnection();
+        }
+
+        @Override
+        public Connection createConnection(String username, String password) throws JMSException {
+            if (!available) {
+                throw new JMSException("Remote peer is not available");
+            }
+
+            return super.createConnection(username, password);
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.messaginghub.pooled.jms;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -27,6 +29,8 @@ import javax.jms.Session;
 
 import org.junit.Test;
 import org.messaginghub.pooled.jms.JmsPoolConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.util.Wait;
 
 public class JmsPoolConnectionExpiryEvictsFromPoolTest extends JmsPoolTestSupport {
 
@@ -96,4 +100,87 @@ public class JmsPoolConnectionExpiryEvictsFromPoolTest extends JmsPoolTestSuppor
         JmsPoolConnection connection3 = (JmsPoolConnection) cf.createConnection();
         assertNotSame(original, connection3.getConnection());
     }
+
+    @Test(timeout = 60000)
+    public void testConnectionRotatedAheadOfExpiration() throws Exception {
+        cf.setExpiryTimeout(1000);
+        cf.setConnectionRotationLeadTime(800);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MockJMSConnection original = (MockJMSConnection) connection.getConnection();
+
+        assertTrue("Connection should have been rotated", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                JmsPoolConnection current = (JmsPoolConnection) cf.createConnection();
+                try {
+                    return current.getConnection() != original;
+                } finally {
+                    current.close();
+                }
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        assertEquals(1, cf.getNumConnections());
+        assertEquals(1, cf.getNumDrainingConnections());
+
+        // The rotated out connection keeps working for those still using it.
+        assertFalse(original.isClosed());
+        session.getTransacted();
+
+        connection.close();
+
+        assertTrue("Rotated connection should close once released", original.isClosed());
+        assertEquals("Rotated connection should no longer be tracked once closed", 0, cf.getNumDrainingConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testUnusedRotatedConnectionNotTracked() throws Exception {
+        cf.setExpiryTimeout(500);
+        cf.setConnectionRotationLeadTime(450);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        final MockJMSConnection original = (MockJMSConnection) connection.getConnection();
+        connection.close();
+
+        assertTrue("Idle connection should have been rotated and closed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return original.isClosed();
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        assertEquals(0, cf.getNumDrainingConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testRotatedConnectionClosedOnStop() throws Exception {
+        cf.setExpiryTimeout(500);
+        cf.setConnectionRotationLeadTime(450);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        final MockJMSConnection original = (MockJMSConnection) connection.getConnection();
+
+        assertTrue("Connection should have been rotated", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                JmsPoolConnection current = (JmsPoolConnection) cf.createConnection();
+                try {
+                    return current.getConnection() != original;
+                } finally {
+                    current.close();
+                }
+            }
+        }, TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        assertFalse(original.isClosed());
+
+        cf.stop();
+
+        assertTrue(original.isClosed());
+    }
 }
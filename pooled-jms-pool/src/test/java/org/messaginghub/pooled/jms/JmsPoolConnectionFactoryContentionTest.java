@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionFactory;
+
+/**
+ * Tests the connection borrow path of the {@link JmsPoolConnectionFactory} under concurrent use.
+ */
+public class JmsPoolConnectionFactoryContentionTest extends JmsPoolTestSupport {
+
+    private static final int MAX_CONNECTIONS = 8;
+
+    @Test(timeout = 60000)
+    public void testConcurrentBorrowNeverExceedsMaxConnections() throws Exception {
+        cf.setMaxConnections(MAX_CONNECTIONS);
+
+        final Set<UUID> providerConnections = ConcurrentHashMap.newKeySet();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final int numThreads = MAX_CONNECTIONS * 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (int i = 0; i < numThreads; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        for (int j = 0; j < 100; ++j) {
+                            JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+                            providerConnections.add(((MockJMSConnection) connection.getConnection()).getConnectionId());
+                            connection.close();
+                        }
+                    } catch (Throwable error) {
+                        failure.compareAndSet(null, error);
+                    }
+                }
+            });
+        }
+
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertNull("No thread should have failed", failure.get());
+        assertTrue("Should not create more than the max connections", providerConnections.size() <= MAX_CONNECTIONS);
+        assertEquals(providerConnections.size(), cf.getNumConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentStartupDemandCreatesSingleFlight() throws Exception {
+        doTestConcurrentStartupDemandNeverOverCreates(1);
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentStartupDemandNeverExceedsCap() throws Exception {
+        doTestConcurrentStartupDemandNeverOverCreates(MAX_CONNECTIONS);
+    }
+
+    private void doTestConcurrentStartupDemandNeverOverCreates(int maxConnections) throws Exception {
+        final CountingConnectionFactory provider = new CountingConnectionFactory();
+
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(provider);
+        cf.setCreateConnectionOnStartup(false);
+        cf.setMaxConnections(maxConnections);
+        cf.start();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final int numThreads = 64;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (int i = 0; i < numThreads; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        for (int j = 0; j < 10; ++j) {
+                            cf.createConnection().close();
+                        }
+                    } catch (Throwable error) {
+                        failure.compareAndSet(null, error);
+                    }
+                }
+            });
+        }
+
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertNull("No thread should have failed", failure.get());
+        assertTrue("Should not create more than the max connections", provider.getConnectionsCreated() <= maxConnections);
+        assertEquals(provider.getConnectionsCreated(), cf.getNumConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testBackgroundWarmUpDoesNotRaceConcurrentDemand() throws Exception {
+        final CountingConnectionFactory provider = new CountingConnectionFactory();
+
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(provider);
+        cf.setMaxConnections(MAX_CONNECTIONS);
+        cf.setMinConnections(MAX_CONNECTIONS);
+        cf.setWarmUpTimeout(0);
+        cf.start();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final int numThreads = 32;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (int i = 0; i < numThreads; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        cf.createConnection().close();
+                    } catch (Throwable error) {
+                        failure.compareAndSet(null, error);
+                    }
+                }
+            });
+        }
+
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertNull("No thread should have failed", failure.get());
+        assertEquals("Callers should not open Connections beside the warm up", MAX_CONNECTIONS, provider.getConnectAttempts());
+        assertEquals(MAX_CONNECTIONS, cf.getNumConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedCreationIsSharedWithWaiters() throws Exception {
+        final CountingConnectionFactory provider = new CountingConnectionFactory();
+        provider.failCreates = true;
+
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(provider);
+        cf.setCreateConnectionOnStartup(false);
+        cf.setMaxConnections(MAX_CONNECTIONS);
+
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final int numThreads = 16;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (int i = 0; i < numThreads; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                        cf.createConnection();
+                    } catch (JMSException error) {
+                        failures.incrementAndGet();
+                    } catch (Throwable error) {
+                    }
+                }
+            });
+        }
+
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(numThreads, failures.get());
+        assertTrue("Waiters should not each attempt their own connect", provider.getConnectAttempts() < numThreads);
+        assertEquals(0, cf.getNumConnections());
+    }
+
+    private static class CountingConnectionFactory extends MockJMSConnectionFactory {
+
+        private final AtomicInteger connectAttempts = new AtomicInteger();
+        private final AtomicInteger connectionsCreated = new AtomicInteger();
+
+        private volatile boolean failCreates;
+
+        @Override
+        public Connection createConnection() throws JMSException {
+            connectAttempts.incrementAndGet();
+
+            // Simulate the cost of connecting to the remote peer to widen the creation window.
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failCreates) {
+                throw new JMSException("Remote peer is not available");
+            }
+
+            Connection connection = super.createConnection();
+            connectionsCreated.incrementAndGet();
+            return connection;
+        }
+
+        public int getConnectAttempts() {
+            return connectAttempts.get();
+        }
+
+        public int getConnectionsCreated() {
+            return connectionsCreated.get();
+        }
+    }
+}
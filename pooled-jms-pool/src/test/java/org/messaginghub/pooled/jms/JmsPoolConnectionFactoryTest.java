@@ -25,6 +25,8 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -38,6 +40,7 @@ import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.QueueConnection;
 import javax.jms.QueueConnectionFactory;
+import javax.jms.Session;
 import javax.jms.TopicConnection;
 import javax.jms.TopicConnectionFactory;
 
@@ -252,6 +255,97 @@ public class JmsPoolConnectionFactoryTest extends JmsPoolTestSupport {
         cf.stop();
     }
 
+    @Test(timeout = 60000)
+    public void testMinConnectionsAreCreatedOnStart() throws Exception {
+        MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(mock);
+        cf.setMaxConnections(4);
+        cf.setMinConnections(4);
+        cf.start();
+
+        assertEquals(4, cf.getNumConnections());
+
+        Set<Connection> connections = new HashSet<>();
+        for (int i = 0; i < 8; ++i) {
+            connections.add(((JmsPoolConnection) cf.createConnection()).getConnection());
+        }
+
+        assertEquals("Should reuse the warmed connections", 4, connections.size());
+        assertEquals(4, cf.getNumConnections());
+
+        cf.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testMinConnectionsIsLimitedByMaxConnections() throws Exception {
+        MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(mock);
+        cf.setMaxConnections(2);
+        cf.setMinConnections(10);
+        cf.start();
+
+        assertEquals(2, cf.getNumConnections());
+
+        cf.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testMinConnectionsAsyncWarmUp() throws Exception {
+        MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(mock);
+        cf.setMaxConnections(4);
+        cf.setMinConnections(4);
+        cf.setWarmUpTimeout(0);
+        cf.start();
+
+        assertTrue("Pool should warm up in the background", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return cf.getNumConnections() == 4;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        cf.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testMinConnectionsNotCreatedWhenCreateOnStartupDisabled() throws Exception {
+        MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(mock);
+        cf.setMaxConnections(4);
+        cf.setMinConnections(4);
+        cf.setCreateConnectionOnStartup(false);
+        cf.start();
+
+        assertEquals(0, cf.getNumConnections());
+
+        cf.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testMinIdleSessionsPerConnection() throws Exception {
+        MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
+        cf = new JmsPoolConnectionFactory();
+        cf.setConnectionFactory(mock);
+        cf.setMaxConnections(2);
+        cf.setMinConnections(2);
+        cf.setMinIdleSessionsPerConnection(10);
+        cf.start();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        assertEquals(10, connection.getNumtIdleSessions());
+        assertEquals(0, connection.getNumActiveSessions());
+
+        connection.createSession(false, Session.AUTO_ACKNOWLEDGE).close();
+        assertEquals(10, connection.getNumtIdleSessions());
+
+        cf.stop();
+    }
+
     @Test(timeout = 60000)
     public void testCannotCreateConnectionOnStoppedFactory() throws Exception {
         MockJMSConnectionFactory mock = new MockJMSConnectionFactory();
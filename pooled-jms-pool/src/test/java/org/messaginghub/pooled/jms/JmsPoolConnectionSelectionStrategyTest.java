@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Session;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.pool.LeastActiveSessionsConnectionSelectionStrategy;
+import org.messaginghub.pooled.jms.pool.RandomOfTwoConnectionSelectionStrategy;
+import org.messaginghub.pooled.jms.pool.RoundRobinConnectionSelectionStrategy;
+import org.messaginghub.pooled.jms.util.Wait;
+
+/**
+ * Tests for the pluggable strategies that select a Connection from a full pool.
+ */
+public class JmsPoolConnectionSelectionStrategyTest extends JmsPoolTestSupport {
+
+    @Test(timeout = 60000)
+    public void testDefaultStrategyIsPoolOrdering() throws Exception {
+        assertNull(cf.getConnectionSelectionStrategy());
+    }
+
+    @Test(timeout = 60000)
+    public void testRoundRobinVisitsAllConnections() throws Exception {
+        cf.setMaxConnections(3);
+        cf.setConnectionSelectionStrategy(new RoundRobinConnectionSelectionStrategy());
+
+        // Front load the pool.
+        for (int i = 0; i < 3; ++i) {
+            cf.createConnection();
+        }
+
+        Set<Connection> selected = new HashSet<>();
+        Connection previous = null;
+        for (int i = 0; i < 3; ++i) {
+            Connection current = ((JmsPoolConnection) cf.createConnection()).getConnection();
+            assertNotSame(previous, current);
+            selected.add(current);
+            previous = current;
+        }
+
+        assertEquals(3, selected.size());
+        assertEquals(3, cf.getNumConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testLeastActiveSessionsSelectsLeastLoadedConnection() throws Exception {
+        cf.setMaxConnections(3);
+        cf.setConnectionSelectionStrategy(new LeastActiveSessionsConnectionSelectionStrategy());
+
+        JmsPoolConnection connection1 = (JmsPoolConnection) cf.createConnection();
+        JmsPoolConnection connection2 = (JmsPoolConnection) cf.createConnection();
+        JmsPoolConnection connection3 = (JmsPoolConnection) cf.createConnection();
+
+        connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        for (int i = 0; i < 5; ++i) {
+            JmsPoolConnection selected = (JmsPoolConnection) cf.createConnection();
+            assertSame(connection3.getConnection(), selected.getConnection());
+            selected.close();
+        }
+
+        connection3.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        connection3.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        connection3.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        JmsPoolConnection selected = (JmsPoolConnection) cf.createConnection();
+        assertSame(connection2.getConnection(), selected.getConnection());
+    }
+
+    @Test(timeout = 60000)
+    public void testRandomOfTwoSelectsLessLoadedConnection() throws Exception {
+        cf.setMaxConnections(2);
+        cf.setConnectionSelectionStrategy(new RandomOfTwoConnectionSelectionStrategy());
+
+        JmsPoolConnection connection1 = (JmsPoolConnection) cf.createConnection();
+        JmsPoolConnection connection2 = (JmsPoolConnection) cf.createConnection();
+
+        connection1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        for (int i = 0; i < 10; ++i) {
+            JmsPoolConnection selected = (JmsPoolConnection) cf.createConnection();
+            assertSame(connection2.getConnection(), selected.getConnection());
+            selected.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testClosedConnectionIsNotSelected() throws Exception {
+        cf.setMaxConnections(2);
+        cf.setConnectionSelectionStrategy(new LeastActiveSessionsConnectionSelectionStrategy());
+
+        JmsPoolConnection connection1 = (JmsPoolConnection) cf.createConnection();
+        JmsPoolConnection connection2 = (JmsPoolConnection) cf.createConnection();
+
+        connection2.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        final JmsPoolConnection failing = connection1;
+        MockJMSConnection failed = (MockJMSConnection) connection1.getConnection();
+        failed.injectConnectionFailure(new IOException("Lost connection"));
+
+        assertTrue("Pooled connection should have been closed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return failing.getConnection() == null;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        for (int i = 0; i < 5; ++i) {
+            JmsPoolConnection selected = (JmsPoolConnection) cf.createConnection();
+            assertNotSame(failed, selected.getConnection());
+            selected.close();
+        }
+    }
+}
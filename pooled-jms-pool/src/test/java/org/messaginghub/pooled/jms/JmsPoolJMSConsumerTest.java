@@ -19,8 +19,12 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.jms.IllegalStateException;
 import javax.jms.IllegalStateRuntimeException;
 import javax.jms.JMSConsumer;
@@ -121,6 +125,36 @@ public class JmsPoolJMSConsumerTest extends JmsPoolTestSupport {
         } catch (IllegalStateRuntimeException ise) {}
     }
 
+    @Test(timeout = 60000)
+    public void testReceiveBatch() throws JMSException {
+        final AtomicReference<MockJMSMessageConsumer> provider = new AtomicReference<>();
+
+        MockJMSConnection connection = (MockJMSConnection) context.getConnection();
+        connection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {
+                provider.set(consumer);
+            }
+        });
+
+        JmsPoolJMSConsumer consumer = (JmsPoolJMSConsumer) context.createConsumer(context.createTemporaryQueue());
+
+        provider.get().enqueue(context.createTextMessage("one"));
+        provider.get().enqueue(context.createTextMessage("two"));
+
+        List<Message> batch = consumer.receiveBatch(10, 100);
+        assertEquals(2, batch.size());
+        assertTrue(consumer.receiveBatch(10, 1).isEmpty());
+
+        consumer.close();
+
+        try {
+            consumer.receiveBatch(10, 1);
+            fail("Should not be able to interact with closed consumer");
+        } catch (IllegalStateRuntimeException ise) {}
+    }
+
     @Test
     public void testGetMessageSelector() throws JMSException {
         JMSConsumer consumer = context.createConsumer(context.createTemporaryQueue(), "Color = Red");
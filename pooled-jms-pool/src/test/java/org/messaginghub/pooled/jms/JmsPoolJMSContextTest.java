@@ -19,11 +19,14 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+
 import javax.jms.IllegalStateRuntimeException;
 import javax.jms.JMSContext;
 import javax.jms.JMSException;
@@ -38,6 +41,7 @@ import org.messaginghub.pooled.jms.JmsPoolJMSContext;
 import org.messaginghub.pooled.jms.mock.MockJMSConnection;
 import org.messaginghub.pooled.jms.mock.MockJMSContext;
 import org.messaginghub.pooled.jms.mock.MockJMSUser;
+import org.messaginghub.pooled.jms.util.Wait;
 
 /**
  * Tests for the JMS Pool JMSContext implementation.
@@ -700,4 +704,163 @@ public class JmsPoolJMSContextTest extends JmsPoolTestSupport {
             fail("Cannot call stop on a closed context.");
         } catch (JMSRuntimeException jmsre) {}
     }
+
+    @Test(timeout = 30000)
+    public void testContextPoolReusesSessionAndProducer() throws JMSException {
+        cf.setContextPoolSize(2);
+
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext();
+        context.createProducer().send(context.createQueue(getTestName()), "test");
+        JmsPoolSession session = context.getSession();
+        context.close();
+
+        assertEquals(1, cf.getNumPooledContexts());
+
+        JmsPoolJMSContext reused = (JmsPoolJMSContext) cf.createContext();
+        assertEquals(0, cf.getNumPooledContexts());
+        assertSame(session, reused.getSession());
+        reused.createProducer().send(reused.createQueue(getTestName()), "test");
+
+        // The closed context must not operate on the Session now used by the new one.
+        try {
+            context.createProducer();
+            fail("Should not be able to use a closed context.");
+        } catch (IllegalStateRuntimeException isre) {}
+
+        reused.close();
+        assertEquals(1, cf.getNumPooledContexts());
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolKeyedBySessionModeAndBounded() throws JMSException {
+        cf.setContextPoolSize(1);
+
+        JMSContext first = cf.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+        JMSContext second = cf.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+        JMSContext transacted = cf.createContext(JMSContext.SESSION_TRANSACTED);
+        first.createQueue(getTestName());
+        second.createQueue(getTestName());
+        transacted.createQueue(getTestName());
+
+        first.close();
+        second.close();
+        transacted.close();
+
+        assertEquals(2, cf.getNumPooledContexts());
+
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext(JMSContext.SESSION_TRANSACTED);
+        assertEquals(JMSContext.SESSION_TRANSACTED, context.getSessionMode());
+        assertTrue(context.getTransacted());
+        assertEquals(1, cf.getNumPooledContexts());
+        context.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolSkipsContextsHoldingSessionState() throws JMSException {
+        cf.setContextPoolSize(5);
+
+        JMSContext clientAck = cf.createContext(JMSContext.CLIENT_ACKNOWLEDGE);
+        clientAck.createQueue(getTestName());
+        clientAck.close();
+
+        JMSContext temporary = cf.createContext();
+        temporary.createTemporaryQueue();
+        temporary.close();
+
+        JMSContext shared = cf.createContext();
+        JMSContext child = shared.createContext(JMSContext.AUTO_ACKNOWLEDGE);
+        shared.close();
+
+        assertEquals(0, cf.getNumPooledContexts());
+
+        child.close();
+        assertEquals(0, cf.getNumPooledContexts());
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolDiscardsFailedConnections() throws Exception {
+        cf.setContextPoolSize(2);
+
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext();
+        final MockJMSConnection connection = (MockJMSConnection) context.getConnection();
+        JmsPoolSession session = context.getSession();
+        context.close();
+
+        assertEquals(1, cf.getNumPooledContexts());
+
+        connection.injectConnectionFailure(new IOException("Connection lost"));
+
+        assertTrue("Pooled connection should have been closed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return connection.isClosed();
+            }
+        }, 5000, 5));
+
+        JmsPoolJMSContext replacement = (JmsPoolJMSContext) cf.createContext();
+        assertNotSame(session, replacement.getSession());
+        assertNotSame(connection, replacement.getConnection());
+        assertEquals(0, cf.getNumPooledContexts());
+        replacement.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolEvictsIdleContexts() throws Exception {
+        cf.setContextPoolSize(2);
+        cf.setContextIdleTimeout(20);
+
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext();
+        final JmsPoolSession session = context.getSession();
+        context.close();
+
+        assertTrue("Idle context should have been evicted", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return cf.getNumPooledContexts() == 0;
+            }
+        }, 5000, 5));
+
+        try {
+            session.getInternalSession();
+            fail("Session of an evicted context should have been closed");
+        } catch (javax.jms.IllegalStateException ise) {}
+
+        JmsPoolJMSContext replacement = (JmsPoolJMSContext) cf.createContext();
+        assertNotSame(session, replacement.getSession());
+        replacement.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolDoesNotKeepContextsOfExpiredConnections() throws Exception {
+        cf.setContextPoolSize(2);
+        cf.setExpiryTimeout(20);
+
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext();
+        JmsPoolSession session = context.getSession();
+
+        Thread.sleep(40);
+
+        context.close();
+
+        assertEquals(0, cf.getNumPooledContexts());
+
+        JmsPoolJMSContext replacement = (JmsPoolJMSContext) cf.createContext();
+        assertNotSame(session, replacement.getSession());
+        replacement.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testContextPoolDisabledByDefault() throws JMSException {
+        JmsPoolJMSContext context = (JmsPoolJMSContext) cf.createContext();
+        JmsPoolSession session = context.getSession();
+        context.close();
+
+        assertEquals(0, cf.getNumPooledContexts());
+
+        JmsPoolJMSContext other = (JmsPoolJMSContext) cf.createContext();
+        assertNotSame(session, other.getSession());
+        other.close();
+    }
 }
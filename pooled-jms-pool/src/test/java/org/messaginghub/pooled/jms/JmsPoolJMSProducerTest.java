@@ -19,17 +19,26 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jms.CompletionListener;
 import javax.jms.DeliveryMode;
@@ -42,6 +51,7 @@ import javax.jms.JMSProducer;
 import javax.jms.JMSRuntimeException;
 import javax.jms.Message;
 import javax.jms.MessageFormatRuntimeException;
+import javax.jms.TextMessage;
 
 import org.junit.After;
 import org.junit.Before;
@@ -1338,6 +1348,204 @@ public class JmsPoolJMSProducerTest extends JmsPoolTestSupport {
         } catch (IllegalStateRuntimeException isre) {}
     }
 
+    @Test
+    public void testSendWithTemplateAppliesFrozenConfiguration() throws JMSException {
+        JmsPoolJMSProducer producer = (JmsPoolJMSProducer) context.createProducer();
+
+        producer.setJMSCorrelationID(JMS_CORRELATION_ID);
+        producer.setJMSReplyTo(JMS_REPLY_TO);
+        producer.setJMSType(JMS_TYPE_STRING);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        producer.setPriority(7);
+        producer.setTimeToLive(60000);
+        producer.setProperty(STRING_PROPERTY_NAME, STRING_PROPERTY_VALUE);
+        producer.setProperty(INTEGER_PROPERTY_NAME, INTEGER_PROPERTY_VALUE);
+        producer.setProperty(BOOLEAN_PROPERTY_NAME, BOOLEAN_PROPERTY_VALUE);
+        producer.setProperty(DOUBLE_PROPERTY_NAME, DOUBLE_PROPERTY_VALUE);
+
+        JmsPoolProducerTemplate template = producer.toTemplate();
+
+        // Changes made after the template is created must not leak into it.
+        producer.clearProperties();
+        producer.setJMSType("Other");
+        producer.setPriority(1);
+
+        assertEquals(4, template.getPropertyNames().size());
+        assertEquals(STRING_PROPERTY_VALUE, template.getObjectProperty(STRING_PROPERTY_NAME));
+        assertEquals(JMS_TYPE_STRING, template.getJMSType());
+        assertEquals(7, template.getPriority());
+
+        Message message = context.createMessage();
+        producer.send(template, JMS_DESTINATION, message);
+
+        assertEquals(STRING_PROPERTY_VALUE, message.getStringProperty(STRING_PROPERTY_NAME));
+        assertEquals(INTEGER_PROPERTY_VALUE, message.getIntProperty(INTEGER_PROPERTY_NAME));
+        assertEquals(BOOLEAN_PROPERTY_VALUE, message.getBooleanProperty(BOOLEAN_PROPERTY_NAME));
+        assertEquals(DOUBLE_PROPERTY_VALUE, message.getDoubleProperty(DOUBLE_PROPERTY_NAME), 0.0);
+        assertEquals(JMS_CORRELATION_ID, message.getJMSCorrelationID());
+        assertEquals(JMS_REPLY_TO, message.getJMSReplyTo());
+        assertEquals(JMS_TYPE_STRING, message.getJMSType());
+        assertEquals(DeliveryMode.NON_PERSISTENT, message.getJMSDeliveryMode());
+        assertEquals(7, message.getJMSPriority());
+        assertTrue(message.getJMSExpiration() > 0);
+    }
+
+    @Test
+    public void testTemplatePropertyNamesAreUnmodifiable() throws JMSException {
+        JmsPoolJMSProducer producer = (JmsPoolJMSProducer) context.createProducer();
+        producer.setProperty(STRING_PROPERTY_NAME, STRING_PROPERTY_VALUE);
+
+        JmsPoolProducerTemplate template = producer.toTemplate();
+
+        try {
+            template.getPropertyNames().clear();
+            fail("Template property names should not be modifiable");
+        } catch (UnsupportedOperationException uoe) {
+            // Expected
+        }
+
+        assertNull(template.getObjectProperty(GOOD_PROPERTY_NAME));
+    }
+
+    @Test(timeout = 60000)
+    public void testTemplateSharedAcrossThreads() throws Exception {
+        JmsPoolJMSProducer producer = (JmsPoolJMSProducer) context.createProducer();
+        producer.setProperty(STRING_PROPERTY_NAME, STRING_PROPERTY_VALUE);
+        producer.setProperty(LONG_PROPERTY_NAME, LONG_PROPERTY_VALUE);
+        producer.setJMSType(JMS_TYPE_STRING);
+
+        final JmsPoolProducerTemplate template = producer.toTemplate();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < 4; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try (JMSContext threadContext = cf.createContext()) {
+                        JmsPoolJMSProducer threadProducer = (JmsPoolJMSProducer) threadContext.createProducer();
+                        ready.await();
+                        for (int j = 0; j < 1000; ++j) {
+                            Message message = threadContext.createMessage();
+                            threadProducer.send(template, JMS_DESTINATION, message);
+                            assertEquals(STRING_PROPERTY_VALUE, message.getStringProperty(STRING_PROPERTY_NAME));
+                            assertEquals(LONG_PROPERTY_VALUE, message.getLongProperty(LONG_PROPERTY_NAME));
+                            assertEquals(JMS_TYPE_STRING, message.getJMSType());
+                        }
+                    } catch (Throwable error) {
+                        failure.compareAndSet(null, error);
+                    }
+                }
+            });
+        }
+
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertNull("No thread should have failed", failure.get());
+    }
+
+    //----- Test reusable producers ------------------------------------------//
+
+    @Test(timeout = 30000)
+    public void testReusedProducerIsResetForEachCreate() throws Exception {
+        JmsPoolConnectionFactory reuseCF = createReusingFactory();
+        try {
+            JMSContext context = reuseCF.createContext();
+
+            JMSProducer producer = context.createProducer();
+            producer.setProperty(STRING_PROPERTY_NAME, STRING_PROPERTY_VALUE);
+            producer.setPriority(9);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            producer.setJMSType(JMS_TYPE_STRING);
+            producer.setJMSReplyTo(JMS_REPLY_TO);
+
+            JMSProducer reused = context.createProducer();
+            assertSame(producer, reused);
+            assertFalse(reused.propertyExists(STRING_PROPERTY_NAME));
+            assertTrue(reused.getPropertyNames().isEmpty());
+            assertEquals(Message.DEFAULT_PRIORITY, reused.getPriority());
+            assertEquals(DeliveryMode.PERSISTENT, reused.getDeliveryMode());
+            assertNull(reused.getJMSType());
+            assertNull(reused.getJMSReplyTo());
+            assertNull(reused.getAsync());
+
+            context.close();
+        } finally {
+            reuseCF.stop();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testReusedProducerRefillsBodyOnlyMessages() throws Exception {
+        JmsPoolConnectionFactory reuseCF = createReusingFactory();
+        try {
+            JmsPoolJMSContext context = (JmsPoolJMSContext) reuseCF.createContext();
+
+            final List<Message> sent = new ArrayList<>();
+            final List<String> bodies = new ArrayList<>();
+            final List<Boolean> hasProperty = new ArrayList<>();
+
+            MockJMSConnection connection = (MockJMSConnection) context.getConnection();
+            connection.addConnectionListener(new MockJMSConnectionListener() {
+
+                @Override
+                public void onMessageSend(MockJMSSession session, Message message) throws JMSException {
+                    sent.add(message);
+                    if (message instanceof TextMessage) {
+                        bodies.add(((TextMessage) message).getText());
+                    }
+                    hasProperty.add(message.propertyExists(STRING_PROPERTY_NAME));
+                }
+            });
+
+            JMSProducer producer = context.createProducer();
+            producer.setProperty(STRING_PROPERTY_NAME, STRING_PROPERTY_VALUE);
+            producer.setJMSCorrelationID(JMS_CORRELATION_ID);
+            producer.send(JMS_DESTINATION, "first");
+
+            producer = context.createProducer();
+            producer.send(JMS_DESTINATION, "second");
+
+            assertEquals(2, sent.size());
+            assertSame(sent.get(0), sent.get(1));
+            assertEquals(Arrays.asList("first", "second"), bodies);
+            assertEquals(Arrays.asList(true, false), hasProperty);
+            assertNull(sent.get(1).getJMSCorrelationID());
+
+            producer.send(JMS_DESTINATION, new byte[] { 1 });
+            producer.send(JMS_DESTINATION, new byte[] { 2 });
+
+            assertEquals(4, sent.size());
+            assertSame(sent.get(2), sent.get(3));
+
+            context.close();
+        } finally {
+            reuseCF.stop();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testProducersAreNotReusedByDefault() throws Exception {
+        JMSProducer producer = context.createProducer();
+
+        assertNotSame(producer, context.createProducer());
+        assertTrue(producer.getPropertyNames().isEmpty());
+        assertFalse(producer.propertyExists(STRING_PROPERTY_NAME));
+        assertNull(producer.getObjectProperty(STRING_PROPERTY_NAME));
+        assertSame(producer, producer.clearProperties());
+    }
+
+    private JmsPoolConnectionFactory createReusingFactory() {
+        JmsPoolConnectionFactory reuseCF = new JmsPoolConnectionFactory();
+        reuseCF.setConnectionFactory(factory);
+        reuseCF.setMaxConnections(1);
+        reuseCF.setReuseJMSProducers(true);
+        return reuseCF;
+    }
+
     //----- Internal Support -------------------------------------------------//
 
     private class TestJmsCompletionListener implements CompletionListener {
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionFactory;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSMessageConsumer;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.mock.MockJMSSessionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSTextMessage;
+import org.messaginghub.pooled.jms.util.JmsPoolVirtualThreads;
+import org.messaginghub.pooled.jms.util.Wait;
+
+/**
+ * Tests for the pooled listener container.
+ */
+public class JmsPoolListenerContainerTest extends JmsPoolTestSupport {
+
+    private final List<MockJMSConnection> connections = new CopyOnWriteArrayList<>();
+    private final List<MockJMSMessageConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+
+    private volatile int messagesPerConsumer;
+    private JmsPoolListenerContainer container;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        cf.setConnectionFactory(new MockJMSConnectionFactory() {
+
+            @Override
+            public Connection createConnection() throws JMSException {
+                MockJMSConnection connection = (MockJMSConnection) super.createConnection();
+                connection.addConnectionListener(new TrackingConnectionListener());
+                connections.add(connection);
+                return connection;
+            }
+        });
+
+        container = new JmsPoolListenerContainer(cf);
+        container.setDestination(new MockJMSQueue("test"));
+        container.setReceiveTimeout(10);
+        container.setRecoveryInterval(10);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        try {
+            container.stop();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testStartRequiresListenerAndDestination() throws Exception {
+        JmsPoolListenerContainer container = new JmsPoolListenerContainer(cf);
+
+        try {
+            container.start();
+            fail("Should not start without a destination");
+        } catch (IllegalStateException ise) {}
+
+        container.setDestination(new MockJMSQueue("test"));
+
+        try {
+            container.start();
+            fail("Should not start without a listener");
+        } catch (IllegalStateException ise) {}
+
+        assertFalse(container.isRunning());
+
+        try {
+            container.setMaxConcurrentConsumers(0);
+            fail("Should not accept a maximum below the concurrent consumers");
+        } catch (IllegalArgumentException iae) {}
+    }
+
+    @Test(timeout = 60000)
+    public void testTransactedBatchesCommitOncePerBatch() throws Exception {
+        messagesPerConsumer = 6;
+
+        container.setSessionTransacted(true);
+        container.setBatchSize(3);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        container.start();
+
+        assertTrue("Should process all messages", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return container.getNumMessagesProcessed() == 6;
+            }
+        }, 5000, 5));
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return commits.get() == 2;
+            }
+        }, 5000, 5));
+
+        container.stop();
+
+        assertFalse(container.isRunning());
+        assertEquals(0, container.getActiveConsumerCount());
+        assertTrue(consumers.get(0).isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testListenerFailureRollsBackBatch() throws Exception {
+        messagesPerConsumer = 2;
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        container.setSessionTransacted(true);
+        container.setBatchSize(2);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                if (calls.incrementAndGet() == 1) {
+                    throw new RuntimeException("Listener failure");
+                }
+            }
+        });
+        container.start();
+
+        assertTrue("Should roll back the failed batch", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return rollbacks.get() == 1;
+            }
+        }, 5000, 5));
+
+        container.stop();
+
+        // The remainder of the failed batch is not dispatched once the batch is rolled back.
+        assertEquals(1, calls.get());
+        assertEquals(0, commits.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testScalesUpWithBacklogAndDownWhenIdle() throws Exception {
+        messagesPerConsumer = 50;
+
+        container.setConcurrentConsumers(1);
+        container.setMaxConcurrentConsumers(3);
+        container.setIdleReceivesBeforeScaleDown(2);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        container.start();
+
+        assertTrue("Should scale up to the maximum", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return container.getActiveConsumerCount() == 3;
+            }
+        }, 10000, 5));
+
+        assertTrue("Should scale back down when idle", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return container.getActiveConsumerCount() == 1;
+            }
+        }, 10000, 5));
+    }
+
+    @Test(timeout = 60000)
+    public void testRecoversAfterConnectionFailure() throws Exception {
+        messagesPerConsumer = 1;
+
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        container.start();
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return container.getNumMessagesProcessed() == 1;
+            }
+        }, 5000, 5));
+
+        connections.get(0).injectConnectionFailure(new IOException("Lost connection"));
+
+        assertTrue("Should resume on a new connection", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return container.getNumMessagesProcessed() == 2;
+            }
+        }, 5000, 5));
+
+        assertEquals(2, connections.size());
+        assertEquals(1, container.getActiveConsumerCount());
+    }
+
+    @Test(timeout = 60000)
+    public void testUseVirtualThreadsRunsConsumers() throws Exception {
+        messagesPerConsumer = 1;
+
+        final AtomicReference<Thread> dispatchThread = new AtomicReference<>();
+
+        container.setUseVirtualThreads(true);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                dispatchThread.set(Thread.currentThread());
+            }
+        });
+        container.start();
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return dispatchThread.get() != null;
+            }
+        }, 5000, 5));
+
+        // Falls back to daemon platform threads when the JVM has no virtual thread support.
+        assertTrue(dispatchThread.get().getName().startsWith("JmsPoolListenerContainer Consumer"));
+        assertTrue(JmsPoolVirtualThreads.isSupported() || dispatchThread.get().isDaemon());
+    }
+
+    private final class TrackingConnectionListener implements MockJMSConnectionListener {
+
+        @Override
+        public void onCreateSession(MockJMSSession session) throws JMSException {
+            session.addSessionListener(new MockJMSSessionListener() {
+
+                @Override
+                public void onSessionCommit(MockJMSSession session) throws JMSException {
+                    commits.incrementAndGet();
+                }
+
+                @Override
+                public void onSessionRollback(MockJMSSession session) throws JMSException {
+                    rollbacks.incrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public void onCreateMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {
+            for (int i = 0; i < messagesPerConsumer; ++i) {
+                consumer.enqueue(new MockJMSTextMessage());
+            }
+            consumers.add(consumer);
+        }
+    }
+}
@@ -17,20 +17,32 @@
 package org.messaginghub.pooled.jms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.List;
+
 import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
 import javax.jms.Queue;
+import javax.jms.QueueReceiver;
+import javax.jms.QueueSession;
 import javax.jms.Session;
+import javax.jms.TextMessage;
 
 import org.junit.Test;
 import org.messaginghub.pooled.jms.JmsPoolConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSMessageConsumer;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.util.Wait;
 
 /**
  * Tests for the JMS Pool MessageConsumer wrapper
@@ -109,6 +121,49 @@ public class JmsPoolMessageConusmerTest extends JmsPoolTestSupport {
         } catch (IllegalStateException ise) {}
     }
 
+    @Test(timeout = 60000)
+    public void testReceiveBatchDrainsUpToMaxMessages() throws JMSException {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
+        Session session = connection.createSession();
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(session.createTemporaryQueue());
+        MockJMSMessageConsumer provider = (MockJMSMessageConsumer) consumer.getDelegate();
+
+        for (int i = 0; i < 5; ++i) {
+            provider.enqueue(session.createTextMessage("test-" + i));
+        }
+
+        List<Message> batch = consumer.receiveBatch(3, 100);
+        assertEquals(3, batch.size());
+        assertEquals("test-0", ((TextMessage) batch.get(0)).getText());
+        assertEquals("test-2", ((TextMessage) batch.get(2)).getText());
+
+        batch = consumer.receiveBatch(3, 100);
+        assertEquals(2, batch.size());
+        assertEquals("test-4", ((TextMessage) batch.get(1)).getText());
+
+        assertTrue(consumer.receiveBatch(3, 1).isEmpty());
+        assertTrue(consumer.receiveBatch(3, -1).isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testReceiveBatchValidatesState() throws JMSException {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
+        Session session = connection.createSession();
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(session.createTemporaryQueue());
+
+        try {
+            consumer.receiveBatch(0, 1);
+            fail("Should not accept an empty batch size");
+        } catch (IllegalArgumentException iae) {}
+
+        consumer.close();
+
+        try {
+            consumer.receiveBatch(1, 1);
+            fail("Should not be able to interact with closed consumer");
+        } catch (IllegalStateException ise) {}
+    }
+
     @Test
     public void testGetMessageSelector() throws JMSException {
         JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
@@ -158,4 +213,156 @@ public class JmsPoolMessageConusmerTest extends JmsPoolTestSupport {
             fail("Should not be able to interact with closed consumer");
         } catch (IllegalStateException ise) {}
     }
+
+    @Test(timeout = 60000)
+    public void testConsumerCacheReusesConsumerOnNextLoan() throws Exception {
+        cf.setConsumerCacheSize(4);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Queue queue = new MockJMSQueue("test");
+
+        Session session = connection.createSession();
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(queue, "color = 'red'");
+        MockJMSMessageConsumer provider = (MockJMSMessageConsumer) consumer.getDelegate();
+        session.close();
+
+        assertFalse("Cached consumer should stay open", provider.isClosed());
+        assertTrue(consumer.toString(), isClosed(consumer));
+
+        session = connection.createSession();
+        consumer = (JmsPoolMessageConsumer) session.createConsumer(queue, "color = 'red'");
+        assertSame(provider, consumer.getDelegate());
+
+        JmsPoolMessageConsumer other = (JmsPoolMessageConsumer) session.createConsumer(queue, "color = 'blue'");
+        assertNotSame(provider, other.getDelegate());
+
+        // A second consumer for the same key while the first is in use is closed when released.
+        JmsPoolMessageConsumer duplicate = (JmsPoolMessageConsumer) session.createConsumer(queue, "color = 'red'");
+        assertNotSame(provider, duplicate.getDelegate());
+
+        consumer.close();
+        duplicate.close();
+        assertFalse(provider.isClosed());
+        assertTrue(((MockJMSMessageConsumer) duplicate.getDelegate()).isClosed());
+
+        session.close();
+        cf.stop();
+        assertTrue(provider.isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerCacheReusesQueueReceiver() throws Exception {
+        cf.setConsumerCacheSize(4);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
+        Queue queue = new MockJMSQueue("test");
+
+        QueueSession session = (QueueSession) connection.createSession();
+        QueueReceiver receiver = session.createReceiver(queue);
+        MockJMSMessageConsumer provider = (MockJMSMessageConsumer) ((JmsPoolQueueReceiver) receiver).getDelegate();
+        receiver.close();
+
+        receiver = session.createReceiver(queue);
+        assertSame(provider, ((JmsPoolQueueReceiver) receiver).getDelegate());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerWithListenerIsNotCached() throws Exception {
+        cf.setConsumerCacheSize(4);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test"));
+        consumer.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        consumer.close();
+        assertTrue(((MockJMSMessageConsumer) consumer.getDelegate()).isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testClientAcknowledgeConsumersAreNotCached() throws Exception {
+        cf.setConsumerCacheSize(4);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession(Session.CLIENT_ACKNOWLEDGE);
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test"));
+
+        consumer.close();
+        assertTrue(((MockJMSMessageConsumer) consumer.getDelegate()).isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerCacheEvictsLeastRecentlyUsed() throws Exception {
+        cf.setConsumerCacheSize(1);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        JmsPoolMessageConsumer consumer1 = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test-1"));
+        JmsPoolMessageConsumer consumer2 = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test-2"));
+
+        consumer1.close();
+        assertFalse(((MockJMSMessageConsumer) consumer1.getDelegate()).isClosed());
+
+        consumer2.close();
+        assertTrue(((MockJMSMessageConsumer) consumer1.getDelegate()).isClosed());
+        assertFalse(((MockJMSMessageConsumer) consumer2.getDelegate()).isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerIdleTimeoutClosesIdleConsumers() throws Exception {
+        cf.setConsumerCacheSize(4);
+        cf.setConsumerIdleTimeout(10);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        JmsPoolMessageConsumer consumer1 = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test-1"));
+        JmsPoolMessageConsumer consumer2 = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test-2"));
+
+        consumer1.close();
+        Thread.sleep(50);
+        consumer2.close();
+
+        assertTrue(((MockJMSMessageConsumer) consumer1.getDelegate()).isClosed());
+        assertFalse(((MockJMSMessageConsumer) consumer2.getDelegate()).isClosed());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerIdleTimeoutClosesConsumersOfIdleSessions() throws Exception {
+        cf.setConsumerCacheSize(4);
+        cf.setConsumerIdleTimeout(10);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test"));
+        final MockJMSMessageConsumer provider = (MockJMSMessageConsumer) consumer.getDelegate();
+
+        consumer.close();
+        session.close();
+
+        assertFalse(provider.isClosed());
+        assertTrue("Idle consumer of a pooled Session should be closed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return provider.isClosed();
+            }
+        }, 5000, 5));
+    }
+
+    private static boolean isClosed(MessageConsumer consumer) {
+        try {
+            consumer.getMessageSelector();
+            return false;
+        } catch (JMSException ex) {
+            return true;
+        }
+    }
 }
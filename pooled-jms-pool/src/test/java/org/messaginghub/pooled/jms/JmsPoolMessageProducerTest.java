@@ -19,9 +19,16 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.jms.CompletionListener;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
@@ -31,13 +38,18 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageProducer;
 import javax.jms.Queue;
+import javax.jms.ResourceAllocationException;
 import javax.jms.Session;
 
 import org.junit.Test;
 import org.messaginghub.pooled.jms.JmsPoolConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
 import org.messaginghub.pooled.jms.mock.MockJMSDestination;
 import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
 import org.messaginghub.pooled.jms.mock.MockJMSTopic;
+import org.messaginghub.pooled.jms.util.Wait;
 
 /**
  * Tests for the JMS Pool MessageProducer wrapper class.
@@ -487,6 +499,210 @@ public class JmsPoolMessageProducerTest extends JmsPoolTestSupport {
         }
     }
 
+    @Test(timeout = 60000)
+    public void testDelayedSendDoesNotReconfigureSharedProducer() throws Exception {
+        Destination dest = new MockJMSQueue("explicitDestination");
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
+        Session session = connection.createSession();
+
+        JmsPoolMessageProducer delayed = (JmsPoolMessageProducer) session.createProducer(dest);
+        JmsPoolMessageProducer undelayed = (JmsPoolMessageProducer) session.createProducer(dest);
+
+        delayed.setDeliveryDelay(5000);
+        assertEquals(5000, delayed.getDeliveryDelay());
+        assertEquals(0, undelayed.getDeliveryDelay());
+
+        Message message = session.createMessage();
+        delayed.send(message);
+        assertTrue(message.getJMSDeliveryTime() >= message.getJMSTimestamp() + 5000);
+        assertEquals(0, delayed.getMessageProducer().getDeliveryDelay());
+
+        message = session.createMessage();
+        undelayed.send(message);
+        assertEquals(message.getJMSTimestamp(), message.getJMSDeliveryTime());
+    }
+
+    @Test(timeout = 60000)
+    public void testDelayedSendsReuseProducerForSameDelay() throws Exception {
+        Destination dest = new MockJMSQueue("explicitDestination");
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createQueueConnection();
+        JmsPoolSession session = (JmsPoolSession) connection.createSession();
+
+        MessageProducer delayed = session.getDelayedProducer(1000);
+        assertNotNull(delayed);
+        assertEquals(1000, delayed.getDeliveryDelay());
+        assertEquals(delayed, session.getDelayedProducer(1000));
+        assertNotSame(delayed, session.getDelayedProducer(2000));
+
+        session.createProducer(dest).close();
+        for (long delay = 3000; delay < 9000; delay += 1000) {
+            assertNotNull(session.getDelayedProducer(delay));
+        }
+        assertNull("Should stop keeping producers past the limit", session.getDelayedProducer(10000));
+
+        MessageProducer producer = session.createProducer(dest);
+        producer.setDeliveryDelay(10000);
+        Message message = session.createMessage();
+        producer.send(message);
+        assertTrue(message.getJMSDeliveryTime() >= message.getJMSTimestamp() + 10000);
+    }
+
+    @Test(timeout = 60000)
+    public void testAsyncSendWindowFailsWhenFull() throws Exception {
+        cf.setMaxAsyncSendsInFlight(2);
+        cf.setBlockIfAsyncSendWindowIsFull(false);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        ConcurrentLinkedQueue<Runnable> completions = deferCompletions(connection);
+        Session session = connection.createSession();
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+
+        producer.send(session.createMessage(), completionListener);
+        producer.send(session.createMessage(), completionListener);
+        assertEquals(2, connection.getNumAsyncSendsInFlight());
+        assertEquals(2, cf.getNumAsyncSendsInFlight());
+
+        try {
+            producer.send(session.createMessage(), completionListener);
+            fail("Should not be able to send with the window full");
+        } catch (ResourceAllocationException rae) {
+            // Expected
+        }
+
+        // Synchronous sends are not limited by the window.
+        producer.send(session.createMessage());
+
+        completions.poll().run();
+        assertEquals(1, connection.getNumAsyncSendsInFlight());
+        assertEquals(1, cf.getNumAsyncSendsCompleted());
+        assertTrue(cf.getMaxAsyncSendCompletionNanos() > 0);
+
+        producer.send(session.createMessage(), completionListener);
+        assertEquals(2, connection.getNumAsyncSendsInFlight());
+    }
+
+    @Test(timeout = 60000)
+    public void testAsyncSendWindowBlocksUntilTimeout() throws Exception {
+        cf.setMaxAsyncSendsInFlight(1);
+        cf.setBlockIfAsyncSendWindowIsFullTimeout(50);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        deferCompletions(connection);
+        Session session = connection.createSession();
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+
+        producer.send(session.createMessage(), completionListener);
+
+        long start = System.nanoTime();
+        try {
+            producer.send(session.createMessage(), completionListener);
+            fail("Should time out waiting for room in the window");
+        } catch (ResourceAllocationException rae) {
+            // Expected
+        }
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, connection.getNumAsyncSendsInFlight());
+    }
+
+    @Test(timeout = 60000)
+    public void testAsyncSendWindowBlockedSendResumesOnCompletion() throws Exception {
+        cf.setMaxAsyncSendsInFlight(1);
+
+        final JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        final ConcurrentLinkedQueue<Runnable> completions = deferCompletions(connection);
+        final Session session = connection.createSession();
+        final MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+        final CountDownLatch sent = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        producer.send(session.createMessage(), completionListener);
+
+        Thread sender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    producer.send(session.createMessage(), completionListener);
+                    sent.countDown();
+                } catch (Throwable error) {
+                    failure.set(error);
+                }
+            }
+        });
+        sender.start();
+
+        assertFalse("Send should block while the window is full", sent.await(50, TimeUnit.MILLISECONDS));
+
+        completions.poll().run();
+        assertTrue("Send should resume once room is freed", sent.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return completions.size() == 1;
+            }
+        }, 5000, 10));
+        assertEquals(1, connection.getNumAsyncSendsInFlight());
+    }
+
+    @Test(timeout = 60000)
+    public void testAsyncSendFailureReleasesWindow() throws Exception {
+        cf.setMaxAsyncSendsInFlight(1);
+        cf.setBlockIfAsyncSendWindowIsFull(false);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onMessageSend(MockJMSSession session, Message message) throws JMSException {
+                throw new JMSException("Send failed");
+            }
+        });
+
+        Session session = connection.createSession();
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+
+        for (int i = 0; i < 2; ++i) {
+            try {
+                producer.send(session.createMessage(), completionListener);
+                fail("Send should have failed");
+            } catch (ResourceAllocationException rae) {
+                fail("Failed send should not hold room in the window");
+            } catch (JMSException ex) {
+                // Expected
+            }
+        }
+
+        assertEquals(0, connection.getNumAsyncSendsInFlight());
+    }
+
+    private ConcurrentLinkedQueue<Runnable> deferCompletions(JmsPoolConnection connection) throws JMSException {
+        final ConcurrentLinkedQueue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public boolean onAsyncMessageSend(MockJMSSession session, final Message message, final CompletionListener listener) throws JMSException {
+                completions.add(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onCompletion(message);
+                    }
+                });
+
+                return true;
+            }
+        });
+
+        return completions;
+    }
+
     //----- Test Support -----------------------------------------------------//
 
     private class TestCompletionListener implements CompletionListener {
@@ -16,6 +16,7 @@
  */
 package org.messaginghub.pooled.jms;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -23,6 +24,7 @@ import static org.junit.Assert.fail;
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jms.Connection;
 import javax.jms.ExceptionListener;
@@ -38,6 +40,7 @@ import org.messaginghub.pooled.jms.JmsPoolConnection;
 import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
 import org.messaginghub.pooled.jms.mock.MockJMSConnection;
 import org.messaginghub.pooled.jms.mock.MockJMSConnectionFactory;
+import org.messaginghub.pooled.jms.util.Wait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,4 +101,80 @@ public class JmsPoolReconnectOnFailureTest extends JmsPoolTestSupport {
 
         cf.stop();
     }
+
+    @Test(timeout = 60000)
+    public void testFailedConnectionReplacedInBackground() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+
+        cf.setConnectionFactory(new MockJMSConnectionFactory() {
+
+            @Override
+            public Connection createConnection() throws JMSException {
+                created.incrementAndGet();
+                return super.createConnection();
+            }
+        });
+        cf.setReconnectInBackground(true);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection original = (MockJMSConnection) connection.getConnection();
+        assertEquals(1, created.get());
+
+        original.injectConnectionFailure(new IOException("Lost connection"));
+
+        assertTrue("Failed connection should be replaced", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return created.get() == 2 && cf.getNumConnections() == 1;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        JmsPoolConnection connection2 = (JmsPoolConnection) cf.createConnection();
+        assertNotSame(original, connection2.getConnection());
+        assertEquals("Caller should get the replacement without reconnecting", 2, created.get());
+
+        connection.close();
+        connection2.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testBackgroundReplacementRetriesUntilSuccessful() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger failuresRemaining = new AtomicInteger();
+
+        cf.setConnectionFactory(new MockJMSConnectionFactory() {
+
+            @Override
+            public Connection createConnection() throws JMSException {
+                attempts.incrementAndGet();
+                if (failuresRemaining.getAndDecrement() > 0) {
+                    throw new JMSException("Remote peer is not available");
+                }
+                return super.createConnection();
+            }
+        });
+        cf.setReconnectInBackground(true);
+        cf.setReconnectInitialBackoff(10);
+        cf.setReconnectMaxBackoff(50);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection original = (MockJMSConnection) connection.getConnection();
+        connection.close();
+
+        failuresRemaining.set(3);
+        original.injectConnectionFailure(new IOException("Lost connection"));
+
+        assertTrue("Failed connection should be replaced after retries", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return attempts.get() == 5 && cf.getNumConnections() == 1;
+            }
+        }, TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS.toMillis(10)));
+
+        JmsPoolConnection connection2 = (JmsPoolConnection) cf.createConnection();
+        assertNotSame(original, connection2.getConnection());
+        assertEquals(5, attempts.get());
+    }
 }
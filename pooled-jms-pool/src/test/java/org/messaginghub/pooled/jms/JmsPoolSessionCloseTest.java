@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSMessageConsumer;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.mock.MockJMSSessionListener;
+
+/**
+ * Tests for the work a {@link JmsPoolSession} does when it is closed and returned to the pool.
+ */
+public class JmsPoolSessionCloseTest extends JmsPoolTestSupport {
+
+    @Test(timeout = 60000)
+    public void testSessionIsReusedAfterSendOnlyAndConsumerUse() throws Exception {
+        final JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        final Queue queue = new MockJMSQueue("test");
+
+        for (int i = 0; i < 10; ++i) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(queue);
+            producer.send(session.createMessage());
+            if (i % 2 == 0) {
+                session.createConsumer(queue);
+            }
+            session.close();
+        }
+
+        assertEquals(1, connection.getNumSessions());
+        assertEquals(1, connection.getNumtIdleSessions());
+    }
+
+    @Test(timeout = 60000)
+    public void testConsumerClosedByClientIsNotClosedAgainOnSessionClose() throws Exception {
+        final AtomicInteger consumersClosed = new AtomicInteger();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCloseMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {
+                consumersClosed.incrementAndGet();
+            }
+        });
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer1 = session.createConsumer(new MockJMSQueue("test"));
+        session.createConsumer(new MockJMSQueue("test"));
+
+        consumer1.close();
+        assertEquals(1, consumersClosed.get());
+
+        session.close();
+        assertEquals(2, consumersClosed.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testSendOnlySessionCloseSkipsMessageListenerReset() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        AtomicInteger listenerResets = trackMessageListenerResets(connection);
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+        producer.send(session.createMessage());
+        session.close();
+
+        assertEquals(1, connection.getNumtIdleSessions());
+        assertEquals(0, listenerResets.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionCloseResetsMessageListenerSetThroughPooledSession() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        AtomicInteger listenerResets = trackMessageListenerResets(connection);
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        session.close();
+
+        assertEquals(1, listenerResets.get());
+
+        JmsPoolSession reborrowed = (JmsPoolSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertNull(((MockJMSSession) reborrowed.getInternalSession()).getMessageListener());
+        reborrowed.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionMessageListenerIsResetOnClose() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+
+        JmsPoolSession session = (JmsPoolSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MockJMSSession mockSession = (MockJMSSession) session.getInternalSession();
+        session.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        session.close();
+
+        session = (JmsPoolSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertSame(mockSession, session.getInternalSession());
+        assertNull(mockSession.getMessageListener());
+        session.close();
+    }
+
+    private AtomicInteger trackMessageListenerResets(JmsPoolConnection connection) throws JMSException {
+        final AtomicInteger listenerResets = new AtomicInteger();
+
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateSession(MockJMSSession session) throws JMSException {
+                session.addSessionListener(new MockJMSSessionListener() {
+
+                    @Override
+                    public void onSessionSetMessageListener(MockJMSSession session, MessageListener messageListener) throws JMSException {
+                        if (messageListener == null) {
+                            listenerResets.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        });
+
+        return listenerResets;
+    }
+}
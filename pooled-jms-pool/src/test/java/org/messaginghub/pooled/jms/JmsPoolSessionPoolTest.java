@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Session;
+
+import org.junit.Test;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.pool.PooledConnection;
+import org.messaginghub.pooled.jms.pool.PooledSessionHolder;
+import org.messaginghub.pooled.jms.pool.PooledSessionKey;
+import org.messaginghub.pooled.jms.pool.PooledSessionPool;
+import org.messaginghub.pooled.jms.util.Wait;
+
+/**
+ * Tests for the {@link PooledSessionPool} used by each pooled Connection to hold its Sessions.
+ */
+public class JmsPoolSessionPoolTest extends JmsPoolTestSupport {
+
+    private final PooledSessionKey autoAckKey = new PooledSessionKey(false, Session.AUTO_ACKNOWLEDGE);
+    private final PooledSessionKey transactedKey = new PooledSessionKey(true, Session.SESSION_TRANSACTED);
+
+    @Test(timeout = 60000)
+    public void testReturnedSessionIsReused() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+        assertEquals(1, pool.getNumActive());
+        pool.returnObject(autoAckKey, holder);
+
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle(autoAckKey));
+        assertSame(holder, pool.borrowObject(autoAckKey));
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionsAreKeyedBySessionMode() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+        pool.returnObject(autoAckKey, holder);
+
+        PooledSessionHolder transacted = pool.borrowObject(transactedKey);
+        assertNotSame(holder, transacted);
+        assertTrue(transacted.getSession().getTransacted());
+
+        // Acknowledgement modes outside the standard set are pooled separately
+        PooledSessionKey vendorKey = new PooledSessionKey(true, 100);
+        PooledSessionHolder vendor = pool.borrowObject(vendorKey);
+        assertNotSame(transacted, vendor);
+        pool.returnObject(vendorKey, vendor);
+
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(1, pool.getNumActive());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testReturnBeyondMaxIdleClosesSession() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setMaxIdlePerKey(1);
+
+        PooledSessionHolder holder1 = pool.borrowObject(autoAckKey);
+        PooledSessionHolder holder2 = pool.borrowObject(autoAckKey);
+
+        pool.returnObject(autoAckKey, holder1);
+        pool.returnObject(autoAckKey, holder2);
+
+        assertEquals(1, pool.getNumIdle(autoAckKey));
+        assertTrue(((MockJMSSession) holder2.getSession()).isClosed());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testInvalidateReleasesCapacity() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setMaxTotalPerKey(1);
+        pool.setBlockWhenExhausted(false);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+
+        try {
+            pool.borrowObject(autoAckKey);
+            fail("Should not be able to exceed the max active sessions");
+        } catch (NoSuchElementException ex) {}
+
+        pool.invalidateObject(autoAckKey, holder);
+        assertTrue(((MockJMSSession) holder.getSession()).isClosed());
+        assertEquals(0, pool.getNumActive());
+
+        assertNotSame(holder, pool.borrowObject(autoAckKey));
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testBorrowTimesOutWhenExhausted() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setMaxTotalPerKey(1);
+        pool.setMaxWaitMillis(50);
+
+        pool.borrowObject(autoAckKey);
+
+        final long startTime = System.currentTimeMillis();
+        try {
+            pool.borrowObject(autoAckKey);
+            fail("Should not be able to exceed the max active sessions");
+        } catch (NoSuchElementException ex) {
+            assertTrue(System.currentTimeMillis() - startTime >= 50);
+        }
+
+        // Other keys have their own capacity
+        pool.borrowObject(transactedKey);
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseReleasesBlockedBorrowers() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        final PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setMaxTotalPerKey(1);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final Thread waiter = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    pool.borrowObject(autoAckKey);
+                } catch (Throwable error) {
+                    failure.set(error);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        waiter.start();
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return waiter.getState() == Thread.State.WAITING;
+            }
+        }, 5000, 10));
+
+        pool.close();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof IllegalStateException);
+
+        // Sessions returned after close are closed instead of being pooled
+        pool.returnObject(autoAckKey, holder);
+        assertTrue(((MockJMSSession) holder.getSession()).isClosed());
+        assertEquals(0, pool.getNumIdle());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testAddObjectHonorsMaxTotal() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setMaxTotalPerKey(2);
+
+        for (int i = 0; i < 4; ++i) {
+            pool.addObject(autoAckKey);
+        }
+
+        assertEquals(2, pool.getNumIdle(autoAckKey));
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testThreadAffineSessionIsReturnedToSameThread() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        final PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setThreadAffinity(true);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+        final PooledSessionHolder other = pool.borrowObject(autoAckKey);
+        pool.returnObject(autoAckKey, holder);
+
+        // Another thread returns its session last so it is on top of the shared idle stack.
+        Thread returner = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                pool.returnObject(autoAckKey, other);
+            }
+        });
+        returner.start();
+        returner.join();
+
+        assertEquals(2, pool.getNumIdle(autoAckKey));
+        assertSame(holder, pool.borrowObject(autoAckKey));
+        assertSame(other, pool.borrowObject(autoAckKey));
+        assertEquals(0, pool.getNumIdle());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testThreadAffineSessionsCountAgainstIdleLimit() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        final PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setThreadAffinity(true);
+        pool.setMaxIdlePerKey(1);
+
+        final List<PooledSessionHolder> holders = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            holders.add(pool.borrowObject(autoAckKey));
+        }
+
+        for (final PooledSessionHolder holder : holders) {
+            Thread returner = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    pool.returnObject(autoAckKey, holder);
+                }
+            });
+            returner.start();
+            returner.join();
+        }
+
+        assertEquals(1, pool.getNumIdle(autoAckKey));
+        assertEquals(0, pool.getNumActive(autoAckKey));
+        assertTrue(((MockJMSSession) holders.get(1).getSession()).isClosed());
+        assertTrue(((MockJMSSession) holders.get(2).getSession()).isClosed());
+
+        // The session returned by a thread that has since ended is available to any other.
+        assertSame(holders.get(0), pool.borrowObject(autoAckKey));
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testThreadAffineSessionOfOtherKeyMovesToSharedPool() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        final PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setThreadAffinity(true);
+
+        final PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+        pool.returnObject(autoAckKey, holder);
+
+        PooledSessionHolder transacted = pool.borrowObject(transactedKey);
+        pool.returnObject(transactedKey, transacted);
+        assertEquals(2, pool.getNumIdle());
+
+        final AtomicReference<PooledSessionHolder> other = new AtomicReference<>();
+        Thread borrower = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    other.set(pool.borrowObject(autoAckKey));
+                } catch (Exception e) {
+                }
+            }
+        });
+        borrower.start();
+        borrower.join();
+
+        assertSame(holder, other.get());
+        assertSame(transacted, pool.borrowObject(transactedKey));
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseClosesThreadAffineSessions() throws Exception {
+        PooledConnection connection = new PooledConnection(factory.createConnection());
+        PooledSessionPool pool = new PooledSessionPool(connection);
+        pool.setThreadAffinity(true);
+
+        PooledSessionHolder holder = pool.borrowObject(autoAckKey);
+        pool.returnObject(autoAckKey, holder);
+
+        pool.close();
+
+        assertTrue(((MockJMSSession) holder.getSession()).isClosed());
+        assertEquals(0, pool.getNumIdle());
+
+        connection.close();
+    }
+}
@@ -19,6 +19,7 @@ package org.messaginghub.pooled.jms;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -29,10 +30,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jms.IllegalStateException;
 import javax.jms.IllegalStateRuntimeException;
+import javax.jms.JMSContext;
 import javax.jms.JMSException;
 import javax.jms.JMSRuntimeException;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TemporaryQueue;
@@ -43,12 +47,15 @@ import org.junit.Test;
 import org.messaginghub.pooled.jms.JmsPoolConnection;
 import org.messaginghub.pooled.jms.JmsPoolSession;
 import org.messaginghub.pooled.jms.JmsPoolSessionEventListener;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
 import org.messaginghub.pooled.jms.mock.MockJMSQueue;
 import org.messaginghub.pooled.jms.mock.MockJMSSession;
 import org.messaginghub.pooled.jms.mock.MockJMSSessionListener;
 import org.messaginghub.pooled.jms.mock.MockJMSTemporaryQueue;
 import org.messaginghub.pooled.jms.mock.MockJMSTemporaryTopic;
 import org.messaginghub.pooled.jms.mock.MockJMSTopic;
+import org.messaginghub.pooled.jms.util.Wait;
 
 public class JmsPoolSessionTest extends JmsPoolTestSupport {
 
@@ -61,6 +68,22 @@ public class JmsPoolSessionTest extends JmsPoolTestSupport {
         assertNotNull(session.toString());
     }
 
+    @Test(timeout = 60000)
+    public void testThreadAffineSessionIsReused() throws Exception {
+        cf.setUseThreadAffineSessions(true);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        JmsPoolSession session = (JmsPoolSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Session internal = session.getInternalSession();
+        session.close();
+
+        session = (JmsPoolSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertSame(internal, session.getInternalSession());
+        session.close();
+
+        assertEquals(1, connection.getNumtIdleSessions());
+    }
+
     @Test(timeout = 60000)
     public void testIsIgnoreClose() throws Exception {
         JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
@@ -156,6 +179,143 @@ public class JmsPoolSessionTest extends JmsPoolTestSupport {
         assertTrue("Session should rollback on close" , rolledBack.get());
     }
 
+    @Test(timeout = 60000)
+    public void testCloseOnCleanTXSessionSkipsRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        session.close();
+
+        assertFalse("Clean session should not rollback on close" , rolledBack.get());
+        assertEquals(1, cf.getNumSessionRollbacksSkipped());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseOnCommittedTXSessionSkipsRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+        producer.send(session.createTextMessage("test"));
+        session.commit();
+        session.close();
+
+        assertFalse("Committed session should not rollback on close" , rolledBack.get());
+        assertEquals(1, cf.getNumSessionRollbacksSkipped());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseAfterSendOnTXSessionTriggersRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        MessageProducer producer = session.createProducer(new MockJMSQueue("test"));
+        producer.send(session.createTextMessage("test"));
+        session.close();
+
+        assertTrue("Session should rollback on close" , rolledBack.get());
+        assertEquals(0, cf.getNumSessionRollbacksSkipped());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseAfterReceiveOnTXSessionTriggersRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        MessageConsumer consumer = session.createConsumer(new MockJMSQueue("test"));
+        consumer.receiveNoWait();
+        session.close();
+
+        assertTrue("Session should rollback on close" , rolledBack.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseAfterSendOnExposedProducerFollowingCommitTriggersRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        Queue queue = new MockJMSQueue("test");
+        JmsPoolMessageProducer producer = (JmsPoolMessageProducer) session.createProducer(queue);
+        MessageProducer providerProducer = producer.getMessageProducer();
+        session.commit();
+        providerProducer.send(queue, session.createTextMessage("test"));
+        session.close();
+
+        assertTrue("Session should rollback on close" , rolledBack.get());
+        assertEquals(0, cf.getNumSessionRollbacksSkipped());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseAfterReceiveOnExposedConsumerFollowingCommitTriggersRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        JmsPoolMessageConsumer consumer = (JmsPoolMessageConsumer) session.createConsumer(new MockJMSQueue("test"));
+        MessageConsumer providerConsumer = consumer.getMessageConsumer();
+        session.commit();
+        providerConsumer.receiveNoWait();
+        session.close();
+
+        assertTrue("Session should rollback on close" , rolledBack.get());
+        assertEquals(0, cf.getNumSessionRollbacksSkipped());
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseOnTXSessionWithMessageListenerTriggersRollback() throws Exception {
+        final AtomicBoolean rolledBack = new AtomicBoolean();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        trackRollbacks(connection, rolledBack);
+
+        Session session = connection.createSession(Session.SESSION_TRANSACTED);
+        MessageConsumer consumer = session.createConsumer(new MockJMSQueue("test"));
+        consumer.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        session.commit();
+        session.close();
+
+        assertTrue("Session should rollback on close" , rolledBack.get());
+    }
+
+    private void trackRollbacks(JmsPoolConnection connection, final AtomicBoolean rolledBack) throws JMSException {
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateSession(MockJMSSession session) throws JMSException {
+                session.addSessionListener(new MockJMSSessionListener() {
+
+                    @Override
+                    public void onSessionRollback(MockJMSSession session) throws JMSException {
+                        rolledBack.set(true);
+                    }
+                });
+            }
+        });
+    }
+
     @Test(timeout = 60000)
     public void testCloseWithErrorOnRollbackInvalidatesSession() throws Exception {
         final AtomicBoolean rolledBack = new AtomicBoolean();
@@ -492,4 +652,78 @@ public class JmsPoolSessionTest extends JmsPoolTestSupport {
             fail("Should not be able to setMessageListener when closed");
         } catch (JMSException ex) {}
     }
+
+    @Test(timeout = 60000)
+    public void testDestinationsNotCachedByDefault() throws Exception {
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        assertNotSame(session.createQueue("test"), session.createQueue("test"));
+        assertEquals(0, connection.getNumCachedDestinations());
+    }
+
+    @Test(timeout = 60000)
+    public void testDestinationCacheSharedBetweenSessions() throws Exception {
+        cf.setDestinationCacheSize(8);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session1 = connection.createSession();
+        Session session2 = connection.createSession();
+
+        Queue queue = session1.createQueue("test");
+        Topic topic = session1.createTopic("test");
+
+        assertSame(queue, session2.createQueue("test"));
+        assertSame(topic, session2.createTopic("test"));
+        assertNotSame(queue, session2.createQueue("other"));
+        assertEquals(3, connection.getNumCachedDestinations());
+
+        session1.close();
+        session2.close();
+
+        JMSContext context = cf.createContext();
+        assertSame(queue, context.createQueue("test"));
+        context.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testDestinationCacheIsBounded() throws Exception {
+        cf.setDestinationCacheSize(2);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        for (int i = 0; i < 10; ++i) {
+            session.createQueue("test" + i);
+            session.createTopic("test" + i);
+        }
+
+        assertEquals(4, connection.getNumCachedDestinations());
+    }
+
+    @Test(timeout = 60000)
+    public void testDestinationCacheClearedOnConnectionFailure() throws Exception {
+        cf.setDestinationCacheSize(8);
+        cf.setReconnectOnException(false);
+
+        final JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession();
+
+        Queue queue = session.createQueue("test");
+        session.createTemporaryQueue();
+        assertEquals(1, connection.getNumCachedDestinations());
+
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.injectConnectionError(new JMSException("Connection interrupted"));
+
+        assertTrue("Cache should be cleared on failure", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return connection.getNumCachedDestinations() == 0;
+            }
+        }, 5000, 10));
+
+        assertNotSame(queue, session.createQueue("test"));
+    }
 }
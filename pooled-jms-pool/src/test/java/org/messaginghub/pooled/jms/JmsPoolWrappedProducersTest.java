@@ -16,11 +16,17 @@
  */
 package org.messaginghub.pooled.jms;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.jms.JMSException;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.QueueSession;
 import javax.jms.Session;
@@ -32,6 +38,9 @@ import org.messaginghub.pooled.jms.JmsPoolConnection;
 import org.messaginghub.pooled.jms.JmsPoolMessageProducer;
 import org.messaginghub.pooled.jms.JmsPoolQueueSender;
 import org.messaginghub.pooled.jms.JmsPoolTopicPublisher;
+import org.messaginghub.pooled.jms.mock.MockJMSMessageProducer;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.util.Wait;
 
 public class JmsPoolWrappedProducersTest extends JmsPoolTestSupport {
 
@@ -128,6 +137,109 @@ public class JmsPoolWrappedProducersTest extends JmsPoolTestSupport {
         connection.close();
     }
 
+    @Test(timeout = 60000)
+    public void testNamedProducerIsReusedAcrossSessionLoans() throws Exception {
+        cf.setUseAnonymousProducers(false);
+        cf.setNamedProducerCacheSize(4);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Queue queue = new MockJMSQueue("test");
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        JmsPoolMessageProducer producer = (JmsPoolMessageProducer) session.createProducer(queue);
+        MessageProducer provider = producer.getMessageProducer();
+        producer.send(session.createTextMessage());
+        session.close();
+
+        assertFalse(((MockJMSMessageProducer) provider).isClosed());
+
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = (JmsPoolMessageProducer) session.createProducer(queue);
+        assertSame(provider, producer.getMessageProducer());
+        producer.send(session.createTextMessage());
+
+        // A producer that is in use is never handed out twice
+        JmsPoolMessageProducer other = (JmsPoolMessageProducer) session.createProducer(queue);
+        assertNotSame(provider, other.getMessageProducer());
+
+        producer.close();
+        other.close();
+        assertTrue(((MockJMSMessageProducer) other.getDelegate()).isClosed());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testNamedProducerCacheEvictsLeastRecentlyUsed() throws Exception {
+        cf.setUseAnonymousProducers(false);
+        cf.setNamedProducerCacheSize(1);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        JmsPoolMessageProducer producer1 = (JmsPoolMessageProducer) session.createProducer(new MockJMSQueue("test-1"));
+        JmsPoolMessageProducer producer2 = (JmsPoolMessageProducer) session.createProducer(new MockJMSQueue("test-2"));
+
+        producer1.close();
+        assertFalse(((MockJMSMessageProducer) producer1.getDelegate()).isClosed());
+
+        producer2.close();
+        assertTrue(((MockJMSMessageProducer) producer1.getDelegate()).isClosed());
+        assertFalse(((MockJMSMessageProducer) producer2.getDelegate()).isClosed());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testNamedProducerIdleTimeoutClosesIdleProducers() throws Exception {
+        cf.setUseAnonymousProducers(false);
+        cf.setNamedProducerCacheSize(4);
+        cf.setNamedProducerIdleTimeout(10);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        JmsPoolMessageProducer producer1 = (JmsPoolMessageProducer) session.createProducer(new MockJMSQueue("test-1"));
+        JmsPoolMessageProducer producer2 = (JmsPoolMessageProducer) session.createProducer(new MockJMSQueue("test-2"));
+
+        producer1.close();
+        TimeUnit.MILLISECONDS.sleep(50);
+        producer2.close();
+
+        assertTrue(((MockJMSMessageProducer) producer1.getDelegate()).isClosed());
+        assertFalse(((MockJMSMessageProducer) producer2.getDelegate()).isClosed());
+        assertEquals(1, connection.getNumtIdleSessions() + connection.getNumActiveSessions());
+
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testNamedProducerIdleTimeoutClosesProducersOfIdleSessions() throws Exception {
+        cf.setUseAnonymousProducers(false);
+        cf.setNamedProducerCacheSize(4);
+        cf.setNamedProducerIdleTimeout(10);
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        JmsPoolMessageProducer producer = (JmsPoolMessageProducer) session.createProducer(new MockJMSQueue("test"));
+        final MockJMSMessageProducer provider = (MockJMSMessageProducer) producer.getDelegate();
+
+        producer.close();
+        session.close();
+
+        assertFalse(provider.isClosed());
+        assertTrue("Idle producer of a pooled Session should be closed", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return provider.isClosed();
+            }
+        }, 5000, 5));
+
+        connection.close();
+    }
+
     @Test(timeout = 60000)
     public void testSendThrowsWhenProducerHasExplicitDestination() throws Exception {
         JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
@@ -29,6 +29,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.jms.CompletionListener;
 import javax.jms.Connection;
 import javax.jms.ConnectionConsumer;
 import javax.jms.ConnectionMetaData;
@@ -545,6 +546,16 @@ public class MockJMSConnection implements Connection, TopicConnection, QueueConn
         signalMessageSend(session, message);
     }
 
+    void onAsyncMessageSend(MockJMSSession session, Message message, CompletionListener completionListener) throws JMSException {
+        for (MockJMSConnectionListener listener : connectionListeners) {
+            if (listener.onAsyncMessageSend(session, message, completionListener)) {
+                return;
+            }
+        }
+
+        completionListener.onCompletion(message);
+    }
+
     void onMessageConsumerCreate(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {
         signalCreateMessageConsumer(session, consumer);
     }
@@ -16,6 +16,7 @@
  */
 package org.messaginghub.pooled.jms.mock;
 
+import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
 
@@ -38,6 +39,14 @@ public interface MockJMSConnectionListener {
 
     default void onMessageSend(MockJMSSession session, Message message) throws JMSException {}
 
+    /**
+     * Called after an asynchronous send, returning true takes over completing the send
+     * otherwise it is completed right away.
+     */
+    default boolean onAsyncMessageSend(MockJMSSession session, Message message, CompletionListener completionListener) throws JMSException {
+        return false;
+    }
+
     default void onCreateMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {}
 
     default void onCloseMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {}
@@ -16,6 +16,10 @@
  */
 package org.messaginghub.pooled.jms.mock;
 
+import static org.messaginghub.pooled.jms.util.JMSMessagePropertySupport.checkPropertyNameIsValid;
+import static org.messaginghub.pooled.jms.util.JMSMessagePropertySupport.checkValidObject;
+import static org.messaginghub.pooled.jms.util.JMSMessagePropertySupport.convertPropertyTo;
+
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -206,56 +210,47 @@ public class MockJMSMessage implements Message {
 
     @Override
     public boolean getBooleanProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return false;
+        return convertPropertyTo(name, properties.get(name), Boolean.class);
     }
 
     @Override
     public byte getByteProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Byte.class);
     }
 
     @Override
     public short getShortProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Short.class);
     }
 
     @Override
     public int getIntProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Integer.class);
     }
 
     @Override
     public long getLongProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Long.class);
     }
 
     @Override
     public float getFloatProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Float.class);
     }
 
     @Override
     public double getDoubleProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return 0;
+        return convertPropertyTo(name, properties.get(name), Double.class);
     }
 
     @Override
     public String getStringProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return null;
+        return convertPropertyTo(name, properties.get(name), String.class);
     }
 
     @Override
     public Object getObjectProperty(String name) throws JMSException {
-        // TODO Auto-generated method stub
-        return null;
+        return properties.get(name);
     }
 
     @Override
@@ -265,56 +260,57 @@ public class MockJMSMessage implements Message {
 
     @Override
     public void setBooleanProperty(String name, boolean value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setByteProperty(String name, byte value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setShortProperty(String name, short value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setIntProperty(String name, int value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setLongProperty(String name, long value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setFloatProperty(String name, float value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setDoubleProperty(String name, double value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setStringProperty(String name, String value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        properties.put(name, value);
     }
 
     @Override
     public void setObjectProperty(String name, Object value) throws JMSException {
-        // TODO Auto-generated method stub
-
+        checkPropertyNameIsValid(name, true);
+        checkValidObject(value);
+        properties.put(name, value);
     }
 
     @Override
@@ -16,6 +16,9 @@
  */
 package org.messaginghub.pooled.jms.mock;
 
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jms.JMSException;
@@ -36,6 +39,8 @@ public class MockJMSMessageConsumer implements MessageConsumer, AutoCloseable {
 
     private final AtomicBoolean closed = new AtomicBoolean();
 
+    private final BlockingQueue<Message> pending = new LinkedBlockingQueue<>();
+
     private MessageListener messageListener;
 
     public MockJMSMessageConsumer(MockJMSSession session, String consumerId, MockJMSDestination destination, String messageSelector, boolean noLocal) throws JMSException {
@@ -58,6 +63,10 @@ public class MockJMSMessageConsumer implements MessageConsumer, AutoCloseable {
         }
     }
 
+    public boolean isClosed() {
+        return closed.get();
+    }
+
     void start() {
         // TODO Auto-generated method stub
     }
@@ -87,22 +96,25 @@ public class MockJMSMessageConsumer implements MessageConsumer, AutoCloseable {
     @Override
     public Message receive() throws JMSException {
         checkClosed();
-        // TODO Auto-generated method stub
-        return null;
+        // Never blocks as nothing would otherwise wake a waiting receiver.
+        return pending.poll();
     }
 
     @Override
     public Message receive(long timeout) throws JMSException {
         checkClosed();
-        // TODO Auto-generated method stub
-        return null;
+        try {
+            return pending.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     @Override
     public Message receiveNoWait() throws JMSException {
         checkClosed();
-        // TODO Auto-generated method stub
-        return null;
+        return pending.poll();
     }
 
     public <T> T receiveBody(Class<T> desired, long timeout) throws JMSException {
@@ -115,11 +127,21 @@ public class MockJMSMessageConsumer implements MessageConsumer, AutoCloseable {
     //----- Internal Support Methods -----------------------------------------//
 
     protected void checkClosed() throws IllegalStateException {
-        if (closed.get()) {
+        if (closed.get() || session.getConnection().isClosed()) {
             throw new IllegalStateException("The MessageProducer is closed");
         }
     }
 
+    /**
+     * Queues a message for a later call to one of the receive methods.
+     *
+     * @param message
+     *      the message to make available to this consumer.
+     */
+    public void enqueue(Message message) {
+        pending.add(message);
+    }
+
     public String getConsumerId() {
         return consumerId;
     }
@@ -65,6 +65,10 @@ public class MockJMSMessageProducer implements MessageProducer, AutoCloseable {
         }
     }
 
+    public boolean isClosed() {
+        return closed.get();
+    }
+
     //----- Producer Configuration Methods -----------------------------------//
 
     @Override
@@ -176,7 +180,7 @@ public class MockJMSMessageProducer implements MessageProducer, AutoCloseable {
             throw new UnsupportedOperationException("Using this method is not supported on producers created without an explicit Destination");
         }
 
-        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryMode, null);
+        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryDelay, null);
     }
 
     @Override
@@ -193,7 +197,7 @@ public class MockJMSMessageProducer implements MessageProducer, AutoCloseable {
             throw new UnsupportedOperationException("Using this method is not supported on producers created with an explicit Destination.");
         }
 
-        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryMode, null);
+        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryDelay, null);
     }
 
     @Override
@@ -234,7 +238,7 @@ public class MockJMSMessageProducer implements MessageProducer, AutoCloseable {
             throw new IllegalArgumentException("CompletionListener cannot be null");
         }
 
-        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryMode, null);
+        session.send(this, destination, message, deliveryMode, priority, timeToLive, disableMessageId, disableTimestamp, deliveryDelay, completionListener);
     }
 
     //----- Internal Support Methods -----------------------------------------//
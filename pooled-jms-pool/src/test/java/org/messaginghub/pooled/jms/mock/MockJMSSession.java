@@ -108,6 +108,10 @@ public class MockJMSSession implements Session, QueueSession, TopicSession, Auto
     public void stop() throws JMSException {
     }
 
+    public boolean isClosed() {
+        return closed.get();
+    }
+
     @Override
     public boolean getTransacted() throws JMSException {
         checkClosed();
@@ -166,6 +170,10 @@ public class MockJMSSession implements Session, QueueSession, TopicSession, Auto
     public void setMessageListener(MessageListener listener) throws JMSException {
         checkClosed();
         this.messageListener = listener;
+
+        for (MockJMSSessionListener sessionListener : sessionListeners) {
+            sessionListener.onSessionSetMessageListener(this, listener);
+        }
     }
 
     public String getSessionId() {
@@ -463,6 +471,9 @@ public class MockJMSSession implements Session, QueueSession, TopicSession, Auto
 
             try {
                 connection.onMessageSend(this, message);
+                if (completionListener != null) {
+                    connection.onAsyncMessageSend(this, message, completionListener);
+                }
             } catch (JMSException jmsEx) {
                 // If the synchronous portion of the send fails the completion be
                 // notified but might depending on the circumstances of the failures,
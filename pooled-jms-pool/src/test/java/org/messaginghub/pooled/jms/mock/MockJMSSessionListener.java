@@ -17,6 +17,7 @@
 package org.messaginghub.pooled.jms.mock;
 
 import javax.jms.JMSException;
+import javax.jms.MessageListener;
 
 /**
  * Listener on events from the MockJMSSession
@@ -29,6 +30,8 @@ public interface MockJMSSessionListener {
 
     default void onSessionClosed(MockJMSSession session) throws JMSException {}
 
+    default void onSessionSetMessageListener(MockJMSSession session, MessageListener messageListener) throws JMSException {}
+
     default void onConsumerClose(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {}
 
     default void onProducerClose(MockJMSSession session, MockJMSMessageProducer producer) throws JMSException {}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.JmsPoolConnection;
+import org.messaginghub.pooled.jms.JmsPoolTestSupport;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSMessageConsumer;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.mock.MockJMSTextMessage;
+import org.messaginghub.pooled.jms.util.Wait;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Tests for the Reactive Streams publisher backed by a pooled consumer.
+ */
+public class JmsPoolMessagePublisherTest extends JmsPoolTestSupport {
+
+    private final List<MockJMSMessageConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    private volatile int messagesPerConsumer;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public void onCreateMessageConsumer(MockJMSSession session, MockJMSMessageConsumer consumer) throws JMSException {
+                for (int i = 0; i < messagesPerConsumer; ++i) {
+                    consumer.enqueue(new MockJMSTextMessage());
+                }
+                consumers.add(consumer);
+            }
+        });
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testEmitsOnlyRequestedMessages() throws Exception {
+        messagesPerConsumer = 10;
+
+        JmsPoolMessagePublisher publisher = new JmsPoolMessagePublisher(cf, new MockJMSQueue("test"));
+        publisher.setBatchSize(4);
+        publisher.setReceiveTimeout(10);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.get().request(3);
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return subscriber.received.size() == 3;
+            }
+        }, 5000, 5));
+
+        // Without demand the remaining messages are left with the consumer.
+        Thread.sleep(50);
+        assertEquals(3, subscriber.received.size());
+        assertEquals(1, consumers.size());
+
+        subscriber.subscription.get().request(100);
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return subscriber.received.size() == 10;
+            }
+        }, 5000, 5));
+
+        subscriber.subscription.get().cancel();
+
+        assertTrue("Consumer should be closed on cancel", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return consumers.get(0).isClosed();
+            }
+        }, 5000, 5));
+
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testSubscriberFailureCancelsWithoutSignallingError() throws Exception {
+        messagesPerConsumer = 10;
+
+        JmsPoolMessagePublisher publisher = new JmsPoolMessagePublisher(cf, new MockJMSQueue("test"));
+        publisher.setReceiveTimeout(10);
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        subscriber.failOnNext = true;
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.get().request(5);
+
+        assertTrue("Consumer should be closed once the subscriber fails", Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return consumers.size() == 1 && consumers.get(0).isClosed();
+            }
+        }, 5000, 5));
+
+        subscriber.subscription.get().request(5);
+        Thread.sleep(50);
+
+        assertEquals(1, subscriber.received.size());
+        assertNull(subscriber.error.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testInvalidRequestSignalsError() throws Exception {
+        JmsPoolMessagePublisher publisher = new JmsPoolMessagePublisher(cf, new MockJMSQueue("test"));
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.get().request(0);
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return subscriber.error.get() instanceof IllegalArgumentException;
+            }
+        }, 5000, 5));
+    }
+
+    @Test(timeout = 60000)
+    public void testStoppedFactorySignalsError() throws Exception {
+        JmsPoolMessagePublisher publisher = new JmsPoolMessagePublisher(cf, new MockJMSQueue("test"));
+
+        cf.stop();
+
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.get().request(1);
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+
+            @Override
+            public boolean isSatisfied() throws Exception {
+                return subscriber.error.get() instanceof javax.jms.IllegalStateException;
+            }
+        }, 5000, 5));
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<Message> {
+
+        private final AtomicReference<Subscription> subscription = new AtomicReference<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final List<Message> received = new CopyOnWriteArrayList<>();
+
+        private volatile boolean failOnNext;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription.set(subscription);
+        }
+
+        @Override
+        public void onNext(Message message) {
+            received.add(message);
+            if (failOnNext) {
+                throw new IllegalStateException("Subscriber failed");
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error.set(error);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
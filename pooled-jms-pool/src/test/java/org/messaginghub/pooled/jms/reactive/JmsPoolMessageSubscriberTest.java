@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.messaginghub.pooled.jms.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.CompletionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.JmsPoolConnection;
+import org.messaginghub.pooled.jms.JmsPoolTestSupport;
+import org.messaginghub.pooled.jms.mock.MockJMSConnection;
+import org.messaginghub.pooled.jms.mock.MockJMSConnectionListener;
+import org.messaginghub.pooled.jms.mock.MockJMSQueue;
+import org.messaginghub.pooled.jms.mock.MockJMSSession;
+import org.messaginghub.pooled.jms.mock.MockJMSTextMessage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Tests for the Reactive Streams subscriber backed by a pooled producer.
+ */
+public class JmsPoolMessageSubscriberTest extends JmsPoolTestSupport {
+
+    private final Queue<PendingSend> pendingSends = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        JmsPoolConnection connection = (JmsPoolConnection) cf.createConnection();
+        MockJMSConnection mockConnection = (MockJMSConnection) connection.getConnection();
+        mockConnection.addConnectionListener(new MockJMSConnectionListener() {
+
+            @Override
+            public boolean onAsyncMessageSend(MockJMSSession session, Message message, CompletionListener completionListener) throws JMSException {
+                sent.incrementAndGet();
+                pendingSends.add(new PendingSend(message, completionListener));
+                return true;
+            }
+        });
+        connection.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testDemandIsBoundedBySendsInFlight() throws Exception {
+        JmsPoolMessageSubscriber subscriber = new JmsPoolMessageSubscriber(cf, new MockJMSQueue("test"));
+        subscriber.setMaxSendsInFlight(4);
+
+        CountingPublisher publisher = new CountingPublisher(10);
+        publisher.subscribe(subscriber);
+
+        assertEquals(4, sent.get());
+        assertEquals(4, subscriber.getNumSendsInFlight());
+
+        pendingSends.poll().complete();
+        assertEquals(5, sent.get());
+
+        while (!pendingSends.isEmpty()) {
+            pendingSends.poll().complete();
+        }
+
+        assertEquals(10, sent.get());
+        assertEquals(0, subscriber.getNumSendsInFlight());
+
+        subscriber.getCompletion().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 60000)
+    public void testDemandIsSignalledSeriallyWhenSendsCompleteConcurrently() throws Exception {
+        final int numMessages = 5000;
+
+        JmsPoolMessageSubscriber subscriber = new JmsPoolMessageSubscriber(cf, new MockJMSQueue("test"));
+        subscriber.setMaxSendsInFlight(16);
+
+        final CompletableFuture<Void> completion = subscriber.getCompletion().toCompletableFuture();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (!completion.isDone()) {
+                        PendingSend send = pendingSends.poll();
+                        if (send != null) {
+                            send.complete();
+                        }
+                    }
+                }
+            });
+        }
+
+        CountingPublisher publisher = new CountingPublisher(numMessages);
+        publisher.subscribe(subscriber);
+
+        completion.get(30, TimeUnit.SECONDS);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(numMessages, sent.get());
+        assertFalse("Subscription should never be signalled concurrently", publisher.signalledConcurrently);
+    }
+
+    @Test(timeout = 60000)
+    public void testSendFailureCancelsUpstream() throws Exception {
+        JmsPoolMessageSubscriber subscriber = new JmsPoolMessageSubscriber(cf, new MockJMSQueue("test"));
+        subscriber.setMaxSendsInFlight(2);
+
+        CountingPublisher publisher = new CountingPublisher(10);
+        publisher.subscribe(subscriber);
+
+        pendingSends.poll().fail(new JMSException("Send failed"));
+
+        assertTrue(publisher.cancelled);
+
+        CompletableFuture<Void> completion = subscriber.getCompletion().toCompletableFuture();
+        try {
+            completion.get(5, TimeUnit.SECONDS);
+            fail("Should complete with the send failure");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof JMSException);
+        }
+
+        // Completing the outstanding send after the failure requests nothing more.
+        pendingSends.poll().complete();
+        assertEquals(2, sent.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testSecondSubscriptionIsCancelled() throws Exception {
+        JmsPoolMessageSubscriber subscriber = new JmsPoolMessageSubscriber(cf, new MockJMSQueue("test"));
+
+        CountingPublisher first = new CountingPublisher(0);
+        first.subscribe(subscriber);
+
+        CountingPublisher second = new CountingPublisher(1);
+        second.subscribe(subscriber);
+
+        assertTrue(second.cancelled);
+        assertFalse(first.cancelled);
+        assertEquals(0, sent.get());
+    }
+
+    private static final class PendingSend {
+
+        private final Message message;
+        private final CompletionListener listener;
+
+        public PendingSend(Message message, CompletionListener listener) {
+            this.message = message;
+            this.listener = listener;
+        }
+
+        public void complete() {
+            listener.onCompletion(message);
+        }
+
+        public void fail(Exception error) {
+            listener.onException(message, error);
+        }
+    }
+
+    /*
+     * Emits the given number of messages as they are requested, synchronously on the thread
+     * that requests them, and records whether two threads ever signalled it at the same time.
+     */
+    private static final class CountingPublisher implements Publisher<Message>, Subscription {
+
+        private final int count;
+        private final AtomicReference<Thread> signalling = new AtomicReference<>();
+
+        private Subscriber<? super Message> subscriber;
+        private long requested;
+        private int emitted;
+        private boolean emitting;
+        private boolean completed;
+        private volatile boolean cancelled;
+        private volatile boolean signalledConcurrently;
+
+        public CountingPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+            if (count == 0 && !cancelled) {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            final Thread current = Thread.currentThread();
+            final boolean entered = signalling.compareAndSet(null, current);
+            if (!entered && signalling.get() != current) {
+                signalledConcurrently = true;
+            }
+
+            try {
+                emit(n);
+            } finally {
+                if (entered) {
+                    signalling.set(null);
+                }
+            }
+        }
+
+        private synchronized void emit(long n) {
+            requested += n;
+            if (emitting) {
+                return;
+            }
+
+            emitting = true;
+            try {
+                while (!cancelled && requested > 0 && emitted < count) {
+                    requested--;
+                    emitted++;
+                    subscriber.onNext(new MockJMSTextMessage());
+                }
+
+                if (!cancelled && !completed && emitted == count && count > 0) {
+                    completed = true;
+                    subscriber.onComplete();
+                }
+            } finally {
+                emitting = false;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}